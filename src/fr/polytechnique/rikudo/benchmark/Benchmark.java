@@ -7,7 +7,10 @@ import fr.polytechnique.rikudo.solver.IHamPathSolver;
 import fr.polytechnique.rikudo.solver.ReducingToSATSolver;
 import fr.polytechnique.rikudo.solver.ReducingToSATSolver.Mode;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 
 public class Benchmark {
   public static class ProblemInstance {
@@ -28,6 +31,51 @@ public class Benchmark {
     }
   }
 
+  // Whether the path visits every vertex once, from the source to the target along edges, and
+  // satisfies the constraints
+  public static boolean isValidPath(ProblemInstance problem, List<Integer> path) {
+    int size = problem.graph.size();
+    if (path.size() != size || path.get(0) != problem.source
+        || path.get(size - 1) != problem.target) {
+      return false;
+    }
+    int[] positions = new int[size];
+    Arrays.fill(positions, -1);
+    for (int i = 0; i < size; ++i) {
+      int vertex = path.get(i);
+      if (!problem.graph.hasVertex(vertex) || positions[vertex] >= 0
+          || (i > 0 && !problem.graph.hasEdge(path.get(i - 1), vertex))) {
+        return false;
+      }
+      positions[vertex] = i;
+    }
+
+    Map<Integer, Integer> vertexConstraints = problem.constraints.getVertexConstraints();
+    for (Map.Entry<Integer, Integer> constraint : vertexConstraints.entrySet()) {
+      int vertex = constraint.getKey();
+      if (vertex < 0 || vertex >= size || positions[vertex] != constraint.getValue()) {
+        return false;
+      }
+    }
+    for (int v = 0; v < size; ++v) {
+      HashSet<Integer> diamonds = problem.constraints.getDiamondedNeighbours(v);
+      if (diamonds != null) {
+        for (int u : diamonds) {
+          if (Math.abs(positions[u] - positions[v]) != 1) {
+            return false;
+          }
+        }
+      }
+    }
+    return true;
+  }
+
+  // A solver is correct if it finds a valid path exactly when there is one
+  public static boolean isCorrect(ProblemInstance problem, boolean solvable,
+      List<Integer> solution) {
+    return solution == null ? !solvable : solvable && isValidPath(problem, solution);
+  }
+
   private static List<IHamPathSolver> buildSolvers(IGraph graph, int source, int target, Constraints constraints) {
     ArrayList<IHamPathSolver> solvers = new ArrayList<>();
     solvers.add(new ReducingToSATSolver(graph, source, target, Mode.E_MODE_PATH, constraints));
@@ -55,7 +103,7 @@ public class Benchmark {
         long begin = System.nanoTime();
         List<Integer> solution = solver.solve();
         long end = System.nanoTime();
-        System.out.println("+ + + Correct: " + (solution != null));
+        System.out.println("+ + + Correct: " + isCorrect(problem, true, solution));
         System.out.println("+ + + Time elapsed: " + (end - begin) / 1e6  + " ms ("+ (end - begin) + " ns)");
       }
     }
@@ -77,7 +125,7 @@ public class Benchmark {
         long begin = System.nanoTime();
         List<Integer> solution = solver.solve();
         long end = System.nanoTime();
-        System.out.println("+ + + Correct: " + (solution != null));
+        System.out.println("+ + + Correct: " + isCorrect(problem, true, solution));
         System.out.println("+ + + Time elapsed: " + (end - begin) / 1e6  + " ms ("+ (end - begin) + " ns)");
       }
     }
@@ -98,7 +146,7 @@ public class Benchmark {
           long begin = System.nanoTime();
           List<Integer> solution = solver.solve();
           long end = System.nanoTime();
-          System.out.println("+ + + Correct: " + (solution != null));
+          System.out.println("+ + + Correct: " + isCorrect(problem, true, solution));
           System.out.println(
               "+ + + Time elapsed: " + (end - begin) / 1e6 + " ms (" + (end - begin) + " ns)");
         }
@@ -121,7 +169,7 @@ public class Benchmark {
           long begin = System.nanoTime();
           List<Integer> solution = solver.solve();
           long end = System.nanoTime();
-          System.out.println("+ + + Correct: " + (solution == null));
+          System.out.println("+ + + Correct: " + isCorrect(problem, false, solution));
           System.out.println(
               "+ + + Time elapsed: " + (end - begin) / 1e6 + " ms (" + (end - begin) + " ns)");
         }
@@ -0,0 +1,130 @@
+package fr.polytechnique.rikudo.benchmark;
+
+import fr.polytechnique.rikudo.benchmark.Benchmark.ProblemInstance;
+import fr.polytechnique.rikudo.hexagonal.GridGenerator;
+import fr.polytechnique.rikudo.hexagonal.GridGenerator.GridGeneratorProperties;
+import fr.polytechnique.rikudo.hexagonal.GridGenerator.PuzzleDesign;
+import fr.polytechnique.rikudo.solver.GraphReader;
+import fr.polytechnique.rikudo.solver.ProblemFile;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Paths;
+import java.util.Random;
+
+// Problems named by a family and an argument, so that benchmarks can take them as parameters:
+//   full:n, cyclic:n     the GraphBuilder graphs on n vertices
+//   grid:n, grid:rxc     the n x n or r x c grid from corner to corner (a path exists unless
+//                        both sides are even)
+//   evenGrid:n           the 2n x 2n grid from corner to corner, which has no path
+//   random:n:p           n vertices along a hidden Hamiltonian path, plus every other edge with
+//                        probability p (with a fixed seed)
+//   mask:config.xml      a puzzle designed (with a fixed seed) on the mask of a configuration
+//   hexDisc:r, hexParallelogram:wxh, hexBlob:n, geometric:n, erdosRenyi:n
+//                        the CorpusGenerator families (with a fixed seed and no constraints)
+//   file:name            name_graph.txt with name_constraints.txt, or a binary problem file
+public class BenchmarkProblems {
+  private static final long DESIGN_SEED = 1;
+  private static final long RANDOM_SEED = 1;
+
+  public static ProblemInstance load(String name) throws IOException {
+    int colon = name.indexOf(':');
+    if (colon < 0) {
+      throw new IllegalArgumentException("Expected family:argument, got " + name);
+    }
+    String family = name.substring(0, colon);
+    String argument = name.substring(colon + 1);
+
+    switch (family) {
+      case "full":
+        return GraphBuilder.buildFullGraph(Integer.parseInt(argument));
+      case "cyclic":
+        return GraphBuilder.buildCyclicGraph(Integer.parseInt(argument));
+      case "grid":
+        int[] sides = gridSides(argument);
+        return GraphBuilder.buildGridGraph(sides[0], sides[1]);
+      case "evenGrid":
+        return GraphBuilder.buildGridGraph(2 * Integer.parseInt(argument),
+            2 * Integer.parseInt(argument));
+      case "random":
+        int separator = argument.indexOf(':');
+        return buildRandomGraph(Integer.parseInt(argument.substring(0, separator)),
+            Double.parseDouble(argument.substring(separator + 1)), new Random(RANDOM_SEED));
+      case "mask":
+        return design(argument);
+      case "hexDisc":
+      case "hexParallelogram":
+      case "hexBlob":
+      case "geometric":
+      case "erdosRenyi":
+        Random rng = new Random(RANDOM_SEED);
+        return CorpusGenerator.constrain(CorpusGenerator.build(name, rng), 0, 0, rng);
+      case "file":
+        if (argument.endsWith(".rkp")) {
+          return ProblemFile.map(Paths.get(argument)).toProblemInstance();
+        }
+        ProblemInstance problem =
+            new GraphReader(argument + "_graph.txt", argument + "_constraints.txt").readProblem();
+        if (problem == null) {
+          throw new IOException("Cannot read the problem " + argument);
+        }
+        return problem;
+      default:
+        throw new IllegalArgumentException("Unknown problem family " + family);
+    }
+  }
+
+  private static int[] gridSides(String argument) {
+    int x = argument.indexOf('x');
+    if (x < 0) {
+      return new int[]{Integer.parseInt(argument), Integer.parseInt(argument)};
+    }
+    return new int[]{Integer.parseInt(argument.substring(0, x)),
+        Integer.parseInt(argument.substring(x + 1))};
+  }
+
+  // Whether the problem has a solution, or null if only solving can tell
+  public static Boolean isSolvable(String name) {
+    String family = name.substring(0, name.indexOf(':'));
+    String argument = name.substring(name.indexOf(':') + 1);
+    switch (family) {
+      case "full":
+      case "cyclic":
+      case "random":
+      case "mask":
+      case "hexDisc":
+      case "hexParallelogram":
+      case "hexBlob":
+      case "geometric":
+      case "erdosRenyi":
+        return true;
+      case "grid":
+        // Both corners have the same colour in a grid with two even sides, which has as many
+        // vertices of each colour, so no path alternating colours joins them
+        int[] sides = gridSides(argument);
+        return sides[0] % 2 == 1 || sides[1] % 2 == 1;
+      case "evenGrid":
+        return false;
+      default:
+        return null;
+    }
+  }
+
+  public static ProblemInstance buildRandomGraph(int size, double density, Random rng) {
+    CorpusGenerator.PlantedPath planted = CorpusGenerator.randomGraph(size, density, rng);
+    return new ProblemInstance(planted.graph, planted.path.get(0),
+        planted.path.get(size - 1));
+  }
+
+  private static ProblemInstance design(String configuration) throws IOException {
+    GridGeneratorProperties properties;
+    try (InputStream input = new FileInputStream(configuration)) {
+      properties = GridGeneratorProperties.loadFromXML(input);
+    }
+    PuzzleDesign design;
+    try (GridGenerator generator = new GridGenerator(properties)) {
+      design = generator.designPuzzle(generator.buildGraph(), new Random(DESIGN_SEED), false);
+    }
+    return new ProblemInstance(design.graph, design.source, design.target, design.constraints);
+  }
+}
@@ -0,0 +1,350 @@
+package fr.polytechnique.rikudo.benchmark;
+
+import fr.polytechnique.rikudo.benchmark.Benchmark.ProblemInstance;
+import fr.polytechnique.rikudo.solver.BacktrackingSolver;
+import fr.polytechnique.rikudo.solver.Json;
+import fr.polytechnique.rikudo.solver.ReducingToSATSolver;
+import fr.polytechnique.rikudo.solver.ReducingToSATSolver.Mode;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+// Runs every (solver, problem) pair in its own JVM, which is killed if a single run takes longer
+// than the time limit, so that one exponential case cannot hold up the others. Every pair is run
+// several times in its JVM, each result is checked against the known answer of the problem (see
+// BenchmarkProblems.isSolvable) and the path is validated. Results go to CSV and/or JSON files,
+// tagged with the JVM and the machine they were measured on.
+//
+//   prog [-solvers sat,backtracking] [-problems grid:5,full:50] [-n repeats] [-t timeout-seconds]
+//        [-jvmArgs args] [-csv results.csv] [-json results.json]
+// Without -problems, the problems of Benchmark.runAllTests are run.
+public class BenchmarkRunner {
+  private static final String RUN_PREFIX = "# run ";
+
+  public static final String STATUS_OK = "ok";
+  public static final String STATUS_WRONG = "wrong";
+  public static final String STATUS_TIMEOUT = "timeout";
+  public static final String STATUS_ERROR = "error";
+
+  public static class PairResult {
+    public final String solver;
+    public final String problem;
+    public final int vertices;
+    public final Boolean solvable;
+    public final String status;
+    public final long[] runNanos;
+
+    PairResult(String solver, String problem, int vertices, Boolean solvable, String status,
+        long[] runNanos) {
+      this.solver = solver;
+      this.problem = problem;
+      this.vertices = vertices;
+      this.solvable = solvable;
+      this.status = status;
+      this.runNanos = runNanos;
+    }
+
+    // Nearest rank percentile of the runs, NaN without runs
+    public double percentileMillis(int p) {
+      if (runNanos.length == 0) {
+        return Double.NaN;
+      }
+      long[] sorted = runNanos.clone();
+      Arrays.sort(sorted);
+      int rank = (int) Math.ceil(p / 100.0 * sorted.length);
+      return sorted[Math.max(0, rank - 1)] / 1e6;
+    }
+
+    public double meanMillis() {
+      return runNanos.length == 0
+          ? Double.NaN : Arrays.stream(runNanos).average().getAsDouble() / 1e6;
+    }
+  }
+
+  // The problems of Benchmark.runAllTests
+  public static List<String> defaultProblems() {
+    List<String> problems = new ArrayList<>();
+    for (int size : new int[]{2, 4, 6, 8, 10, 20, 30, 40, 50, 100, 150, 200, 250, 300}) {
+      problems.add("full:" + size);
+    }
+    for (int size : new int[]{2, 4, 6, 8, 10, 20, 30, 40, 50, 100, 150, 200, 250, 300}) {
+      problems.add("cyclic:" + size);
+    }
+    for (int rows = 1; rows <= 15; ++rows) {
+      for (int cols = 1; cols <= 15; cols += 2) {
+        if (rows * cols < 55) {
+          problems.add("grid:" + rows + "x" + cols);
+        }
+      }
+    }
+    for (int rows = 2; rows <= 15; rows += 2) {
+      for (int cols = 2; cols <= 15; cols += 2) {
+        if (rows * cols < 55) {
+          problems.add("grid:" + rows + "x" + cols);
+        }
+      }
+    }
+    return problems;
+  }
+
+  public static Map<String, String> environment() {
+    Map<String, String> environment = new LinkedHashMap<>();
+    environment.put("date", Instant.now().toString());
+    environment.put("java.version", System.getProperty("java.version"));
+    environment.put("java.vm.name", System.getProperty("java.vm.name"));
+    environment.put("java.vm.version", System.getProperty("java.vm.version"));
+    environment.put("os.name", System.getProperty("os.name"));
+    environment.put("os.version", System.getProperty("os.version"));
+    environment.put("os.arch", System.getProperty("os.arch"));
+    environment.put("processors", Integer.toString(Runtime.getRuntime().availableProcessors()));
+    environment.put("max.heap.bytes", Long.toString(Runtime.getRuntime().maxMemory()));
+    environment.put("cpu", cpuModel());
+    return environment;
+  }
+
+  private static String cpuModel() {
+    try {
+      for (String line : Files.readAllLines(Paths.get("/proc/cpuinfo"))) {
+        if (line.startsWith("model name")) {
+          return line.substring(line.indexOf(':') + 1).trim();
+        }
+      }
+    } catch (IOException e) {
+      // Not on Linux
+    }
+    return System.getenv().getOrDefault("PROCESSOR_IDENTIFIER", "unknown");
+  }
+
+  // The forked side: solves the problem repeats times and prints one line per run
+  private static void runWorker(String solverName, String problemName, int repeats)
+      throws IOException {
+    ProblemInstance problem = BenchmarkProblems.load(problemName);
+    Boolean solvable = BenchmarkProblems.isSolvable(problemName);
+    System.out.println("# vertices " + problem.graph.size());
+    for (int i = 0; i < repeats; ++i) {
+      long timeBegin = System.nanoTime();
+      List<Integer> solution;
+      if (solverName.equals("sat")) {
+        solution = new ReducingToSATSolver(problem.graph, problem.source, problem.target,
+            Mode.E_MODE_PATH, problem.constraints).solve();
+      } else if (solverName.equals("backtracking")) {
+        solution = new BacktrackingSolver(problem.graph, problem.source, problem.target,
+            problem.constraints).solve();
+      } else {
+        throw new IllegalArgumentException("Unknown solver " + solverName);
+      }
+      long timeEnd = System.nanoTime();
+
+      boolean correct = solvable == null
+          ? solution == null || Benchmark.isValidPath(problem, solution)
+          : Benchmark.isCorrect(problem, solvable, solution);
+      System.out.println(RUN_PREFIX + (timeEnd - timeBegin) + " " + correct);
+      System.out.flush();
+    }
+  }
+
+  private static PairResult runPair(String solver, String problem, int repeats,
+      long timeoutMillis, String jvmArgs) throws IOException, InterruptedException {
+    List<String> command = new ArrayList<>();
+    command.add(System.getProperty("java.home") + "/bin/java");
+    if (!jvmArgs.trim().isEmpty()) {
+      command.addAll(Arrays.asList(jvmArgs.trim().split("\\s+")));
+    }
+    command.addAll(Arrays.asList("-cp", System.getProperty("java.class.path"),
+        BenchmarkRunner.class.getName(), "--worker", solver, problem, Integer.toString(repeats)));
+    Process process = new ProcessBuilder(command)
+        .redirectError(ProcessBuilder.Redirect.INHERIT).start();
+
+    // Lines are read on another thread, so that a silent worker can be timed out
+    BlockingQueue<String> lines = new LinkedBlockingQueue<>();
+    Thread reader = new Thread(() -> {
+      try (BufferedReader output =
+          new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+        for (String line = output.readLine(); line != null; line = output.readLine()) {
+          lines.add(line);
+        }
+      } catch (IOException e) {
+        // The worker was killed
+      }
+      lines.add("");
+    });
+    reader.start();
+
+    int vertices = 0;
+    List<Long> runNanos = new ArrayList<>();
+    String status = STATUS_OK;
+    // Loading the problem is allowed as much time as a single run
+    long deadline = System.nanoTime() + 1000000L * timeoutMillis;
+    while (true) {
+      String line = lines.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+      if (line == null) {
+        process.destroyForcibly();
+        status = STATUS_TIMEOUT;
+        break;
+      } else if (line.isEmpty()) {
+        if (process.waitFor() != 0 || runNanos.size() != repeats) {
+          status = STATUS_ERROR;
+        }
+        break;
+      } else if (line.startsWith("# vertices ")) {
+        vertices = Integer.parseInt(line.substring("# vertices ".length()));
+      } else if (line.startsWith(RUN_PREFIX)) {
+        String[] fields = line.substring(RUN_PREFIX.length()).split(" ");
+        runNanos.add(Long.parseLong(fields[0]));
+        if (!Boolean.parseBoolean(fields[1])) {
+          status = STATUS_WRONG;
+        }
+        deadline = System.nanoTime() + 1000000L * timeoutMillis;
+      }
+    }
+    process.waitFor();
+    reader.join();
+
+    return new PairResult(solver, problem, vertices, BenchmarkProblems.isSolvable(problem),
+        status, runNanos.stream().mapToLong(Long::longValue).toArray());
+  }
+
+  private static String number(double value) {
+    return Double.isNaN(value) ? "" : String.format(Locale.ROOT, "%.3f", value);
+  }
+
+  public static void writeCsv(Path path, Map<String, String> environment,
+      List<PairResult> results) throws IOException {
+    try (PrintStream out = new PrintStream(Files.newOutputStream(path))) {
+      StringBuilder header = new StringBuilder(
+          "solver,problem,vertices,solvable,status,runs,mean_ms,min_ms,median_ms,p90_ms,p99_ms,max_ms");
+      for (String key : environment.keySet()) {
+        header.append(',').append(key);
+      }
+      out.println(header);
+      for (PairResult result : results) {
+        StringBuilder line = new StringBuilder();
+        line.append(result.solver).append(',').append(result.problem).append(',')
+            .append(result.vertices).append(',')
+            .append(result.solvable == null ? "" : result.solvable.toString()).append(',')
+            .append(result.status).append(',').append(result.runNanos.length).append(',')
+            .append(number(result.meanMillis())).append(',')
+            .append(number(result.percentileMillis(0))).append(',')
+            .append(number(result.percentileMillis(50))).append(',')
+            .append(number(result.percentileMillis(90))).append(',')
+            .append(number(result.percentileMillis(99))).append(',')
+            .append(number(result.percentileMillis(100)));
+        for (String value : environment.values()) {
+          line.append(",\"").append(value.replace("\"", "\"\"")).append('"');
+        }
+        out.println(line);
+      }
+    }
+  }
+
+  public static void writeJson(Path path, Map<String, String> environment,
+      List<PairResult> results) throws IOException {
+    try (PrintStream out = new PrintStream(Files.newOutputStream(path))) {
+      out.println("{");
+      out.println("  \"environment\": {");
+      int index = 0;
+      for (Map.Entry<String, String> entry : environment.entrySet()) {
+        out.println("    " + Json.quote(entry.getKey()) + ": " + Json.quote(entry.getValue())
+            + (++index < environment.size() ? "," : ""));
+      }
+      out.println("  },");
+      out.println("  \"results\": [");
+      for (int i = 0; i < results.size(); ++i) {
+        PairResult result = results.get(i);
+        StringBuilder runs = new StringBuilder();
+        for (long nanos : result.runNanos) {
+          runs.append(runs.length() == 0 ? "" : ", ").append(nanos);
+        }
+        out.println("    {\"solver\": " + Json.quote(result.solver)
+            + ", \"problem\": " + Json.quote(result.problem)
+            + ", \"vertices\": " + result.vertices
+            + ", \"solvable\": " + result.solvable
+            + ", \"status\": " + Json.quote(result.status)
+            + ", \"runNanos\": [" + runs + "]"
+            + (result.runNanos.length == 0 ? "" : ", \"meanMillis\": "
+                + number(result.meanMillis())
+                + ", \"minMillis\": " + number(result.percentileMillis(0))
+                + ", \"medianMillis\": " + number(result.percentileMillis(50))
+                + ", \"p90Millis\": " + number(result.percentileMillis(90))
+                + ", \"p99Millis\": " + number(result.percentileMillis(99))
+                + ", \"maxMillis\": " + number(result.percentileMillis(100)))
+            + "}" + (i + 1 < results.size() ? "," : ""));
+      }
+      out.println("  ]");
+      out.println("}");
+    }
+  }
+
+  public static void main(String[] args) throws IOException, InterruptedException {
+    if (args.length == 4 && args[0].equals("--worker")) {
+      runWorker(args[1], args[2], Integer.parseInt(args[3]));
+      return;
+    }
+
+    List<String> solvers = Arrays.asList("sat", "backtracking");
+    List<String> problems = defaultProblems();
+    int repeats = 5;
+    int timeoutSeconds = 60;
+    String jvmArgs = "";
+    String csvName = null;
+    String jsonName = null;
+    for (int i = 0; i < args.length; ++i) {
+      if (args[i].equals("-solvers")) {
+        solvers = Arrays.asList(args[++i].split(","));
+      } else if (args[i].equals("-problems")) {
+        problems = Arrays.asList(args[++i].split(","));
+      } else if (args[i].equals("-n")) {
+        repeats = Integer.parseInt(args[++i]);
+      } else if (args[i].equals("-t")) {
+        timeoutSeconds = Integer.parseInt(args[++i]);
+      } else if (args[i].equals("-jvmArgs")) {
+        jvmArgs = args[++i];
+      } else if (args[i].equals("-csv")) {
+        csvName = args[++i];
+      } else if (args[i].equals("-json")) {
+        jsonName = args[++i];
+      } else {
+        System.err.println("Usage: prog [-solvers sat,backtracking] [-problems p1,p2,...]"
+            + " [-n repeats] [-t timeout-seconds] [-jvmArgs args] [-csv file] [-json file]");
+        System.exit(1);
+      }
+    }
+
+    Map<String, String> environment = environment();
+    environment.put("worker.jvm.args", jvmArgs);
+    List<PairResult> results = new ArrayList<>();
+    System.out.printf("%-14s %-24s %8s %8s %5s %12s %12s %12s\n", "solver", "problem",
+        "vertices", "status", "runs", "median ms", "p90 ms", "max ms");
+    for (String problem : problems) {
+      for (String solver : solvers) {
+        PairResult result = runPair(solver, problem, repeats, 1000L * timeoutSeconds, jvmArgs);
+        results.add(result);
+        System.out.printf("%-14s %-24s %8d %8s %5d %12.3f %12.3f %12.3f\n", solver, problem,
+            result.vertices, result.status, result.runNanos.length,
+            result.percentileMillis(50), result.percentileMillis(90),
+            result.percentileMillis(100));
+      }
+    }
+
+    if (csvName != null) {
+      writeCsv(Paths.get(csvName), environment, results);
+    }
+    if (jsonName != null) {
+      writeJson(Paths.get(jsonName), environment, results);
+    }
+  }
+}
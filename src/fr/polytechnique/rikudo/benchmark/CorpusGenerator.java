@@ -0,0 +1,358 @@
+package fr.polytechnique.rikudo.benchmark;
+
+import fr.polytechnique.rikudo.benchmark.Benchmark.ProblemInstance;
+import fr.polytechnique.rikudo.hexagonal.GridGraph;
+import fr.polytechnique.rikudo.hexagonal.LongHashSet;
+import fr.polytechnique.rikudo.hexagonal.PackedEisenstein;
+import fr.polytechnique.rikudo.solver.AdjListGraph;
+import fr.polytechnique.rikudo.solver.Constraints;
+import fr.polytechnique.rikudo.solver.IGraph;
+import fr.polytechnique.rikudo.solver.Json;
+import fr.polytechnique.rikudo.solver.ProblemFile;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+// Seeded families of graphs for scaling studies, each built around a Hamiltonian path planted in
+// it, so that every instance is known to be solvable and comes with a solution:
+//   hexDisc:r            the hex cells at distance at most r from a cell, swept row by row
+//   hexParallelogram:wxh w cells by h rows of hex cells, swept row by row
+//   hexBlob:n            n hex cells visited by a random walk which prefers cells next to the ones
+//                        already visited; the cells it closes in without visiting are holes
+//   geometric:n          n points of the unit square visited by a random walk with steps shorter
+//                        than the radius sqrt(2 ln(n) / (pi n)), joined when they are within it
+//   erdosRenyi:n         a random path on n vertices plus every other edge with probability
+//                        (ln(n) + ln(ln(n))) / n, around the threshold for Hamiltonicity
+// Constraints are then drawn from the planted path: a vertex density of the vertices are given
+// their positions and a diamond density of the path edges get a diamond (the source and target
+// are always fixed).
+//
+// The corpus is written as one binary problem file per instance, with its solution (and its cell
+// centers for hex families), and a manifest.jsonl which BatchSolver takes as is:
+//   prog [-o corpus] [-seeds n] [-vertex density] [-diamond density] family:argument ...
+public class CorpusGenerator {
+  // Raised whenever a generator changes, as the same name and seed then give another instance
+  public static final int CORPUS_VERSION = 1;
+
+  private static final String[] DEFAULT_FAMILIES = {"hexDisc:4", "hexDisc:8",
+      "hexParallelogram:10x10", "hexBlob:100", "hexBlob:400", "geometric:100", "geometric:400",
+      "erdosRenyi:100", "erdosRenyi:400"};
+
+  public static class PlantedPath {
+    public final IGraph graph;
+    public final List<Integer> path;
+    // Packed cell centers of the vertices for hex families, null otherwise
+    public final long[] centers;
+
+    PlantedPath(IGraph graph, List<Integer> path, long[] centers) {
+      this.graph = graph;
+      this.path = path;
+      this.centers = centers;
+    }
+  }
+
+  public static PlantedPath build(String name, Random rng) {
+    int colon = name.indexOf(':');
+    if (colon < 0) {
+      throw new IllegalArgumentException("Expected family:argument, got " + name);
+    }
+    String family = name.substring(0, colon);
+    String argument = name.substring(colon + 1);
+
+    switch (family) {
+      case "hexDisc":
+        return hexDisc(Integer.parseInt(argument));
+      case "hexParallelogram":
+        int x = argument.indexOf('x');
+        return hexParallelogram(Integer.parseInt(argument.substring(0, x)),
+            Integer.parseInt(argument.substring(x + 1)));
+      case "hexBlob":
+        return hexBlob(Integer.parseInt(argument), rng);
+      case "geometric":
+        int size = Integer.parseInt(argument);
+        return geometric(size, Math.sqrt(2 * Math.log(size) / (Math.PI * size)), rng);
+      case "erdosRenyi":
+        int n = Integer.parseInt(argument);
+        return randomGraph(n, (Math.log(n) + Math.log(Math.log(n))) / n, rng);
+      default:
+        throw new IllegalArgumentException("Unknown corpus family " + family);
+    }
+  }
+
+  // Cell at axial coordinates (q, r): the neighbours of (q, r) are (q +- 1, r), (q, r +- 1),
+  // (q - 1, r + 1) and (q + 1, r - 1)
+  private static long axial(int q, int r) {
+    long unitQ = PackedEisenstein.neighbour(0, 0);
+    long unitR = PackedEisenstein.neighbour(0, 1);
+    return PackedEisenstein.pack(
+        (long) q * PackedEisenstein.a(unitQ) + (long) r * PackedEisenstein.a(unitR),
+        (long) q * PackedEisenstein.b(unitQ) + (long) r * PackedEisenstein.b(unitR));
+  }
+
+  // The graph of the cells, with the path through them in the given order
+  private static PlantedPath hexPath(long[] pathCenters) {
+    LongHashSet centers = new LongHashSet(pathCenters.length);
+    centers.addAll(pathCenters);
+    GridGraph graph = new GridGraph(centers, 1);
+    List<Integer> path = new ArrayList<>(pathCenters.length);
+    for (long center : pathCenters) {
+      int vertex = graph.getVertex(center);
+      if (!path.isEmpty() && !graph.hasEdge(path.get(path.size() - 1), vertex)) {
+        throw new IllegalStateException("The planted path leaves the grid at " + path.size());
+      }
+      path.add(vertex);
+    }
+    long[] vertexCenters = new long[graph.size()];
+    for (int v = 0; v < graph.size(); ++v) {
+      vertexCenters[v] = graph.getCenter(v);
+    }
+    return new PlantedPath(graph, path, vertexCenters);
+  }
+
+  // Rows alternately left to right and right to left: the last cell of a row always touches the
+  // first cell of the next one
+  public static PlantedPath hexDisc(int radius) {
+    long[] cells = new long[3 * radius * (radius + 1) + 1];
+    int count = 0;
+    for (int r = -radius; r <= radius; ++r) {
+      int qMin = Math.max(-radius, -radius - r);
+      int qMax = Math.min(radius, radius - r);
+      boolean rightwards = (r + radius) % 2 == 0;
+      for (int i = 0; i <= qMax - qMin; ++i) {
+        cells[count++] = axial(rightwards ? qMin + i : qMax - i, r);
+      }
+    }
+    return hexPath(cells);
+  }
+
+  public static PlantedPath hexParallelogram(int width, int height) {
+    long[] cells = new long[width * height];
+    int count = 0;
+    for (int r = 0; r < height; ++r) {
+      for (int i = 0; i < width; ++i) {
+        cells[count++] = axial(r % 2 == 0 ? i : width - 1 - i, r);
+      }
+    }
+    return hexPath(cells);
+  }
+
+  // A walk weighted towards cells with many visited neighbours keeps the blob compact but can
+  // wall itself in; it then starts over, and the longest walk is kept after too many attempts
+  public static PlantedPath hexBlob(int size, Random rng) {
+    final int attempts = 1000;
+    long[] best = new long[0];
+    for (int attempt = 0; attempt < attempts && best.length < size; ++attempt) {
+      LongHashSet visited = new LongHashSet(size);
+      long[] walk = new long[size];
+      int length = 0;
+      long cell = PackedEisenstein.pack(0, 0);
+      visited.add(cell);
+      walk[length++] = cell;
+
+      long[] candidates = new long[6];
+      int[] weights = new int[6];
+      while (length < size) {
+        int count = 0;
+        int totalWeight = 0;
+        for (int direction = 0; direction < 6; ++direction) {
+          long next = PackedEisenstein.neighbour(cell, direction);
+          if (visited.contains(next)) {
+            continue;
+          }
+          int visitedNeighbours = 0;
+          for (int d = 0; d < 6; ++d) {
+            if (visited.contains(PackedEisenstein.neighbour(next, d))) {
+              ++visitedNeighbours;
+            }
+          }
+          candidates[count] = next;
+          weights[count] = 1 + visitedNeighbours * visitedNeighbours;
+          totalWeight += weights[count++];
+        }
+        if (count == 0) {
+          break;
+        }
+        int pick = rng.nextInt(totalWeight);
+        int chosen = 0;
+        while (pick >= weights[chosen]) {
+          pick -= weights[chosen++];
+        }
+        cell = candidates[chosen];
+        visited.add(cell);
+        walk[length++] = cell;
+      }
+      if (length > best.length) {
+        best = Arrays.copyOf(walk, length);
+      }
+    }
+    return hexPath(best);
+  }
+
+  // The walk is reflected on the sides of the square
+  public static PlantedPath geometric(int size, double radius, Random rng) {
+    double[] xs = new double[size];
+    double[] ys = new double[size];
+    xs[0] = rng.nextDouble();
+    ys[0] = rng.nextDouble();
+    for (int i = 1; i < size; ++i) {
+      double angle = 2 * Math.PI * rng.nextDouble();
+      double step = radius * rng.nextDouble();
+      xs[i] = reflect(xs[i - 1] + step * Math.cos(angle));
+      ys[i] = reflect(ys[i - 1] + step * Math.sin(angle));
+    }
+
+    AdjListGraph graph = new AdjListGraph(size);
+    List<Integer> path = new ArrayList<>(size);
+    for (int u = 0; u < size; ++u) {
+      path.add(u);
+      for (int v = u + 1; v < size; ++v) {
+        double dx = xs[u] - xs[v];
+        double dy = ys[u] - ys[v];
+        if (v == u + 1 || dx * dx + dy * dy <= radius * radius) {
+          graph.addEdge(u, v);
+          graph.addEdge(v, u);
+        }
+      }
+    }
+    return new PlantedPath(graph, path, null);
+  }
+
+  private static double reflect(double coordinate) {
+    if (coordinate < 0) {
+      return -coordinate;
+    }
+    return coordinate > 1 ? 2 - coordinate : coordinate;
+  }
+
+  // A random order of the vertices joined into a path, plus every other edge with the given
+  // probability
+  public static PlantedPath randomGraph(int size, double density, Random rng) {
+    int[] order = new int[size];
+    for (int i = 0; i < size; ++i) {
+      int j = rng.nextInt(i + 1);
+      order[i] = order[j];
+      order[j] = i;
+    }
+
+    AdjListGraph graph = new AdjListGraph(size);
+    List<Integer> path = new ArrayList<>(size);
+    path.add(order[0]);
+    for (int i = 1; i < size; ++i) {
+      graph.addEdge(order[i - 1], order[i]);
+      graph.addEdge(order[i], order[i - 1]);
+      path.add(order[i]);
+    }
+    for (int u = 0; u < size; ++u) {
+      for (int v = u + 1; v < size; ++v) {
+        if (rng.nextDouble() < density) {
+          graph.addEdge(u, v);
+          graph.addEdge(v, u);
+        }
+      }
+    }
+    return new PlantedPath(graph, path, null);
+  }
+
+  // The problem from the first to the last vertex of the planted path, with about
+  // vertexDensity * n vertex constraints and diamondDensity * (n - 1) diamonds taken from it
+  public static ProblemInstance constrain(PlantedPath planted, double vertexDensity,
+      double diamondDensity, Random rng) {
+    List<Integer> path = planted.path;
+    int size = path.size();
+    if (size < 2) {
+      throw new IllegalArgumentException("A problem needs at least 2 vertices, the planted path has "
+          + size);
+    }
+    Constraints constraints = new Constraints();
+    constraints.addVertexConstraint(path.get(0), 0);
+    constraints.addVertexConstraint(path.get(size - 1), size - 1);
+    for (int position : sample(size - 2, (int) Math.round(vertexDensity * size) - 2, rng)) {
+      constraints.addVertexConstraint(path.get(position + 1), position + 1);
+    }
+    for (int position : sample(size - 1, (int) Math.round(diamondDensity * (size - 1)), rng)) {
+      constraints.addDiamondConstraint(path.get(position), path.get(position + 1));
+    }
+    return new ProblemInstance(planted.graph, path.get(0), path.get(size - 1), constraints);
+  }
+
+  // count distinct numbers below bound, by a partial shuffle
+  private static int[] sample(int bound, int count, Random rng) {
+    count = Math.max(0, Math.min(count, bound));
+    int[] numbers = new int[bound];
+    for (int i = 0; i < bound; ++i) {
+      numbers[i] = i;
+    }
+    for (int i = 0; i < count; ++i) {
+      int j = i + rng.nextInt(bound - i);
+      int swap = numbers[i];
+      numbers[i] = numbers[j];
+      numbers[j] = swap;
+    }
+    return Arrays.copyOf(numbers, count);
+  }
+
+  // Seeds are derived from the instance name so that adding a family leaves the others unchanged
+  public static long seedOf(String name, int index) {
+    return 31L * name.hashCode() + index;
+  }
+
+  public static void main(String[] args) throws IOException {
+    Path directory = Paths.get("corpus");
+    int seeds = 3;
+    double vertexDensity = 0.1;
+    double diamondDensity = 0.1;
+    List<String> families = new ArrayList<>();
+    for (int i = 0; i < args.length; ++i) {
+      if (args[i].equals("-o")) {
+        directory = Paths.get(args[++i]);
+      } else if (args[i].equals("-seeds")) {
+        seeds = Integer.parseInt(args[++i]);
+      } else if (args[i].equals("-vertex")) {
+        vertexDensity = Double.parseDouble(args[++i]);
+      } else if (args[i].equals("-diamond")) {
+        diamondDensity = Double.parseDouble(args[++i]);
+      } else if (args[i].startsWith("-")) {
+        System.err.println("Usage: prog [-o directory] [-seeds n] [-vertex density]"
+            + " [-diamond density] family:argument ...");
+        System.exit(1);
+      } else {
+        families.add(args[i]);
+      }
+    }
+    if (families.isEmpty()) {
+      families.addAll(Arrays.asList(DEFAULT_FAMILIES));
+    }
+
+    Files.createDirectories(directory);
+    try (PrintStream manifest =
+        new PrintStream(Files.newOutputStream(directory.resolve("manifest.jsonl")))) {
+      for (String family : families) {
+        for (int index = 0; index < seeds; ++index) {
+          long seed = seedOf(family, index);
+          Random rng = new Random(seed);
+          PlantedPath planted = build(family, rng);
+          ProblemInstance problem = constrain(planted, vertexDensity, diamondDensity, rng);
+          String id = family.replace(':', '_') + "_" + index;
+          ProblemFile.write(directory.resolve(id + ".rkp"), problem, planted.path,
+              planted.centers);
+          manifest.println("{\"id\": " + Json.quote(id)
+              + ", \"problem\": " + Json.quote(id + ".rkp")
+              + ", \"family\": " + Json.quote(family)
+              + ", \"seed\": " + seed
+              + ", \"vertices\": " + problem.graph.size()
+              + ", \"clues\": " + problem.constraints.countVertexConstraints()
+              + ", \"diamonds\": " + problem.constraints.countDiamondConstraints()
+              + ", \"version\": " + CORPUS_VERSION
+              + "}");
+          System.out.printf("%-28s %8d vertices\n", id, problem.graph.size());
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,45 @@
+package fr.polytechnique.rikudo.benchmark;
+
+import fr.polytechnique.rikudo.benchmark.Benchmark.ProblemInstance;
+import fr.polytechnique.rikudo.benchmark.Harness.Operation;
+import fr.polytechnique.rikudo.benchmark.Harness.Options;
+import fr.polytechnique.rikudo.solver.ReducingToSATSolver;
+import fr.polytechnique.rikudo.solver.ReducingToSATSolver.Mode;
+import java.util.Arrays;
+import java.util.Map;
+import org.sat4j.specs.ISolver;
+
+// Measures the phases of ReducingToSATSolver with the Harness: phase=encode only builds the CNF,
+// phase=solve builds it and runs the search, so the search alone costs the difference, e.g.
+//   prog -p problem=random:50:0.1,random:100:0.1 -p phase=encode,solve -prof gc
+public class EncodingBenchmark {
+  private static Operation createOperation(Map<String, String> parameters) throws Exception {
+    ProblemInstance problem = BenchmarkProblems.load(parameters.get("problem"));
+    ReducingToSATSolver solver = new ReducingToSATSolver(problem.graph, problem.source,
+        problem.target, Mode.E_MODE_PATH, problem.constraints);
+    switch (parameters.get("phase")) {
+      case "encode":
+        return solver::encode;
+      case "solve":
+        return () -> {
+          ISolver satSolver = solver.encode();
+          return satSolver != null && satSolver.isSatisfiable();
+        };
+      default:
+        throw new IllegalArgumentException("Unknown phase " + parameters.get("phase"));
+    }
+  }
+
+  public static void main(String[] args) throws Exception {
+    if (Harness.runFork(args, EncodingBenchmark::createOperation)) {
+      return;
+    }
+
+    Options options = new Options();
+    options.parameters.put("problem", Arrays.asList("random:25:0.1", "random:50:0.1",
+        "random:100:0.1", "random:100:0.5", "file:riXkudo"));
+    options.parameters.put("phase", Arrays.asList("encode", "solve"));
+    options.parse(args);
+    Harness.run(EncodingBenchmark.class, options, EncodingBenchmark::createOperation);
+  }
+}
@@ -0,0 +1,135 @@
+package fr.polytechnique.rikudo.benchmark;
+
+import fr.polytechnique.rikudo.benchmark.Benchmark.ProblemInstance;
+import fr.polytechnique.rikudo.solver.IGraph;
+import fr.polytechnique.rikudo.solver.ReducingToSATSolver;
+import fr.polytechnique.rikudo.solver.ReducingToSATSolver.Mode;
+import java.util.Arrays;
+import java.util.Random;
+import org.sat4j.specs.ISolver;
+import org.sat4j.specs.TimeoutException;
+
+// Size and cost of the CNF built by ReducingToSATSolver over a sweep of random graphs: for every
+// density, the number of vertices grows until encoding takes longer than the budget or runs out
+// of memory, which shows where the O(n^3) encoding stops being affordable. Every row reports the
+// variables and clauses, the median encoding time, the bytes allocated while encoding, the heap
+// still held by the encoded solver, and the time of the search alone (with a time limit).
+//
+//   prog [-n 10,20,40,80] [-d 0.05,0.2,1] [-r repeats] [-t solve-timeout-seconds] [-budget ms]
+public class EncodingReport {
+  private static final long SEED = 1;
+
+  private static long edgeCount(IGraph graph) {
+    long count = 0;
+    for (int v = 0; v < graph.size(); ++v) {
+      count += graph.adjacentVertices(v).size();
+    }
+    return count / 2;
+  }
+
+  private static long usedHeap() {
+    System.gc();
+    System.gc();
+    Runtime runtime = Runtime.getRuntime();
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+
+  private static int[] parseInts(String list) {
+    return Arrays.stream(list.split(",")).mapToInt(Integer::parseInt).toArray();
+  }
+
+  private static double[] parseDoubles(String list) {
+    return Arrays.stream(list.split(",")).mapToDouble(Double::parseDouble).toArray();
+  }
+
+  public static void main(String[] args) {
+    int[] sizes = {10, 20, 40, 60, 80, 120, 160, 240, 320};
+    double[] densities = {0.05, 0.2, 1};
+    int repeats = 3;
+    int timeoutSeconds = 10;
+    long budgetMillis = 10000;
+
+    for (int i = 0; i < args.length; ++i) {
+      if (args[i].equals("-n")) {
+        sizes = parseInts(args[++i]);
+      } else if (args[i].equals("-d")) {
+        densities = parseDoubles(args[++i]);
+      } else if (args[i].equals("-r")) {
+        repeats = Integer.parseInt(args[++i]);
+      } else if (args[i].equals("-t")) {
+        timeoutSeconds = Integer.parseInt(args[++i]);
+      } else if (args[i].equals("-budget")) {
+        budgetMillis = Long.parseLong(args[++i]);
+      } else {
+        System.err.println("Usage: prog [-n sizes] [-d densities] [-r repeats]"
+            + " [-t solve-timeout-seconds] [-budget encoding-millis]");
+        System.exit(1);
+      }
+    }
+
+    // Encoding code runs compiled in every row
+    ProblemInstance warmUp = BenchmarkProblems.buildRandomGraph(30, 0.2, new Random(SEED));
+    for (int i = 0; i < 50; ++i) {
+      new ReducingToSATSolver(warmUp.graph, warmUp.source, warmUp.target).encode();
+    }
+
+    System.out.printf("%6s %8s %9s %10s %12s %12s %12s %12s %12s\n", "n", "density", "edges",
+        "variables", "clauses", "encode ms", "alloc MB", "retained MB", "solve ms");
+    for (double density : densities) {
+      for (int size : sizes) {
+        ProblemInstance problem =
+            BenchmarkProblems.buildRandomGraph(size, density, new Random(SEED));
+        ReducingToSATSolver solver = new ReducingToSATSolver(problem.graph, problem.source,
+            problem.target, Mode.E_MODE_PATH, problem.constraints);
+        solver.setTimeoutMillis(1000 * timeoutSeconds);
+
+        long[] encodingNanos = new long[repeats];
+        long allocated = 0;
+        long retained = 0;
+        ISolver satSolver = null;
+        try {
+          for (int r = 0; r < repeats; ++r) {
+            satSolver = null;
+            long heapBegin = usedHeap();
+            long bytesBegin = Harness.allocatedBytes();
+            long timeBegin = System.nanoTime();
+            satSolver = solver.encode();
+            encodingNanos[r] = System.nanoTime() - timeBegin;
+            allocated = Harness.allocatedBytes() - bytesBegin;
+            retained = Math.max(0, usedHeap() - heapBegin);
+          }
+        } catch (OutOfMemoryError e) {
+          satSolver = null;
+          System.out.printf("%6d %8.3f %9d  out of memory\n", size, density,
+              edgeCount(problem.graph));
+          break;
+        }
+        Arrays.sort(encodingNanos);
+        long encodingMillis = encodingNanos[repeats / 2] / 1000000;
+
+        String solving = "-";
+        if (satSolver == null) {
+          solving = "unsat";
+        } else if (timeoutSeconds > 0) {
+          long timeBegin = System.nanoTime();
+          try {
+            boolean satisfiable = satSolver.isSatisfiable();
+            solving = String.format("%.1f", (System.nanoTime() - timeBegin) / 1e6)
+                + (satisfiable ? "" : " unsat");
+          } catch (TimeoutException e) {
+            solving = "timeout";
+          }
+        }
+
+        System.out.printf("%6d %8.3f %9d %10d %12d %12.1f %12.1f %12.1f %12s\n", size, density,
+            edgeCount(problem.graph), satSolver == null ? 0 : satSolver.nVars(),
+            satSolver == null ? 0 : satSolver.nConstraints(), encodingNanos[repeats / 2] / 1e6,
+            allocated / 1e6, retained / 1e6, solving);
+        if (encodingMillis > budgetMillis) {
+          System.out.printf("# density %.3f: encoding over budget from n = %d\n", density, size);
+          break;
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,266 @@
+package fr.polytechnique.rikudo.benchmark;
+
+import fr.polytechnique.rikudo.binaryImages.BinaryMask;
+import fr.polytechnique.rikudo.binaryImages.BitMask;
+import fr.polytechnique.rikudo.binaryImages.MaskLoader;
+import fr.polytechnique.rikudo.hexagonal.CellCoverage;
+import fr.polytechnique.rikudo.hexagonal.GridGenerator;
+import fr.polytechnique.rikudo.hexagonal.GridGenerator.GridGeneratorProperties;
+import fr.polytechnique.rikudo.hexagonal.GridGenerator.Palette;
+import fr.polytechnique.rikudo.hexagonal.GridGenerator.PuzzleDesign;
+import fr.polytechnique.rikudo.hexagonal.GridGraph;
+import fr.polytechnique.rikudo.hexagonal.LongHashSet;
+import fr.polytechnique.rikudo.hexagonal.PuzzleRenderer;
+import fr.polytechnique.rikudo.puzzle.DesignIteration;
+import fr.polytechnique.rikudo.puzzle.DesignListener;
+import fr.polytechnique.rikudo.puzzle.RikudoPuzzle.DesignProperties;
+import fr.polytechnique.rikudo.solver.SolverStats;
+import java.awt.image.BufferedImage;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import javax.imageio.ImageIO;
+
+// Times every stage of puzzle generation, the way GridGenerator runs it, on the shipped
+// configurations and on discs of growing radius, with fixed seeds:
+//   load     reading the mask file
+//   scan     finding the cells covered by the mask
+//   graph    building the GridGraph of the cells
+//   path     the SAT calls looking for a Hamiltonian path (between random source and target
+//            until one exists, as GridGenerator.designPuzzle does)
+//   minimize everything else in RikudoPuzzle.design, i.e. making the path unique with as few
+//            constraints as possible
+//   render   drawing the puzzle and the solution
+//   png      encoding both images as PNG (into memory)
+// The SAT calls, conflicts and decisions of each design are counted too.
+//
+//   prog [-n repeats] [-seed seed] [-discs radius1,radius2] [-csv file] config1.xml ...
+// Without configurations, puzzles/*.xml are run.
+public class GenerationBenchmark {
+  private static final String[] STAGES =
+      {"load", "scan", "graph", "path", "minimize", "render", "png"};
+  private static final double DISC_SIDE_LENGTH = 20;
+  private static final double DISC_OUTPUT_SIDE_LENGTH = 25;
+
+  public static class Run {
+    public final String name;
+    public final long seed;
+    public int cells;
+    public int constraints;
+    public final long[] stageNanos = new long[STAGES.length];
+    public int satCalls;
+    public long conflicts;
+    public long decisions;
+
+    Run(String name, long seed) {
+      this.name = name;
+      this.seed = seed;
+    }
+  }
+
+  // Counts the SAT calls, and tells the ones searching for the path from the others
+  private static class CountingListener implements DesignListener {
+    final Run run;
+    boolean searchingPath;
+    long pathNanos;
+
+    CountingListener(Run run) {
+      this.run = run;
+    }
+
+    @Override
+    public void designStarted(int source, int target) {
+      searchingPath = true;
+    }
+
+    @Override
+    public void solverCalled(SolverStats stats, boolean satisfiable) {
+      ++run.satCalls;
+      run.conflicts += stats.conflicts;
+      run.decisions += stats.decisions;
+      if (searchingPath) {
+        pathNanos += stats.encodingNanos + stats.solvingNanos;
+        searchingPath = false;
+      }
+    }
+
+    @Override
+    public void iterationDone(DesignIteration iteration) {
+    }
+  }
+
+  private static final OutputStream DISCARD = new OutputStream() {
+    @Override
+    public void write(int b) {
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+    }
+  };
+
+  public static BitMask disc(int radius) {
+    BitMask mask = new BitMask(2 * radius + 1, 2 * radius + 1);
+    for (int y = -radius; y <= radius; ++y) {
+      for (int x = -radius; x <= radius; ++x) {
+        mask.setBlack(x + radius, y + radius, x * x + y * y <= radius * radius);
+      }
+    }
+    return mask;
+  }
+
+  // Runs the whole pipeline, the mask is either loaded from the configuration or given
+  public static Run run(String name, GridGeneratorProperties properties, BinaryMask givenMask,
+      double inputSideLength, double outputSideLength, DesignProperties designProperties,
+      long seed) throws IOException {
+    Run run = new Run(name, seed);
+
+    long timeBegin = System.nanoTime();
+    BinaryMask mask = givenMask != null ? givenMask : MaskLoader.load(properties.inputFile);
+    long timeMask = System.nanoTime();
+    double threshold = properties == null ? 0 : properties.coverageThreshold;
+    LongHashSet centers = new CellCoverage(inputSideLength, threshold).getCoveredCenters(mask);
+    long timeScan = System.nanoTime();
+    GridGraph graph = new GridGraph(centers, inputSideLength);
+    long timeGraph = System.nanoTime();
+    run.cells = graph.size();
+    run.stageNanos[0] = timeMask - timeBegin;
+    run.stageNanos[1] = timeScan - timeMask;
+    run.stageNanos[2] = timeGraph - timeScan;
+
+    // Neither the metrics file nor the design cache of the configuration are used
+    GridGeneratorProperties generatorProperties = new GridGeneratorProperties(
+        properties == null ? null : properties.inputFile, null, null, inputSideLength,
+        outputSideLength, designProperties, Palette.DEFAULT_PALETTE);
+    CountingListener listener = new CountingListener(run);
+    PuzzleDesign design;
+    timeBegin = System.nanoTime();
+    try (GridGenerator generator = new GridGenerator(generatorProperties)) {
+      design = generator.designPuzzle(graph, new Random(seed), false, listener);
+    }
+    long designNanos = System.nanoTime() - timeBegin;
+    run.constraints =
+        design.constraints.countVertexConstraints() + design.constraints.countDiamondConstraints();
+    run.stageNanos[3] = listener.pathNanos;
+    run.stageNanos[4] = designNanos - listener.pathNanos;
+
+    timeBegin = System.nanoTime();
+    PuzzleRenderer renderer =
+        new PuzzleRenderer(design, outputSideLength, Palette.DEFAULT_PALETTE);
+    BufferedImage puzzleImage = renderer.render(null);
+    BufferedImage solutionImage =
+        renderer.render(PuzzleRenderer.positionsOf(design.path, graph.size()));
+    long timeRender = System.nanoTime();
+    ImageIO.write(puzzleImage, "png", DISCARD);
+    ImageIO.write(solutionImage, "png", DISCARD);
+    long timePng = System.nanoTime();
+    run.stageNanos[5] = timeRender - timeBegin;
+    run.stageNanos[6] = timePng - timeRender;
+    return run;
+  }
+
+  private static void print(PrintStream out, Run run) {
+    StringBuilder line = new StringBuilder(String.format("%-28s %6d %6d %6d", run.name, run.seed,
+        run.cells, run.constraints));
+    for (long nanos : run.stageNanos) {
+      line.append(String.format(" %10.1f", nanos / 1e6));
+    }
+    line.append(String.format(" %6d %10d %10d", run.satCalls, run.conflicts, run.decisions));
+    out.println(line);
+  }
+
+  public static void main(String[] args) throws IOException {
+    int repeats = 3;
+    long seed = 1;
+    int[] radii = {60, 90, 120};
+    String csvName = null;
+    List<String> configurations = new ArrayList<>();
+    for (int i = 0; i < args.length; ++i) {
+      if (args[i].equals("-n")) {
+        repeats = Integer.parseInt(args[++i]);
+      } else if (args[i].equals("-seed")) {
+        seed = Long.parseLong(args[++i]);
+      } else if (args[i].equals("-discs")) {
+        radii = args[++i].isEmpty()
+            ? new int[0] : Arrays.stream(args[i].split(",")).mapToInt(Integer::parseInt).toArray();
+      } else if (args[i].equals("-csv")) {
+        csvName = args[++i];
+      } else {
+        configurations.add(args[i]);
+      }
+    }
+    if (configurations.isEmpty()) {
+      Files.list(Paths.get("puzzles")).map(Object::toString).filter(name -> name.endsWith(".xml"))
+          .sorted().forEach(configurations::add);
+    }
+
+    StringBuilder header = new StringBuilder(
+        String.format("%-28s %6s %6s %6s", "puzzle", "seed", "cells", "clues"));
+    for (String stage : STAGES) {
+      header.append(String.format(" %10s", stage + " ms"));
+    }
+    header.append(String.format(" %6s %10s %10s", "sat", "conflicts", "decisions"));
+    System.out.println(header);
+
+    List<Run> runs = new ArrayList<>();
+    for (String configuration : configurations) {
+      GridGeneratorProperties properties;
+      try (InputStream input = new FileInputStream(configuration)) {
+        properties = GridGeneratorProperties.loadFromXML(input);
+      }
+      for (int r = 0; r < repeats; ++r) {
+        Run run = run(configuration, properties, null, properties.inputSideLength,
+            properties.outputSideLength, properties.designProperties, seed + r);
+        runs.add(run);
+        print(System.out, run);
+      }
+    }
+    for (int radius : radii) {
+      BitMask mask = disc(radius);
+      for (int r = 0; r < repeats; ++r) {
+        Run run = run("disc:" + radius, null, mask, DISC_SIDE_LENGTH, DISC_OUTPUT_SIDE_LENGTH,
+            new DesignProperties(), seed + r);
+        runs.add(run);
+        print(System.out, run);
+      }
+    }
+
+    if (csvName != null) {
+      Map<String, String> environment = BenchmarkRunner.environment();
+      try (PrintStream csv = new PrintStream(Files.newOutputStream(Paths.get(csvName)))) {
+        StringBuilder csvHeader = new StringBuilder("puzzle,seed,cells,clues");
+        for (String stage : STAGES) {
+          csvHeader.append(',').append(stage).append("_ms");
+        }
+        csvHeader.append(",sat_calls,conflicts,decisions");
+        for (String key : environment.keySet()) {
+          csvHeader.append(',').append(key);
+        }
+        csv.println(csvHeader);
+        for (Run run : runs) {
+          StringBuilder line = new StringBuilder();
+          line.append(run.name).append(',').append(run.seed).append(',').append(run.cells)
+              .append(',').append(run.constraints);
+          for (long nanos : run.stageNanos) {
+            line.append(',').append(String.format("%.3f", nanos / 1e6));
+          }
+          line.append(',').append(run.satCalls).append(',').append(run.conflicts).append(',')
+              .append(run.decisions);
+          for (String value : environment.values()) {
+            line.append(",\"").append(value.replace("\"", "\"\"")).append('"');
+          }
+          csv.println(line);
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,353 @@
+package fr.polytechnique.rikudo.benchmark;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// A small measurement harness in the spirit of JMH: every benchmark runs warm-up iterations, then
+// measurement iterations, each repeating the operation for a fixed time, in several forked JVMs
+// so that one unlucky JIT compilation does not decide the score. With the gc profiler, every
+// iteration also reports the bytes allocated per operation and the collections it triggered.
+//
+// A benchmark class builds operations out of parameters and hands its main arguments to run():
+//   -wi n        warm-up iterations (5)
+//   -i n         measurement iterations (5)
+//   -r ms        time of an iteration (1000), an operation runs at least once per iteration
+//   -f n         forked JVMs (2), 0 measures in this very JVM
+//   -jvmArgs s   arguments of the forked JVMs
+//   -prof gc     allocation and collection statistics
+//   -p k=v1,v2   values of a parameter, every combination of values is measured
+public class Harness {
+  private static final String ITERATION_PREFIX = "# iteration ";
+
+  // Consumes the results of operations so that the JIT cannot remove the computation
+  public static volatile Object sink;
+
+  public interface Operation {
+    Object run() throws Exception;
+  }
+
+  public interface OperationFactory {
+    // Called once per fork, setup work done here is not measured
+    Operation create(Map<String, String> parameters) throws Exception;
+  }
+
+  public static class Options {
+    public int warmupIterations = 5;
+    public int measurementIterations = 5;
+    public long iterationMillis = 1000;
+    public int forks = 2;
+    public String jvmArgs = "";
+    public boolean gcProfiler = false;
+    public final Map<String, List<String>> parameters = new LinkedHashMap<>();
+
+    // The options which are not given keep their values
+    public void parse(String[] args) {
+      for (int i = 0; i < args.length; ++i) {
+        switch (args[i]) {
+          case "-wi":
+            warmupIterations = Integer.parseInt(args[++i]);
+            break;
+          case "-i":
+            measurementIterations = Integer.parseInt(args[++i]);
+            break;
+          case "-r":
+            iterationMillis = Long.parseLong(args[++i]);
+            break;
+          case "-f":
+            forks = Integer.parseInt(args[++i]);
+            break;
+          case "-jvmArgs":
+            jvmArgs = args[++i];
+            break;
+          case "-prof":
+            if (!args[++i].equals("gc")) {
+              throw new IllegalArgumentException("Unknown profiler " + args[i]);
+            }
+            gcProfiler = true;
+            break;
+          case "-p":
+            String parameter = args[++i];
+            int equals = parameter.indexOf('=');
+            if (equals <= 0) {
+              throw new IllegalArgumentException("Expected -p name=value1,value2: " + parameter);
+            }
+            parameters.put(parameter.substring(0, equals),
+                Arrays.asList(parameter.substring(equals + 1).split(",")));
+            break;
+          default:
+            throw new IllegalArgumentException("Unknown option " + args[i]);
+        }
+      }
+    }
+
+    private List<String> toArgs() {
+      return new ArrayList<>(Arrays.asList("-wi", Integer.toString(warmupIterations),
+          "-i", Integer.toString(measurementIterations), "-r", Long.toString(iterationMillis)));
+    }
+  }
+
+  public static class Iteration {
+    public final long operations;
+    public final double nanosPerOperation;
+    public final double bytesPerOperation;
+    public final long gcCount;
+    public final long gcMillis;
+
+    Iteration(long operations, double nanosPerOperation, double bytesPerOperation, long gcCount,
+        long gcMillis) {
+      this.operations = operations;
+      this.nanosPerOperation = nanosPerOperation;
+      this.bytesPerOperation = bytesPerOperation;
+      this.gcCount = gcCount;
+      this.gcMillis = gcMillis;
+    }
+
+    String format() {
+      return operations + " " + nanosPerOperation + " " + bytesPerOperation + " " + gcCount + " "
+          + gcMillis;
+    }
+
+    static Iteration parse(String line) {
+      String[] fields = line.trim().split(" ");
+      return new Iteration(Long.parseLong(fields[0]), Double.parseDouble(fields[1]),
+          Double.parseDouble(fields[2]), Long.parseLong(fields[3]), Long.parseLong(fields[4]));
+    }
+  }
+
+  // The measurement iterations of one combination of parameters, from all the forks
+  public static class Result {
+    public final Map<String, String> parameters;
+    public final List<Iteration> iterations;
+
+    Result(Map<String, String> parameters, List<Iteration> iterations) {
+      this.parameters = parameters;
+      this.iterations = iterations;
+    }
+
+    public double mean() {
+      double sum = 0;
+      for (Iteration iteration : iterations) {
+        sum += iteration.nanosPerOperation;
+      }
+      return sum / iterations.size();
+    }
+
+    public double standardDeviation() {
+      if (iterations.size() < 2) {
+        return Double.NaN;
+      }
+      double mean = mean();
+      double sum = 0;
+      for (Iteration iteration : iterations) {
+        sum += (iteration.nanosPerOperation - mean) * (iteration.nanosPerOperation - mean);
+      }
+      return Math.sqrt(sum / (iterations.size() - 1));
+    }
+
+    public double bytesPerOperation() {
+      double sum = 0;
+      for (Iteration iteration : iterations) {
+        sum += iteration.bytesPerOperation;
+      }
+      return sum / iterations.size();
+    }
+
+    public long gcCount() {
+      return iterations.stream().mapToLong(iteration -> iteration.gcCount).sum();
+    }
+
+    public long gcMillis() {
+      return iterations.stream().mapToLong(iteration -> iteration.gcMillis).sum();
+    }
+  }
+
+  private static long[] gcTotals() {
+    long[] totals = new long[2];
+    for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+      totals[0] += Math.max(0, collector.getCollectionCount());
+      totals[1] += Math.max(0, collector.getCollectionTime());
+    }
+    return totals;
+  }
+
+  // Bytes allocated by the current thread so far, or -1 where the JVM cannot tell
+  static long allocatedBytes() {
+    java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    if (threads instanceof com.sun.management.ThreadMXBean) {
+      return ((com.sun.management.ThreadMXBean) threads)
+          .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+    return -1;
+  }
+
+  private static Iteration runIteration(Operation operation, long iterationMillis)
+      throws Exception {
+    long[] gcBegin = gcTotals();
+    long bytesBegin = allocatedBytes();
+    long timeBegin = System.nanoTime();
+    long timeLimit = timeBegin + 1000000L * iterationMillis;
+    long operations = 0;
+    long timeEnd;
+    do {
+      sink = operation.run();
+      ++operations;
+      timeEnd = System.nanoTime();
+    } while (timeEnd < timeLimit);
+    long bytesEnd = allocatedBytes();
+    long[] gcEnd = gcTotals();
+
+    double bytes = bytesBegin < 0 ? Double.NaN : (double) (bytesEnd - bytesBegin) / operations;
+    return new Iteration(operations, (double) (timeEnd - timeBegin) / operations, bytes,
+        gcEnd[0] - gcBegin[0], gcEnd[1] - gcBegin[1]);
+  }
+
+  // Warms up, then returns the measurement iterations
+  public static List<Iteration> measure(Operation operation, Options options) throws Exception {
+    for (int i = 0; i < options.warmupIterations; ++i) {
+      runIteration(operation, options.iterationMillis);
+    }
+    List<Iteration> iterations = new ArrayList<>();
+    for (int i = 0; i < options.measurementIterations; ++i) {
+      System.gc();
+      iterations.add(runIteration(operation, options.iterationMillis));
+    }
+    return iterations;
+  }
+
+  public static List<Map<String, String>> combinations(Map<String, List<String>> parameters) {
+    List<Map<String, String>> result = new ArrayList<>();
+    result.add(new LinkedHashMap<>());
+    for (Map.Entry<String, List<String>> parameter : parameters.entrySet()) {
+      List<Map<String, String>> extended = new ArrayList<>();
+      for (Map<String, String> combination : result) {
+        for (String value : parameter.getValue()) {
+          Map<String, String> copy = new LinkedHashMap<>(combination);
+          copy.put(parameter.getKey(), value);
+          extended.add(copy);
+        }
+      }
+      result = extended;
+    }
+    return result;
+  }
+
+  private static List<Iteration> runFork(Class<?> benchmarkClass, Map<String, String> parameters,
+      Options options) throws IOException, InterruptedException {
+    List<String> command = new ArrayList<>();
+    command.add(System.getProperty("java.home") + "/bin/java");
+    if (!options.jvmArgs.trim().isEmpty()) {
+      command.addAll(Arrays.asList(options.jvmArgs.trim().split("\\s+")));
+    }
+    command.addAll(Arrays.asList("-cp", System.getProperty("java.class.path"),
+        benchmarkClass.getName(), "--fork"));
+    command.addAll(options.toArgs());
+    for (Map.Entry<String, String> parameter : parameters.entrySet()) {
+      command.add(parameter.getKey() + "=" + parameter.getValue());
+    }
+
+    // The output of the benchmark itself is dropped, errors are shown
+    Process process = new ProcessBuilder(command)
+        .redirectError(ProcessBuilder.Redirect.INHERIT).start();
+    List<Iteration> iterations = new ArrayList<>();
+    try (BufferedReader reader =
+        new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+      for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+        if (line.startsWith(ITERATION_PREFIX)) {
+          iterations.add(Iteration.parse(line.substring(ITERATION_PREFIX.length())));
+        }
+      }
+    }
+    if (process.waitFor() != 0 || iterations.size() != options.measurementIterations) {
+      throw new IOException("Fork of " + parameters + " failed with exit code "
+          + process.exitValue());
+    }
+    return iterations;
+  }
+
+  // Runs the forked part of a benchmark if asked to by the arguments, and returns whether it did
+  public static boolean runFork(String[] args, OperationFactory factory) throws Exception {
+    if (args.length == 0 || !args[0].equals("--fork")) {
+      return false;
+    }
+    Options options = new Options();
+    Map<String, String> parameters = new LinkedHashMap<>();
+    List<String> optionArgs = new ArrayList<>();
+    for (int i = 1; i < args.length; ++i) {
+      int equals = args[i].indexOf('=');
+      if (!args[i].startsWith("-") && equals > 0) {
+        parameters.put(args[i].substring(0, equals), args[i].substring(equals + 1));
+      } else {
+        optionArgs.add(args[i]);
+      }
+    }
+    options.parse(optionArgs.toArray(new String[0]));
+
+    Operation operation = factory.create(parameters);
+    for (Iteration iteration : measure(operation, options)) {
+      System.out.println(ITERATION_PREFIX + iteration.format());
+    }
+    System.out.flush();
+    return true;
+  }
+
+  // Measures every combination of parameters and prints a table of scores
+  public static List<Result> run(Class<?> benchmarkClass, Options options,
+      OperationFactory factory) throws Exception {
+    List<Result> results = new ArrayList<>();
+    for (Map<String, String> parameters : combinations(options.parameters)) {
+      System.err.println("# Benchmark " + benchmarkClass.getSimpleName() + " " + parameters);
+      List<Iteration> iterations = new ArrayList<>();
+      if (options.forks == 0) {
+        iterations.addAll(measure(factory.create(parameters), options));
+      }
+      for (int fork = 0; fork < options.forks; ++fork) {
+        iterations.addAll(runFork(benchmarkClass, parameters, options));
+      }
+      Result result = new Result(parameters, iterations);
+      results.add(result);
+      System.err.printf("#   %.3f ms/op\n", result.mean() / 1e6);
+    }
+    printTable(results, options.gcProfiler);
+    return results;
+  }
+
+  public static void printTable(List<Result> results, boolean gcProfiler) {
+    if (results.isEmpty()) {
+      return;
+    }
+    StringBuilder header = new StringBuilder();
+    for (String name : results.get(0).parameters.keySet()) {
+      header.append(String.format("%-24s ", "(" + name + ")"));
+    }
+    header.append(String.format("%5s %14s    %12s %14s %14s", "Cnt", "Score", "Error", "Min", "Max"));
+    if (gcProfiler) {
+      header.append(String.format(" %16s %8s %10s", "Alloc B/op", "GC cnt", "GC ms"));
+    }
+    System.out.println(header);
+
+    for (Result result : results) {
+      StringBuilder line = new StringBuilder();
+      for (String value : result.parameters.values()) {
+        line.append(String.format("%-24s ", value));
+      }
+      double min = result.iterations.stream().mapToDouble(i -> i.nanosPerOperation).min().orElse(0);
+      double max = result.iterations.stream().mapToDouble(i -> i.nanosPerOperation).max().orElse(0);
+      line.append(String.format("%5d %11.3f ms +- %9.3f ms %11.3f ms %11.3f ms",
+          result.iterations.size(), result.mean() / 1e6, result.standardDeviation() / 1e6,
+          min / 1e6, max / 1e6));
+      if (gcProfiler) {
+        line.append(String.format(" %16.0f %8d %10d", result.bytesPerOperation(),
+            result.gcCount(), result.gcMillis()));
+      }
+      System.out.println(line);
+    }
+  }
+}
@@ -0,0 +1,42 @@
+package fr.polytechnique.rikudo.benchmark;
+
+import fr.polytechnique.rikudo.benchmark.Benchmark.ProblemInstance;
+import fr.polytechnique.rikudo.benchmark.Harness.Operation;
+import fr.polytechnique.rikudo.benchmark.Harness.Options;
+import fr.polytechnique.rikudo.solver.BacktrackingSolver;
+import fr.polytechnique.rikudo.solver.ReducingToSATSolver;
+import fr.polytechnique.rikudo.solver.ReducingToSATSolver.Mode;
+import java.util.Arrays;
+import java.util.Map;
+
+// Measures solve() of both solvers with the Harness, on the problems of BenchmarkProblems, e.g.
+//   prog -p problem=grid:5,grid:7,mask:puzzles/bowtie.xml -p solver=backtracking -prof gc
+// A new solver is built for every operation, as the solvers keep no state between problems.
+public class SolverBenchmark {
+  private static Operation createOperation(Map<String, String> parameters) throws Exception {
+    ProblemInstance problem = BenchmarkProblems.load(parameters.get("problem"));
+    switch (parameters.get("solver")) {
+      case "sat":
+        return () -> new ReducingToSATSolver(problem.graph, problem.source, problem.target,
+            Mode.E_MODE_PATH, problem.constraints).solve();
+      case "backtracking":
+        return () -> new BacktrackingSolver(problem.graph, problem.source, problem.target,
+            problem.constraints).solve();
+      default:
+        throw new IllegalArgumentException("Unknown solver " + parameters.get("solver"));
+    }
+  }
+
+  public static void main(String[] args) throws Exception {
+    if (Harness.runFork(args, SolverBenchmark::createOperation)) {
+      return;
+    }
+
+    Options options = new Options();
+    options.parameters.put("problem", Arrays.asList("full:50", "cyclic:100", "grid:5", "grid:7",
+        "evenGrid:2", "file:riXkudo"));
+    options.parameters.put("solver", Arrays.asList("sat", "backtracking"));
+    options.parse(args);
+    Harness.run(SolverBenchmark.class, options, SolverBenchmark::createOperation);
+  }
+}
@@ -2,23 +2,25 @@ package fr.polytechnique.rikudo.binaryImages;
 
 import java.awt.*;
 import java.awt.image.*;
+import java.io.File;
+import java.io.IOException;
 import javax.swing.JComponent;
 import javax.swing.JFrame;
 
-// Manipulation for binary images
-public class BinaryImage {
+// Manipulation for binary images, stored one bit per pixel
+public class BinaryImage implements BinaryMask {
 
     private int width; // width of the image
     private int height; // height of the image
-    private int[] raster; // raster for the image
+    private BitMask raster; // raster for the image
+    private IntegralImage index; // optional summed-area table, dropped whenever a pixel changes
 
     // Constructor that instantiates an image of a specified width and height (all pixels are black)
     public BinaryImage(int width, int height) {
         this.width = width;
         this.height = height;
-        raster = new int[width * height];
-        for (int i = 0; i < width * height; i++)
-            raster[i] = 0xFF << 24;
+        raster = new BitMask(width, height);
+        raster.fill(true);
     }
 
     // Constructor that instantiates a square image of a specified size (all pixels are black)
@@ -26,28 +28,27 @@ public class BinaryImage {
         this(size, size);
     }
 
-    // Constructor that reads an image from a specified file (.png format)
+    // Constructor that reads an image from a specified file (.png or .pbm format)
     public BinaryImage(String filename) {
         // System.out.println("Opening image from file " + filename + " ... ");
-        java.awt.Image img = Toolkit.getDefaultToolkit().getImage(filename);
-        PixelGrabber pg = new PixelGrabber(img, 0, 0, -1, -1, true);
         try {
-            pg.grabPixels();
-        } catch (InterruptedException e) {
-        }
-        raster = (int[]) pg.getPixels();
-        width = pg.getWidth();
-        height = pg.getHeight();
-        if (width == -1) {
+            raster = MaskLoader.load(new File(filename));
+        } catch (IOException e) {
             System.out.println("Error in opening the file " + filename);
-            throw new IllegalArgumentException("Error in opening the file " + filename);
+            throw new IllegalArgumentException("Error in opening the file " + filename, e);
         }
+        width = raster.getWidth();
+        height = raster.getHeight();
     }
 
     // Produces a printable image from the raster
     public java.awt.Image toImage() {
-        ImageProducer ip = new MemoryImageSource(width, height, raster, 0, width);
-        return Toolkit.getDefaultToolkit().createImage(ip);
+        BufferedImage img = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_BINARY);
+        WritableRaster imgRaster = img.getRaster();
+        for (int y = 0; y < height; y++)
+            for (int x = 0; x < width; x++)
+                imgRaster.setSample(x, y, 0, raster.isBlack(x, y) ? 0 : 1);
+        return img;
     }
 
     // Return the width of the image
@@ -65,12 +66,13 @@ public class BinaryImage {
         return (this.width == this.height ? this.width : -1);
     }
 
-    // Set the pixel at position (x,y) to color c
+    // Set the pixel at position (x,y) to color c (black if its RGB components are all zero)
     protected void setPixel(int x, int y, int c) {
         if (x < 0 || x >= width || y < 0 || y >= height) {
             throw new IllegalArgumentException("illegal position");
         }
-        raster[x + width * y] = c;
+        raster.setBlack(x, y, (c & 0xFFFFFF) == 0);
+        index = null;
     }
 
     // Test whether a pixel is black or white
@@ -78,7 +80,7 @@ public class BinaryImage {
         if (x < 0 || x >= width || y < 0 || y >= height) {
             throw new IllegalArgumentException("illegal position");
         }
-        return (raster[x + width * y] & 0xFFFFFF) == 0;
+        return raster.isBlack(x, y);
     }
 
     // Blacken the pixel at position (x,y)
@@ -105,17 +107,27 @@ public class BinaryImage {
                 toWhite(x + i, y + j);
     }
 
+    // Build the summed-area table, so that the following region queries take constant time until the next modification
+    public void buildIndex() {
+        if (index == null)
+            index = new IntegralImage(raster);
+    }
+
+    // Count the black pixels of a rectangular region defined by its top left corner P=(x,y) and by its size
+    @Override
+    public int countBlack(int x, int y, int width, int height) {
+        if (index != null)
+            return index.countBlack(x, y, width, height);
+        return raster.countBlack(x, y, width, height);
+    }
+
     // Test whether all pixels in a given square region are of the same color
     public boolean isConstantColor(int x, int y, int size) {
         if (x < 0 || x + size > width || y < 0 || y + size > height) {
             throw new IllegalArgumentException("illegal position");
         }
-        for (int i = 0; i < size; i++)
-            for (int j = 0; j < size; j++) {
-                if (raster[x + width * y] != raster[(x + i) + width * (y + j)])
-                    return false;
-            }
-        return true;
+        int blackCount = countBlack(x, y, size, size);
+        return blackCount == 0 || blackCount == size * size;
     }
 }
 
@@ -0,0 +1,21 @@
+package fr.polytechnique.rikudo.binaryImages;
+
+// Read-only access to the pixels of a black and white image
+public interface BinaryMask {
+    int getWidth();
+    int getHeight();
+    boolean isBlack(int x, int y);
+
+    // Number of black pixels in the rectangle of the given size whose top left corner is (x,y)
+    default int countBlack(int x, int y, int width, int height) {
+        if (x < 0 || x + width > getWidth() || y < 0 || y + height > getHeight()) {
+            throw new IllegalArgumentException("illegal position");
+        }
+        int count = 0;
+        for (int j = y; j < y + height; j++)
+            for (int i = x; i < x + width; i++)
+                if (isBlack(i, j))
+                    count++;
+        return count;
+    }
+}
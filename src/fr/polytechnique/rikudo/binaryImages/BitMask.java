@@ -0,0 +1,102 @@
+package fr.polytechnique.rikudo.binaryImages;
+
+import java.util.Arrays;
+
+// Binary mask packed one bit per pixel, every row starts at a new 64-bit word
+public class BitMask implements BinaryMask {
+
+    private final int width;
+    private final int height;
+    private final int wordsPerRow;
+    private final long[] words;
+
+    // All the pixels are white
+    public BitMask(int width, int height) {
+        if (width < 0 || height < 0) {
+            throw new IllegalArgumentException("illegal size");
+        }
+        this.width = width;
+        this.height = height;
+        this.wordsPerRow = (width + 63) >>> 6;
+        this.words = new long[wordsPerRow * height];
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    // Number of 64-bit words which hold a row, bit (x & 63) of word (x >> 6) is the pixel x
+    public int getWordsPerRow() {
+        return wordsPerRow;
+    }
+
+    public long getWord(int y, int wordIndex) {
+        return words[y * wordsPerRow + wordIndex];
+    }
+
+    public boolean isBlack(int x, int y) {
+        if (x < 0 || x >= width || y < 0 || y >= height) {
+            throw new IllegalArgumentException("illegal position");
+        }
+        return (words[y * wordsPerRow + (x >>> 6)] & (1L << x)) != 0;
+    }
+
+    // Counts whole words at once, the cost is proportional to height * width / 64
+    @Override
+    public int countBlack(int x, int y, int width, int height) {
+        if (x < 0 || x + width > this.width || y < 0 || y + height > this.height) {
+            throw new IllegalArgumentException("illegal position");
+        }
+        if (width <= 0 || height <= 0) {
+            return 0;
+        }
+        int firstWord = x >>> 6;
+        int lastWord = (x + width - 1) >>> 6;
+        long firstMask = -1L << x;
+        long lastMask = -1L >>> (63 - ((x + width - 1) & 63));
+
+        int count = 0;
+        for (int j = y; j < y + height; j++) {
+            int row = j * wordsPerRow;
+            for (int k = firstWord; k <= lastWord; k++) {
+                long word = words[row + k];
+                if (k == firstWord) {
+                    word &= firstMask;
+                }
+                if (k == lastWord) {
+                    word &= lastMask;
+                }
+                count += Long.bitCount(word);
+            }
+        }
+        return count;
+    }
+
+    public void fill(boolean black) {
+        Arrays.fill(words, 0L);
+        if (black) {
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < width; x += 64) {
+                    int bits = Math.min(64, width - x);
+                    words[y * wordsPerRow + (x >>> 6)] = bits == 64 ? -1L : (1L << bits) - 1;
+                }
+            }
+        }
+    }
+
+    public void setBlack(int x, int y, boolean black) {
+        if (x < 0 || x >= width || y < 0 || y >= height) {
+            throw new IllegalArgumentException("illegal position");
+        }
+        int index = y * wordsPerRow + (x >>> 6);
+        if (black) {
+            words[index] |= 1L << x;
+        } else {
+            words[index] &= ~(1L << x);
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package fr.polytechnique.rikudo.binaryImages;
+
+import java.awt.image.BufferedImage;
+
+// Exposes a BufferedImage as a binary mask, a pixel is black if its RGB components are all zero
+public class BufferedImageMask implements BinaryMask {
+
+    private final BufferedImage img;
+
+    public BufferedImageMask(BufferedImage img) {
+        this.img = img;
+    }
+
+    public int getWidth() {
+        return img.getWidth();
+    }
+
+    public int getHeight() {
+        return img.getHeight();
+    }
+
+    public boolean isBlack(int x, int y) {
+        return (img.getRGB(x, y) & 0xFFFFFF) == 0;
+    }
+}
@@ -0,0 +1,49 @@
+package fr.polytechnique.rikudo.binaryImages;
+
+// Summed-area table of a binary mask: counts the black pixels of any rectangle in constant time.
+// It takes one int per pixel, so it is meant to be built on demand for query-heavy work.
+public class IntegralImage implements BinaryMask {
+
+    private final BinaryMask mask;
+    private final int stride;
+    // sums[(y) * stride + x] is the number of black pixels above and to the left of (x,y)
+    private final int[] sums;
+
+    public IntegralImage(BinaryMask mask) {
+        this.mask = mask;
+        this.stride = mask.getWidth() + 1;
+        this.sums = new int[stride * (mask.getHeight() + 1)];
+        for (int y = 0; y < mask.getHeight(); y++) {
+            int rowCount = 0;
+            for (int x = 0; x < mask.getWidth(); x++) {
+                if (mask.isBlack(x, y))
+                    rowCount++;
+                sums[(y + 1) * stride + x + 1] = sums[y * stride + x + 1] + rowCount;
+            }
+        }
+    }
+
+    public int getWidth() {
+        return mask.getWidth();
+    }
+
+    public int getHeight() {
+        return mask.getHeight();
+    }
+
+    public boolean isBlack(int x, int y) {
+        return mask.isBlack(x, y);
+    }
+
+    @Override
+    public int countBlack(int x, int y, int width, int height) {
+        if (x < 0 || x + width > getWidth() || y < 0 || y + height > getHeight()) {
+            throw new IllegalArgumentException("illegal position");
+        }
+        if (width <= 0 || height <= 0) {
+            return 0;
+        }
+        return sums[(y + height) * stride + x + width] - sums[y * stride + x + width]
+            - sums[(y + height) * stride + x] + sums[y * stride + x];
+    }
+}
@@ -0,0 +1,402 @@
+package fr.polytechnique.rikudo.binaryImages;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.Raster;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.zip.InflaterInputStream;
+import javax.imageio.ImageIO;
+
+// Loads masks into a BitMask. PBM files and non-interlaced PNG files are decoded row by row, so only
+// a couple of rows are held besides the packed mask itself. Other images are read with ImageIO and
+// their pixels are taken directly from the data buffer. A pixel is black if its RGB components are
+// all zero, transparency is ignored.
+public class MaskLoader {
+
+    private static final byte[] PNG_SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+
+    // The largest 16-bit grey sample which ImageIO images show as black
+    private static final int MAX_BLACK_GREY16 = maxBlackGrey16();
+
+    private static int maxBlackGrey16() {
+        BufferedImage pixel = new BufferedImage(1, 1, BufferedImage.TYPE_USHORT_GRAY);
+        int sample = 0;
+        do {
+            pixel.getRaster().setSample(0, 0, 0, ++sample);
+        } while ((pixel.getRGB(0, 0) & 0xFFFFFF) == 0 && sample < 0xFFFF);
+        return sample - 1;
+    }
+
+    public static BitMask load(File file) throws IOException {
+        String name = file.getName().toLowerCase();
+        if (name.endsWith(".pbm")) {
+            try (InputStream input = new BufferedInputStream(new FileInputStream(file))) {
+                return loadPbm(input);
+            }
+        }
+        if (name.endsWith(".png")) {
+            try (InputStream input = new BufferedInputStream(new FileInputStream(file))) {
+                BitMask mask = loadPng(input);
+                if (mask != null) {
+                    return mask;
+                }
+            }
+        }
+
+        BufferedImage img = ImageIO.read(file);
+        if (img == null) {
+            throw new IOException("Unsupported image format: " + file);
+        }
+        return fromImage(img);
+    }
+
+    // Portable bitmap, plain (P1) or raw (P4), where 1 stands for black
+    public static BitMask loadPbm(InputStream input) throws IOException {
+        String magic = nextPbmToken(input);
+        if (!magic.equals("P1") && !magic.equals("P4")) {
+            throw new IOException("Not a PBM file");
+        }
+        int width = Integer.parseInt(nextPbmToken(input));
+        int height = Integer.parseInt(nextPbmToken(input));
+        BitMask mask = new BitMask(width, height);
+
+        if (magic.equals("P1")) {
+            for (int y = 0; y < height; ++y) {
+                for (int x = 0; x < width; ++x) {
+                    int c = input.read();
+                    while (c != '0' && c != '1') {
+                        if (c == -1) {
+                            throw new EOFException("Truncated PBM file");
+                        }
+                        c = input.read();
+                    }
+                    mask.setBlack(x, y, c == '1');
+                }
+            }
+        } else {
+            byte[] row = new byte[(width + 7) / 8];
+            DataInputStream data = new DataInputStream(input);
+            for (int y = 0; y < height; ++y) {
+                data.readFully(row);
+                for (int x = 0; x < width; ++x) {
+                    if ((row[x >>> 3] & (0x80 >>> (x & 7))) != 0) {
+                        mask.setBlack(x, y, true);
+                    }
+                }
+            }
+        }
+        return mask;
+    }
+
+    // Reads a header token, the single whitespace character after it is consumed as well
+    private static String nextPbmToken(InputStream input) throws IOException {
+        StringBuilder token = new StringBuilder();
+        int c = input.read();
+        while (true) {
+            if (c == -1) {
+                throw new EOFException("Truncated PBM header");
+            } else if (c == '#') {
+                while (c != '\n' && c != -1) {
+                    c = input.read();
+                }
+            } else if (Character.isWhitespace(c)) {
+                if (token.length() > 0) {
+                    return token.toString();
+                }
+                c = input.read();
+            } else {
+                token.append((char) c);
+                c = input.read();
+            }
+        }
+    }
+
+    // Returns null for interlaced PNG files, which cannot be decoded row by row
+    public static BitMask loadPng(InputStream input) throws IOException {
+        DataInputStream data = new DataInputStream(input);
+        byte[] signature = new byte[PNG_SIGNATURE.length];
+        data.readFully(signature);
+        if (!Arrays.equals(signature, PNG_SIGNATURE)) {
+            throw new IOException("Not a PNG file");
+        }
+
+        int width = 0;
+        int height = 0;
+        int bitDepth = 0;
+        int colorType = 0;
+        boolean[] blackPaletteEntries = null;
+
+        while (true) {
+            int length = data.readInt();
+            String type = readChunkType(data);
+            if (type.equals("IHDR")) {
+                width = data.readInt();
+                height = data.readInt();
+                bitDepth = data.readUnsignedByte();
+                colorType = data.readUnsignedByte();
+                data.readUnsignedByte(); // compression
+                data.readUnsignedByte(); // filter
+                int interlace = data.readUnsignedByte();
+                data.readInt(); // CRC
+                if (interlace != 0) {
+                    return null;
+                }
+            } else if (type.equals("PLTE")) {
+                blackPaletteEntries = new boolean[length / 3];
+                for (int i = 0; i < length / 3; ++i) {
+                    int r = data.readUnsignedByte();
+                    int g = data.readUnsignedByte();
+                    int b = data.readUnsignedByte();
+                    blackPaletteEntries[i] = r == 0 && g == 0 && b == 0;
+                }
+                data.skipBytes(length % 3);
+                data.readInt(); // CRC
+            } else if (type.equals("IDAT")) {
+                InputStream pixels = new InflaterInputStream(new IdatInputStream(data, length));
+                return decodePng(new DataInputStream(pixels), width, height, bitDepth, colorType,
+                    blackPaletteEntries);
+            } else if (type.equals("IEND")) {
+                throw new IOException("PNG file without image data");
+            } else {
+                data.readFully(new byte[length]);
+                data.readInt(); // CRC
+            }
+        }
+    }
+
+    private static String readChunkType(DataInputStream data) throws IOException {
+        byte[] type = new byte[4];
+        data.readFully(type);
+        return new String(type, "US-ASCII");
+    }
+
+    private static BitMask decodePng(DataInputStream pixels, int width, int height, int bitDepth,
+                                     int colorType, boolean[] blackPaletteEntries) throws IOException {
+        int channels;
+        int colorChannels;
+        switch (colorType) {
+            case 0: channels = 1; colorChannels = 1; break;
+            case 2: channels = 3; colorChannels = 3; break;
+            case 3: channels = 1; colorChannels = 1; break;
+            case 4: channels = 2; colorChannels = 1; break;
+            case 6: channels = 4; colorChannels = 3; break;
+            default: throw new IOException("Unknown PNG color type " + colorType);
+        }
+        if (colorType == 3 && blackPaletteEntries == null) {
+            throw new IOException("PNG palette is missing");
+        }
+
+        int bitsPerPixel = channels * bitDepth;
+        int bytesPerPixel = Math.max(1, bitsPerPixel / 8);
+        int rowBytes = (int) (((long) width * bitsPerPixel + 7) / 8);
+        byte[] row = new byte[rowBytes];
+        byte[] previousRow = new byte[rowBytes];
+        BitMask mask = new BitMask(width, height);
+
+        for (int y = 0; y < height; ++y) {
+            int filter = pixels.readUnsignedByte();
+            pixels.readFully(row);
+            unfilter(filter, row, previousRow, bytesPerPixel);
+
+            for (int x = 0; x < width; ++x) {
+                boolean black;
+                if (bitDepth < 8) {
+                    int bit = x * bitDepth;
+                    int sample = (row[bit >>> 3] >>> (8 - bitDepth - (bit & 7))) & ((1 << bitDepth) - 1);
+                    black = colorType == 3 ? isBlackEntry(blackPaletteEntries, sample) : sample == 0;
+                } else if (colorType == 3) {
+                    black = isBlackEntry(blackPaletteEntries, row[x] & 0xFF);
+                } else if (bitDepth == 16) {
+                    // As seen through ImageIO: colour samples are rounded to 8 bits, so up to 128
+                    // counts as zero, while grey goes through the linear grey colour space
+                    black = true;
+                    int offset = x * bytesPerPixel;
+                    for (int i = 0; i < colorChannels && black; ++i) {
+                        int sample = (row[offset + 2 * i] & 0xFF) << 8 | (row[offset + 2 * i + 1] & 0xFF);
+                        black = colorChannels == 1
+                            ? sample <= MAX_BLACK_GREY16
+                            : (sample * 255 + 32767) / 65535 == 0;
+                    }
+                } else {
+                    black = true;
+                    int offset = x * bytesPerPixel;
+                    for (int i = 0; i < colorChannels && black; ++i) {
+                        black = row[offset + i] == 0;
+                    }
+                }
+                if (black) {
+                    mask.setBlack(x, y, true);
+                }
+            }
+
+            byte[] tmp = previousRow;
+            previousRow = row;
+            row = tmp;
+        }
+        return mask;
+    }
+
+    private static boolean isBlackEntry(boolean[] blackPaletteEntries, int index) {
+        return index < blackPaletteEntries.length && blackPaletteEntries[index];
+    }
+
+    private static void unfilter(int filter, byte[] row, byte[] previousRow, int bytesPerPixel)
+        throws IOException {
+        for (int i = 0; i < row.length; ++i) {
+            int left = i >= bytesPerPixel ? row[i - bytesPerPixel] & 0xFF : 0;
+            int up = previousRow[i] & 0xFF;
+            int upLeft = i >= bytesPerPixel ? previousRow[i - bytesPerPixel] & 0xFF : 0;
+            int predictor;
+            switch (filter) {
+                case 0: predictor = 0; break;
+                case 1: predictor = left; break;
+                case 2: predictor = up; break;
+                case 3: predictor = (left + up) >>> 1; break;
+                case 4: predictor = paeth(left, up, upLeft); break;
+                default: throw new IOException("Unknown PNG filter " + filter);
+            }
+            row[i] = (byte) (row[i] + predictor);
+        }
+    }
+
+    private static int paeth(int a, int b, int c) {
+        int p = a + b - c;
+        int pa = Math.abs(p - a);
+        int pb = Math.abs(p - b);
+        int pc = Math.abs(p - c);
+        if (pa <= pb && pa <= pc) {
+            return a;
+        }
+        return pb <= pc ? b : c;
+    }
+
+    // Concatenation of the payloads of consecutive IDAT chunks
+    private static class IdatInputStream extends InputStream {
+        private final DataInputStream data;
+        private int remaining;
+        private boolean finished;
+
+        IdatInputStream(DataInputStream data, int firstChunkLength) {
+            this.data = data;
+            this.remaining = firstChunkLength;
+            this.finished = false;
+        }
+
+        private boolean nextChunk() throws IOException {
+            while (remaining == 0 && !finished) {
+                data.readInt(); // CRC
+                int length = data.readInt();
+                if (readChunkType(data).equals("IDAT")) {
+                    remaining = length;
+                } else {
+                    finished = true;
+                }
+            }
+            return !finished;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (!nextChunk()) {
+                return -1;
+            }
+            --remaining;
+            return data.readUnsignedByte();
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            if (length == 0) {
+                return 0;
+            }
+            if (!nextChunk()) {
+                return -1;
+            }
+            int count = data.read(buffer, offset, Math.min(length, remaining));
+            if (count < 0) {
+                throw new EOFException("Truncated PNG file");
+            }
+            remaining -= count;
+            return count;
+        }
+    }
+
+    // Reads the pixels from the data buffer when its layout is known, and row by row otherwise
+    public static BitMask fromImage(BufferedImage img) {
+        int width = img.getWidth();
+        int height = img.getHeight();
+        BitMask mask = new BitMask(width, height);
+        Raster raster = img.getRaster();
+        DataBuffer buffer = raster.getDataBuffer();
+        boolean direct = img.getColorModel().getColorSpace().isCS_sRGB()
+            || img.getType() == BufferedImage.TYPE_BYTE_GRAY;
+
+        if (direct && buffer instanceof DataBufferInt
+            && raster.getSampleModel() instanceof SinglePixelPackedSampleModel
+            && (img.getType() == BufferedImage.TYPE_INT_RGB
+                || img.getType() == BufferedImage.TYPE_INT_ARGB
+                || img.getType() == BufferedImage.TYPE_INT_ARGB_PRE
+                || img.getType() == BufferedImage.TYPE_INT_BGR)) {
+            SinglePixelPackedSampleModel model = (SinglePixelPackedSampleModel) raster.getSampleModel();
+            int[] data = ((DataBufferInt) buffer).getData();
+            int stride = model.getScanlineStride();
+            int offset = buffer.getOffset() - raster.getSampleModelTranslateY() * stride
+                - raster.getSampleModelTranslateX();
+            for (int y = 0; y < height; ++y) {
+                for (int x = 0; x < width; ++x) {
+                    if ((data[offset + y * stride + x] & 0xFFFFFF) == 0) {
+                        mask.setBlack(x, y, true);
+                    }
+                }
+            }
+        } else if (direct && buffer instanceof DataBufferByte
+            && raster.getSampleModel() instanceof ComponentSampleModel
+            && (img.getType() == BufferedImage.TYPE_BYTE_GRAY
+                || img.getType() == BufferedImage.TYPE_3BYTE_BGR
+                || img.getType() == BufferedImage.TYPE_4BYTE_ABGR
+                || img.getType() == BufferedImage.TYPE_4BYTE_ABGR_PRE)) {
+            ComponentSampleModel model = (ComponentSampleModel) raster.getSampleModel();
+            byte[] data = ((DataBufferByte) buffer).getData();
+            int[] bandOffsets = model.getBandOffsets();
+            int colorBands = img.getType() == BufferedImage.TYPE_BYTE_GRAY ? 1 : 3;
+            int pixelStride = model.getPixelStride();
+            int stride = model.getScanlineStride();
+            int offset = buffer.getOffset() - raster.getSampleModelTranslateY() * stride
+                - raster.getSampleModelTranslateX() * pixelStride;
+            for (int y = 0; y < height; ++y) {
+                for (int x = 0; x < width; ++x) {
+                    int pixel = offset + y * stride + x * pixelStride;
+                    boolean black = true;
+                    for (int band = 0; band < colorBands && black; ++band) {
+                        black = data[pixel + bandOffsets[band]] == 0;
+                    }
+                    if (black) {
+                        mask.setBlack(x, y, true);
+                    }
+                }
+            }
+        } else {
+            int[] row = new int[width];
+            for (int y = 0; y < height; ++y) {
+                img.getRGB(0, y, width, 1, row, 0, width);
+                for (int x = 0; x < width; ++x) {
+                    if ((row[x] & 0xFFFFFF) == 0) {
+                        mask.setBlack(x, y, true);
+                    }
+                }
+            }
+        }
+        return mask;
+    }
+}
@@ -0,0 +1,156 @@
+package fr.polytechnique.rikudo.hexagonal;
+
+import fr.polytechnique.rikudo.hexagonal.GridGenerator.GridGeneratorProperties;
+import fr.polytechnique.rikudo.hexagonal.GridGenerator.PuzzleDesign;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Builds many puzzles per configuration. Masks are read and rendered puzzles are written on a
+// small I/O pool, while puzzle design runs on a fixed pool sized for the available processors.
+public class BatchGenerator {
+  private static final int IO_THREADS = 4;
+
+  private final int puzzlesPerConfig;
+  private final int solverThreads;
+  private final AtomicInteger puzzlesDone = new AtomicInteger();
+  private final AtomicInteger puzzlesFailed = new AtomicInteger();
+
+  public BatchGenerator(int puzzlesPerConfig, int solverThreads) {
+    this.puzzlesPerConfig = puzzlesPerConfig;
+    this.solverThreads = solverThreads;
+  }
+
+  // puzzle.png -> puzzle-0042.png
+  static File numberedFile(File file, int index) {
+    String name = file.getName();
+    int dot = name.lastIndexOf('.');
+    String numbered = dot < 0
+        ? String.format("%s-%04d", name, index)
+        : String.format("%s-%04d%s", name.substring(0, dot), index, name.substring(dot));
+    return new File(file.getParentFile(), numbered);
+  }
+
+  private List<CompletableFuture<Void>> submit(GridGenerator generator,
+      GridGeneratorProperties properties, ExecutorService ioPool, ExecutorService cpuPool) {
+
+    // The mask is scanned and its graph is built only once, all the jobs share it
+    CompletableFuture<GridGraph> graph = CompletableFuture.supplyAsync(() -> {
+      try {
+        return generator.buildGraph();
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }, ioPool);
+
+    List<CompletableFuture<Void>> jobs = new ArrayList<>(puzzlesPerConfig);
+    for (int i = 1; i <= puzzlesPerConfig; ++i) {
+      final int index = i;
+      CompletableFuture<Void> job = graph
+          .thenApplyAsync(gr -> design(generator, gr), cpuPool)
+          .thenAcceptAsync(design -> write(generator, properties, design, index), ioPool)
+          .whenComplete((ignored, error) -> {
+            if (error == null) {
+              puzzlesDone.incrementAndGet();
+            } else {
+              puzzlesFailed.incrementAndGet();
+              System.err.println("Puzzle #" + index + " of " + properties.inputFile + " failed:");
+              error.printStackTrace();
+            }
+          });
+      jobs.add(job);
+    }
+    return jobs;
+  }
+
+  private static PuzzleDesign design(GridGenerator generator, GridGraph graph) {
+    try {
+      // Every puzzle of a batch must be new, the cache is only fed
+      return generator.designPuzzle(graph, new Random(), false);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private static void write(GridGenerator generator, GridGeneratorProperties properties,
+      PuzzleDesign design, int index) {
+    try {
+      generator.writePuzzle(design, numberedFile(properties.outputFile, index),
+          numberedFile(properties.solutionFile, index));
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  public void run(List<GridGeneratorProperties> configs) {
+    ExecutorService ioPool = Executors.newFixedThreadPool(IO_THREADS);
+    ExecutorService cpuPool = Executors.newFixedThreadPool(solverThreads);
+
+    // The generators are closed once all the jobs are done, with their metrics files
+    List<GridGenerator> generators = new ArrayList<>(configs.size());
+    long timeBegin = System.nanoTime();
+    try {
+      List<CompletableFuture<Void>> jobs = new ArrayList<>();
+      for (GridGeneratorProperties properties : configs) {
+        GridGenerator generator = new GridGenerator(properties);
+        generators.add(generator);
+        jobs.addAll(submit(generator, properties, ioPool, cpuPool));
+      }
+      for (CompletableFuture<Void> job : jobs) {
+        try {
+          job.join();
+        } catch (CompletionException e) {
+          // Already reported by the job itself
+        }
+      }
+    } finally {
+      ioPool.shutdown();
+      cpuPool.shutdown();
+      for (GridGenerator generator : generators) {
+        generator.close();
+      }
+    }
+    long timeEnd = System.nanoTime();
+
+    double minutes = (timeEnd - timeBegin) / 6e10;
+    System.out.printf("Built %d puzzles (%d failed) in %.3f s: %.2f puzzles per minute\n",
+        puzzlesDone.get(), puzzlesFailed.get(), (timeEnd - timeBegin) / 1e9,
+        puzzlesDone.get() / minutes);
+  }
+
+  public static void main(String[] args) throws IOException {
+    int puzzlesPerConfig = 1;
+    int solverThreads = Runtime.getRuntime().availableProcessors();
+    List<GridGeneratorProperties> configs = new ArrayList<>();
+
+    for (int i = 0; i < args.length; ++i) {
+      if (args[i].equals("-n")) {
+        puzzlesPerConfig = Integer.parseInt(args[++i]);
+      } else if (args[i].equals("-j")) {
+        solverThreads = Integer.parseInt(args[++i]);
+      } else {
+        System.out.println("Reading " + args[i]);
+        try (InputStream input = new FileInputStream(args[i])) {
+          configs.add(GridGeneratorProperties.loadFromXML(input));
+        }
+      }
+    }
+
+    if (configs.isEmpty()) {
+      System.err.println("Usage: prog [-n puzzles-per-config] [-j solver-threads] settings1.xml ...");
+      System.exit(1);
+    }
+
+    new BatchGenerator(puzzlesPerConfig, solverThreads).run(configs);
+  }
+}
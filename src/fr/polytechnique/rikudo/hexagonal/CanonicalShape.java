@@ -0,0 +1,123 @@
+package fr.polytechnique.rikudo.hexagonal;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+
+// Representative of a set of cells up to the 12 symmetries of the hexagonal lattice (rotations by
+// multiples of 60 degrees, optionally after a reflection) and translations. Two masks which differ
+// only by such a transformation have equal canonical centers and keys.
+public class CanonicalShape {
+  private static final EisensteinInteger[] ROTATIONS = new EisensteinInteger[6];
+
+  static {
+    EisensteinInteger angle = EisensteinInteger.ONE.add(EisensteinInteger.OMEGA);
+    ROTATIONS[0] = EisensteinInteger.ONE;
+    for (int i = 1; i < 6; ++i) {
+      ROTATIONS[i] = ROTATIONS[i - 1].mul(angle);
+    }
+  }
+
+  private static final Comparator<EisensteinInteger> ORDER =
+      Comparator.comparingLong(EisensteinInteger::getA).thenComparingLong(EisensteinInteger::getB);
+
+  private final List<EisensteinInteger> centers;
+  private final boolean reflected;
+  private final int rotation;
+  private final EisensteinInteger offset;
+
+  public CanonicalShape(Collection<Cell> cells) {
+    List<EisensteinInteger> bestCenters = null;
+    boolean bestReflected = false;
+    int bestRotation = 0;
+    EisensteinInteger bestOffset = null;
+
+    for (int reflection = 0; reflection < 2; ++reflection) {
+      for (int rot = 0; rot < 6; ++rot) {
+        ArrayList<EisensteinInteger> transformed = new ArrayList<>(cells.size());
+        long minA = Long.MAX_VALUE;
+        long minB = Long.MAX_VALUE;
+        for (Cell cell : cells) {
+          EisensteinInteger center = rotate(reflect(cell.getCenter(), reflection == 1), rot);
+          minA = Math.min(minA, center.getA());
+          minB = Math.min(minB, center.getB());
+          transformed.add(center);
+        }
+
+        EisensteinInteger offset = new EisensteinInteger(minA, minB);
+        for (int i = 0; i < transformed.size(); ++i) {
+          transformed.set(i, transformed.get(i).sub(offset));
+        }
+        transformed.sort(ORDER);
+
+        if (bestCenters == null || compare(transformed, bestCenters) < 0) {
+          bestCenters = transformed;
+          bestReflected = reflection == 1;
+          bestRotation = rot;
+          bestOffset = offset;
+        }
+      }
+    }
+
+    this.centers = bestCenters;
+    this.reflected = bestReflected;
+    this.rotation = bestRotation;
+    this.offset = bestOffset;
+  }
+
+  private static EisensteinInteger reflect(EisensteinInteger z, boolean reflected) {
+    return reflected ? z.conj() : z;
+  }
+
+  private static EisensteinInteger rotate(EisensteinInteger z, int rotation) {
+    return z.mul(ROTATIONS[rotation]);
+  }
+
+  private static int compare(List<EisensteinInteger> lhs, List<EisensteinInteger> rhs) {
+    for (int i = 0; i < lhs.size(); ++i) {
+      int result = ORDER.compare(lhs.get(i), rhs.get(i));
+      if (result != 0) {
+        return result;
+      }
+    }
+    return 0;
+  }
+
+  // Sorted centers of the canonical representative
+  public List<EisensteinInteger> getCenters() {
+    return centers;
+  }
+
+  public EisensteinInteger toCanonical(EisensteinInteger center) {
+    return rotate(reflect(center, reflected), rotation).sub(offset);
+  }
+
+  public EisensteinInteger fromCanonical(EisensteinInteger center) {
+    return reflect(rotate(center.add(offset), (6 - rotation) % 6), reflected);
+  }
+
+  // SHA-256 of the canonical centers, suitable as a file name
+  public String getKey() {
+    StringBuilder builder = new StringBuilder();
+    for (EisensteinInteger center : centers) {
+      builder.append(center.getA()).append(' ').append(center.getB()).append('\n');
+    }
+
+    try {
+      byte[] digest = MessageDigest.getInstance("SHA-256")
+          .digest(builder.toString().getBytes(StandardCharsets.US_ASCII));
+      StringBuilder key = new StringBuilder();
+      for (byte b : digest) {
+        key.append(String.format("%02x", b));
+      }
+      return key.toString();
+    } catch (NoSuchAlgorithmException e) {
+      // Every Java platform is required to support SHA-256
+      throw new IllegalStateException(e);
+    }
+  }
+}
@@ -1,12 +1,34 @@
 package fr.polytechnique.rikudo.hexagonal;
 
+import java.awt.Shape;
+import java.awt.geom.AffineTransform;
 import java.awt.geom.Path2D;
 import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class Cell {
+  private static final double HALF_HEIGHT = 0.5 * Math.sqrt(3);
+
+  // Corners of the hexagon of side length 1 centered at the origin
+  private static final double[] UNIT_CORNERS_X = new double[6];
+  private static final double[] UNIT_CORNERS_Y = new double[6];
+
+  // Hexagons centered at the origin by side length, there are only a few side lengths in use
+  private static final ConcurrentHashMap<Double, Shape> HEXAGONS = new ConcurrentHashMap<>();
+
+  static {
+    EisensteinInteger angle = EisensteinInteger.ONE.add(EisensteinInteger.OMEGA);
+    EisensteinInteger cornerOffset = EisensteinInteger.ONE;
+    for (int i = 0; i < 6; ++i) {
+      UNIT_CORNERS_X[i] = cornerOffset.real();
+      UNIT_CORNERS_Y[i] = cornerOffset.imag();
+      cornerOffset = cornerOffset.mul(angle);
+    }
+  }
+
   private final EisensteinInteger center;
   private final double sideLength;
 
@@ -16,20 +38,41 @@ public class Cell {
     double a2 = Math.floor(2 * x / (3 * sideLength));
 
     EisensteinInteger possibleCenter = new EisensteinInteger((long) (a1 + a2), (long) (2 * a1 - a2));
-    Cell possibleCell = new Cell(possibleCenter, sideLength);
-    double bestDistanceSq = possibleCell.getCenterAsPoint().distanceSq(x, y);
+    long bestCenter = PackedEisenstein.pack(possibleCenter);
+    double bestDistanceSq = distanceSq(bestCenter, sideLength, x, y);
 
-    List<Cell> neighbours = possibleCell.getNeighbours();
-    for (Cell cell : neighbours) {
-      Point2D point = cell.getCenterAsPoint();
-      double distanceSq = point.distanceSq(x, y);
+    long possibleCenterPacked = bestCenter;
+    for (int direction = 0; direction < 6; ++direction) {
+      long neighbourCenter = PackedEisenstein.neighbour(possibleCenterPacked, direction);
+      double distanceSq = distanceSq(neighbourCenter, sideLength, x, y);
       if (distanceSq < bestDistanceSq) {
-        possibleCell = cell;
+        bestCenter = neighbourCenter;
         bestDistanceSq = distanceSq;
       }
     }
 
-    return possibleCell;
+    return new Cell(PackedEisenstein.unpack(bestCenter), sideLength);
+  }
+
+  private static double distanceSq(long center, double sideLength, double x, double y) {
+    double dx = PackedEisenstein.real(center) * sideLength - x;
+    double dy = PackedEisenstein.imag(center) * sideLength - y;
+    return dx * dx + dy * dy;
+  }
+
+  // Hexagon of the given side length centered at the origin. The shape is shared, so it must only be
+  // drawn (e.g. after Graphics2D.translate to the cell center) and never modified.
+  public static Shape getHexagon(double sideLength) {
+    return HEXAGONS.computeIfAbsent(sideLength, Cell::buildHexagon);
+  }
+
+  private static Shape buildHexagon(double sideLength) {
+    Path2D path = new Path2D.Double();
+    path.moveTo(UNIT_CORNERS_X[5] * sideLength, UNIT_CORNERS_Y[5] * sideLength);
+    for (int i = 0; i < 6; ++i) {
+      path.lineTo(UNIT_CORNERS_X[i] * sideLength, UNIT_CORNERS_Y[i] * sideLength);
+    }
+    return path;
   }
 
   public Cell(EisensteinInteger center, double sideLength) {
@@ -50,42 +93,52 @@ public class Cell {
   }
 
   public List<Cell> getNeighbours() {
-    EisensteinInteger angle = EisensteinInteger.ONE.add(EisensteinInteger.OMEGA);
-    EisensteinInteger neighbourCenterOffset = EisensteinInteger.ONE.sub(EisensteinInteger.OMEGA);
+    long packedCenter = PackedEisenstein.pack(center);
 
     ArrayList<Cell> neighbours = new ArrayList<>(6);
-    for (int i = 0; i < 6; ++i) {
-      EisensteinInteger neighbourCenter = center.add(neighbourCenterOffset);
-      neighbours.add(new Cell(neighbourCenter, sideLength));
-      neighbourCenterOffset = neighbourCenterOffset.mul(angle);
+    for (int direction = 0; direction < 6; ++direction) {
+      long neighbourCenter = PackedEisenstein.neighbour(packedCenter, direction);
+      neighbours.add(new Cell(PackedEisenstein.unpack(neighbourCenter), sideLength));
     }
 
     return neighbours;
   }
 
+  // A new shape, prefer drawing getHexagon(getSideLength()) translated to the center
   Path2D getBorder() {
-    double[] xPoints = new double[6];
-    double[] yPoints = new double[6];
+    return new Path2D.Double(getHexagon(sideLength),
+        AffineTransform.getTranslateInstance(getCenterX(), getCenterY()));
+  }
 
-    EisensteinInteger angle = EisensteinInteger.ONE.add(EisensteinInteger.OMEGA);
-    EisensteinInteger cornerOffset = EisensteinInteger.ONE;
-    for (int i = 0; i < 6; ++i) {
-      EisensteinInteger corner = center.add(cornerOffset);
-      xPoints[i] = corner.real() * sideLength;
-      yPoints[i] = corner.imag() * sideLength;
-      cornerOffset = cornerOffset.mul(angle);
-    }
+  double getCenterX() {
+    return center.real() * sideLength;
+  }
 
-    Path2D path = new Path2D.Double();
-    path.moveTo(xPoints[5], yPoints[5]);
-    for (int i = 0; i < 6; ++i) {
-      path.lineTo(xPoints[i], yPoints[i]);
-    }
-    return path;
+  double getCenterY() {
+    return center.imag() * sideLength;
   }
 
   Point2D getCenterAsPoint() {
-    return new Point2D.Double(center.real() * sideLength, center.imag() * sideLength);
+    return new Point2D.Double(getCenterX(), getCenterY());
+  }
+
+  // Bounding box of the border, the corners are at distance sideLength from the center
+  Rectangle2D getBounds() {
+    double halfHeight = HALF_HEIGHT * sideLength;
+    return new Rectangle2D.Double(getCenterX() - sideLength, getCenterY() - halfHeight,
+        2 * sideLength, 2 * halfHeight);
+  }
+
+  boolean isInside(Rectangle2D rect) {
+    double halfHeight = HALF_HEIGHT * sideLength;
+    return rect.contains(getCenterX() - sideLength, getCenterY() - halfHeight,
+        2 * sideLength, 2 * halfHeight);
+  }
+
+  boolean intersects(Rectangle2D rect) {
+    double halfHeight = HALF_HEIGHT * sideLength;
+    return rect.intersects(getCenterX() - sideLength, getCenterY() - halfHeight,
+        2 * sideLength, 2 * halfHeight);
   }
 
   @Override
@@ -103,7 +156,8 @@ public class Cell {
 
   @Override
   public int hashCode() {
-    return Objects.hash(center, sideLength);
+    // Avoids the varargs array of Objects.hash, cells are hashed a lot
+    return 31 * center.hashCode() + Double.hashCode(sideLength);
   }
 
   @Override
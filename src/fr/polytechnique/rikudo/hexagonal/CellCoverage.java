@@ -0,0 +1,124 @@
+package fr.polytechnique.rikudo.hexagonal;
+
+import fr.polytechnique.rikudo.binaryImages.BinaryMask;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.stream.LongStream;
+
+// Finds the cells covered by the black pixels of a mask. Cell centers are enumerated row by row
+// (a row of cells shares the OMEGA coordinate), so every candidate cell is visited once and only
+// the pixels under its bounding box are inspected. Rows are processed in parallel. Bounding boxes
+// are tested with BinaryMask.countBlack, which is fast for packed and indexed masks.
+//
+// With a zero threshold, a cell is covered if any black pixel touches its bounding box. Otherwise it
+// is covered if at least the given fraction of the pixels whose centers lie inside it are black.
+public class CellCoverage {
+  private static final double SQRT_3 = Math.sqrt(3);
+
+  private final double sideLength;
+  private final double halfHeight;
+  private final double threshold;
+
+  public CellCoverage(double sideLength, double threshold) {
+    this.sideLength = sideLength;
+    this.halfHeight = 0.5 * SQRT_3 * sideLength;
+    this.threshold = threshold;
+  }
+
+  public HashSet<Cell> getCoveredCells(BinaryMask mask) {
+    HashSet<Cell> cells = new HashSet<>();
+    for (long center : getCoveredCenters(mask).toArray()) {
+      cells.add(new Cell(PackedEisenstein.unpack(center), sideLength));
+    }
+    return cells;
+  }
+
+  // Packed centers of the covered cells, without creating a Cell per covered cell
+  public LongHashSet getCoveredCenters(BinaryMask mask) {
+    // Center of the cell (a, b) is ((a - b / 2) * sideLength, b * halfHeight)
+    long bMin = -1;
+    long bMax = (long) Math.ceil(mask.getHeight() / halfHeight) + 1;
+
+    MaskScanEvent event = new MaskScanEvent();
+    event.begin();
+    LongHashSet centers = LongStream.rangeClosed(bMin, bMax)
+        .parallel()
+        .mapToObj(b -> getCoveredCenters(mask, b))
+        .collect(LongHashSet::new, LongHashSet::addAll, (lhs, rhs) -> lhs.addAll(rhs.toArray()));
+    event.end();
+    if (event.shouldCommit()) {
+      event.width = mask.getWidth();
+      event.height = mask.getHeight();
+      event.sideLength = sideLength;
+      event.cells = centers.size();
+      event.commit();
+    }
+    return centers;
+  }
+
+  private long[] getCoveredCenters(BinaryMask mask, long b) {
+    long[] centers = new long[0];
+    int count = 0;
+    double centerY = b * halfHeight;
+    // Pixel squares [y, y + 1] which overlap the interior of the bounding box
+    int yFrom = Math.max(0, (int) Math.floor(centerY - halfHeight - 1) + 1);
+    int yTo = Math.min(mask.getHeight() - 1, (int) Math.ceil(centerY + halfHeight) - 1);
+    if (yFrom > yTo) {
+      return centers;
+    }
+
+    long aMin = (long) Math.floor(0.5 * b - 1);
+    long aMax = (long) Math.ceil(mask.getWidth() / sideLength + 0.5 * b + 1);
+    // Cell centers are multiples of (1 - OMEGA), that is a + b is divisible by 3
+    for (long a = aMin + Math.floorMod(-(aMin + b), 3); a <= aMax; a += 3) {
+      double centerX = (a - 0.5 * b) * sideLength;
+      int xFrom = Math.max(0, (int) Math.floor(centerX - sideLength - 1) + 1);
+      int xTo = Math.min(mask.getWidth() - 1, (int) Math.ceil(centerX + sideLength) - 1);
+      if (xFrom > xTo) {
+        continue;
+      }
+
+      if (isCovered(mask, centerX, centerY, xFrom, xTo, yFrom, yTo)) {
+        if (count == centers.length) {
+          centers = Arrays.copyOf(centers, Math.max(16, 2 * count));
+        }
+        centers[count++] = PackedEisenstein.pack(a, b);
+      }
+    }
+    return Arrays.copyOf(centers, count);
+  }
+
+  private boolean isCovered(BinaryMask mask, double centerX, double centerY,
+      int xFrom, int xTo, int yFrom, int yTo) {
+    int boxWidth = xTo - xFrom + 1;
+    int boxHeight = yTo - yFrom + 1;
+    int boxBlack = mask.countBlack(xFrom, yFrom, boxWidth, boxHeight);
+    if (threshold <= 0 || boxBlack == 0) {
+      return boxBlack > 0;
+    }
+    if (boxBlack == boxWidth * boxHeight) {
+      return true;
+    }
+
+    int inside = 0;
+    int insideBlack = 0;
+    for (int y = yFrom; y <= yTo; ++y) {
+      for (int x = xFrom; x <= xTo; ++x) {
+        double dx = Math.abs(x + 0.5 - centerX);
+        double dy = Math.abs(y + 0.5 - centerY);
+        if (dy <= halfHeight && SQRT_3 * dx + dy <= SQRT_3 * sideLength) {
+          ++inside;
+          if (mask.isBlack(x, y)) {
+            ++insideBlack;
+          }
+        }
+      }
+    }
+
+    if (inside == 0) {
+      // The cell is smaller than a pixel
+      return true;
+    }
+    return insideBlack >= threshold * inside;
+  }
+}
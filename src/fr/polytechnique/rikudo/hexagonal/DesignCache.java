@@ -0,0 +1,216 @@
+package fr.polytechnique.rikudo.hexagonal;
+
+import fr.polytechnique.rikudo.hexagonal.GridGenerator.PuzzleDesign;
+import fr.polytechnique.rikudo.puzzle.RikudoPuzzle.DesignProperties;
+import fr.polytechnique.rikudo.solver.Constraints;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.Scanner;
+
+// On-disk cache of designed puzzles. Every mask shape has its own directory named after the key of
+// its canonical form, holding the canonical centers (shape.txt) and any number of designs, all in
+// canonical coordinates so that they can be reused by rotated, reflected or translated masks.
+//
+// Design file format:
+//   allow-vertex-constraints allow-diamond-constraints
+//   n                              followed by n lines "a b", the cells along the path
+//   vertex-cnt diamond-cnt         followed by vertex-cnt lines "a b position"
+//                                  and diamond-cnt lines "a1 b1 a2 b2"
+public class DesignCache {
+  private static final String SHAPE_FILE = "shape.txt";
+  private static final String DESIGN_PREFIX = "design-";
+  private static final String DESIGN_SUFFIX = ".txt";
+
+  private final File directory;
+
+  public DesignCache(File directory) {
+    this.directory = directory;
+  }
+
+  private static void printCenter(PrintWriter writer, EisensteinInteger center) {
+    writer.print(center.getA() + " " + center.getB());
+  }
+
+  private static EisensteinInteger readCenter(Scanner scanner) {
+    long a = scanner.nextLong();
+    long b = scanner.nextLong();
+    return new EisensteinInteger(a, b);
+  }
+
+  private boolean hasShape(File shapeDirectory, CanonicalShape shape) throws IOException {
+    File shapeFile = new File(shapeDirectory, SHAPE_FILE);
+    if (!shapeFile.exists()) {
+      return false;
+    }
+
+    try (Scanner scanner = new Scanner(new FileInputStream(shapeFile))) {
+      List<EisensteinInteger> centers = shape.getCenters();
+      if (scanner.nextInt() != centers.size()) {
+        return false;
+      }
+      for (EisensteinInteger center : centers) {
+        if (!readCenter(scanner).equals(center)) {
+          return false;
+        }
+      }
+      return true;
+    } catch (NoSuchElementException e) {
+      return false;
+    }
+  }
+
+  private static void writeAtomically(File file, String content) throws IOException {
+    Path tmp = Files.createTempFile(file.getParentFile().toPath(), file.getName(), ".tmp");
+    Files.write(tmp, content.getBytes());
+    Files.move(tmp, file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  public PuzzleDesign lookup(GridGraph graph, DesignProperties properties, Random rng)
+      throws IOException {
+    CanonicalShape shape = new CanonicalShape(cellsOf(graph));
+    File shapeDirectory = new File(directory, shape.getKey());
+    if (!hasShape(shapeDirectory, shape)) {
+      return null;
+    }
+
+    File[] files = shapeDirectory.listFiles(
+        (dir, name) -> name.startsWith(DESIGN_PREFIX) && name.endsWith(DESIGN_SUFFIX));
+    if (files == null) {
+      return null;
+    }
+    ArrayList<PuzzleDesign> designs = new ArrayList<>();
+    for (File file : files) {
+      PuzzleDesign design = readDesign(file, graph, shape, properties);
+      if (design != null) {
+        designs.add(design);
+      }
+    }
+    if (designs.isEmpty()) {
+      return null;
+    }
+    return designs.get(rng.nextInt(designs.size()));
+  }
+
+  private static HashSet<Cell> cellsOf(GridGraph graph) {
+    HashSet<Cell> cells = new HashSet<>();
+    for (int vertex = 0; vertex < graph.size(); ++vertex) {
+      cells.add(graph.getCell(vertex));
+    }
+    return cells;
+  }
+
+  private static int readVertex(Scanner scanner, GridGraph graph, CanonicalShape shape) {
+    EisensteinInteger center = shape.fromCanonical(readCenter(scanner));
+    Integer vertex = graph.getVertex(new Cell(center, graph.getCell(0).getSideLength()));
+    if (vertex == null) {
+      throw new NoSuchElementException("Unknown cell " + center);
+    }
+    return vertex;
+  }
+
+  private static PuzzleDesign readDesign(File file, GridGraph graph, CanonicalShape shape,
+      DesignProperties properties) throws IOException {
+    try (Scanner scanner = new Scanner(new FileInputStream(file))) {
+      boolean allowVertexConstraints = scanner.nextBoolean();
+      boolean allowDiamondConstraints = scanner.nextBoolean();
+      if (allowVertexConstraints != properties.isEnableVertexConstraints()
+          || allowDiamondConstraints != properties.isEnableDiamondConstraints()) {
+        return null;
+      }
+
+      int pathLength = scanner.nextInt();
+      if (pathLength != graph.size()) {
+        return null;
+      }
+      ArrayList<Integer> path = new ArrayList<>(pathLength);
+      for (int i = 0; i < pathLength; ++i) {
+        path.add(readVertex(scanner, graph, shape));
+      }
+
+      Constraints constraints = new Constraints();
+      int vertexConstraintsCnt = scanner.nextInt();
+      int diamondConstraintsCnt = scanner.nextInt();
+      for (int i = 0; i < vertexConstraintsCnt; ++i) {
+        int vertex = readVertex(scanner, graph, shape);
+        constraints.addVertexConstraint(vertex, scanner.nextInt());
+      }
+      for (int i = 0; i < diamondConstraintsCnt; ++i) {
+        int v1 = readVertex(scanner, graph, shape);
+        int v2 = readVertex(scanner, graph, shape);
+        constraints.addDiamondConstraint(v1, v2);
+      }
+
+      return new PuzzleDesign(graph, path.get(0), path.get(pathLength - 1), constraints, path);
+    } catch (NoSuchElementException e) {
+      System.err.println("Ignoring a corrupted cached design " + file);
+      return null;
+    }
+  }
+
+  public void store(PuzzleDesign design, DesignProperties properties) throws IOException {
+    GridGraph graph = design.graph;
+    CanonicalShape shape = new CanonicalShape(cellsOf(graph));
+    File shapeDirectory = new File(directory, shape.getKey());
+    if (!shapeDirectory.isDirectory() && !shapeDirectory.mkdirs()) {
+      throw new IOException("Cannot create " + shapeDirectory);
+    }
+
+    File shapeFile = new File(shapeDirectory, SHAPE_FILE);
+    if (!shapeFile.exists()) {
+      StringBuilder content = new StringBuilder();
+      content.append(shape.getCenters().size()).append('\n');
+      for (EisensteinInteger center : shape.getCenters()) {
+        content.append(center.getA()).append(' ').append(center.getB()).append('\n');
+      }
+      writeAtomically(shapeFile, content.toString());
+    }
+
+    StringWriter content = new StringWriter();
+    try (PrintWriter writer = new PrintWriter(content)) {
+      writer.println(properties.isEnableVertexConstraints() + " "
+          + properties.isEnableDiamondConstraints());
+
+      writer.println(design.path.size());
+      for (int vertex : design.path) {
+        printCenter(writer, shape.toCanonical(graph.getCell(vertex).getCenter()));
+        writer.println();
+      }
+
+      Constraints constraints = design.constraints;
+      writer.println(constraints.countVertexConstraints() + " "
+          + constraints.countDiamondConstraints());
+      for (int vertex : constraints.getVertexConstraints().keySet()) {
+        printCenter(writer, shape.toCanonical(graph.getCell(vertex).getCenter()));
+        writer.println(" " + constraints.getVertexConstraints().get(vertex));
+      }
+      for (int v1 : constraints.getDiamondConstraints().keySet()) {
+        for (int v2 : constraints.getDiamondedNeighbours(v1)) {
+          if (v1 < v2) {
+            printCenter(writer, shape.toCanonical(graph.getCell(v1).getCenter()));
+            writer.print(" ");
+            printCenter(writer, shape.toCanonical(graph.getCell(v2).getCenter()));
+            writer.println();
+          }
+        }
+      }
+    }
+
+    Path designFile = Files.createTempFile(shapeDirectory.toPath(), DESIGN_PREFIX, ".tmp");
+    Files.write(designFile, content.toString().getBytes());
+    String name = designFile.getFileName().toString();
+    Files.move(designFile,
+        designFile.resolveSibling(name.substring(0, name.length() - 4) + DESIGN_SUFFIX),
+        StandardCopyOption.ATOMIC_MOVE);
+  }
+}
@@ -1,7 +1,6 @@
 package fr.polytechnique.rikudo.hexagonal;
 
 import java.awt.geom.Point2D;
-import java.util.Objects;
 
 public class EisensteinInteger {
 
@@ -26,6 +25,14 @@ public class EisensteinInteger {
     this.b = b;
   }
 
+  public long getA() {
+    return a;
+  }
+
+  public long getB() {
+    return b;
+  }
+
   public double real() {
     return a + b * OMEGA_REAL_PART;
   }
@@ -87,7 +94,7 @@ public class EisensteinInteger {
 
   @Override
   public int hashCode() {
-    return Objects.hash(a, b);
+    return 31 * Long.hashCode(a) + Long.hashCode(b);
   }
 
   @Override
@@ -1,35 +1,42 @@
 package fr.polytechnique.rikudo.hexagonal;
 
+import fr.polytechnique.rikudo.binaryImages.BinaryMask;
+import fr.polytechnique.rikudo.binaryImages.BufferedImageMask;
+import fr.polytechnique.rikudo.binaryImages.MaskLoader;
+import fr.polytechnique.rikudo.puzzle.DesignListener;
+import fr.polytechnique.rikudo.puzzle.JsonLinesDesignListener;
 import fr.polytechnique.rikudo.puzzle.RikudoPuzzle;
 import fr.polytechnique.rikudo.puzzle.RikudoPuzzle.DesignProperties;
+import fr.polytechnique.rikudo.puzzle.RikudoPuzzle.MinimizationMode;
 import fr.polytechnique.rikudo.solver.Constraints;
-import fr.polytechnique.rikudo.solver.ReducingToSATSolver;
-import fr.polytechnique.rikudo.solver.ReducingToSATSolver.Mode;
+import fr.polytechnique.rikudo.solver.DeductionSolver;
 import java.awt.Color;
-import java.awt.FontMetrics;
-import java.awt.Graphics2D;
-import java.awt.geom.AffineTransform;
-import java.awt.geom.Path2D;
-import java.awt.geom.Point2D;
 import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.util.ArrayDeque;
-import java.util.ArrayList;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Properties;
-import java.util.Queue;
 import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
 import javax.imageio.ImageIO;
 
-public class GridGenerator {
+// Closing the generator closes the metrics file, which is kept open across designs
+public class GridGenerator implements Closeable {
   public static class Palette {
     public final Color fill;
     public final Color border;
@@ -50,6 +57,15 @@ public class GridGenerator {
     public static final Palette DEFAULT_PALETTE = new Palette(Color.WHITE, Color.BLACK, Color.ORANGE, Color.ORANGE, Color.YELLOW, Color.BLUE);
   }
 
+  public enum OutputFormat {
+    // Whole images encoded by ImageIO
+    E_FORMAT_PNG,
+    // Images rendered and encoded band by band, for posters too large to hold in memory
+    E_FORMAT_PNG_STREAMING,
+    // Vector images, e.g. for printing
+    E_FORMAT_SVG
+  }
+
   public static class GridGeneratorProperties {
     public final File inputFile;
     public final File outputFile;
@@ -58,10 +74,35 @@ public class GridGenerator {
     public final double outputSideLength;
     public final RikudoPuzzle.DesignProperties designProperties;
     public final Palette palette;
+    // Design metrics are appended to this file as JSON lines, if it is set
+    public final File metricsFile;
+    // Designs are cached in this directory by the canonical shape of the mask, if it is set
+    public final File cacheDirectory;
+    // Fraction of a cell which must be black for the cell to be used, zero means any black pixel
+    public final double coverageThreshold;
+    public final OutputFormat outputFormat;
 
     public GridGeneratorProperties(File inputFile, File outputFile, File solutionFile,
         double inputSideLength,
         double outputSideLength, RikudoPuzzle.DesignProperties designProperties, Palette palette) {
+      this(inputFile, outputFile, solutionFile, inputSideLength, outputSideLength,
+          designProperties, palette, null, null, 0);
+    }
+
+    public GridGeneratorProperties(File inputFile, File outputFile, File solutionFile,
+        double inputSideLength,
+        double outputSideLength, RikudoPuzzle.DesignProperties designProperties, Palette palette,
+        File metricsFile, File cacheDirectory, double coverageThreshold) {
+      this(inputFile, outputFile, solutionFile, inputSideLength, outputSideLength,
+          designProperties, palette, metricsFile, cacheDirectory, coverageThreshold,
+          OutputFormat.E_FORMAT_PNG);
+    }
+
+    public GridGeneratorProperties(File inputFile, File outputFile, File solutionFile,
+        double inputSideLength,
+        double outputSideLength, RikudoPuzzle.DesignProperties designProperties, Palette palette,
+        File metricsFile, File cacheDirectory, double coverageThreshold,
+        OutputFormat outputFormat) {
       this.inputFile = inputFile;
       this.outputFile = outputFile;
       this.solutionFile = solutionFile;
@@ -69,6 +110,10 @@ public class GridGenerator {
       this.outputSideLength = outputSideLength;
       this.designProperties = designProperties;
       this.palette = palette;
+      this.metricsFile = metricsFile;
+      this.cacheDirectory = cacheDirectory;
+      this.coverageThreshold = coverageThreshold;
+      this.outputFormat = outputFormat;
     }
 
     void storeToXML(OutputStream output) throws IOException {
@@ -76,30 +121,50 @@ public class GridGenerator {
 
       properties.setProperty("input-file", inputFile.getCanonicalPath());
       properties.setProperty("output-file", outputFile.getCanonicalPath());
+      properties.setProperty("output-format", outputFormat.name());
       properties.setProperty("solution-file", solutionFile.getCanonicalPath());
       properties.setProperty("input-side-length", inputSideLength + "");
       properties.setProperty("output-side-length", outputSideLength + "");
+      properties.setProperty("coverage-threshold", coverageThreshold + "");
       properties.setProperty("allow-vertex-constraints", designProperties.isEnableVertexConstraints() + "");
       properties.setProperty("allow-diamond-constraints", designProperties.isEnableDiamondConstraints() + "");
+      properties.setProperty("minimization-mode", designProperties.getMinimizationMode().name());
+      if (metricsFile != null) {
+        properties.setProperty("metrics-file", metricsFile.getCanonicalPath());
+      }
+      if (cacheDirectory != null) {
+        properties.setProperty("cache-directory", cacheDirectory.getCanonicalPath());
+      }
 
       properties.storeToXML(output, "");
     }
 
-    static GridGeneratorProperties loadFromXML(InputStream input) throws IOException {
+    public static GridGeneratorProperties loadFromXML(InputStream input) throws IOException {
       Properties properties = new Properties();
       properties.loadFromXML(input);
 
       File inputFile = new File(properties.getProperty("input-file"));
       File outputFile = new File(properties.getProperty("output-file"));
+      OutputFormat outputFormat = OutputFormat.valueOf(properties.getProperty(
+          "output-format", OutputFormat.E_FORMAT_PNG.name()));
       File solutionFile = new File(properties.getProperty("solution-file"));
       double inputSideLength = Double.parseDouble(properties.getProperty("input-side-length"));
       double outputSideLength = Double.parseDouble(properties.getProperty("output-side-length"));
+      double coverageThreshold = Double.parseDouble(properties.getProperty("coverage-threshold", "0"));
       boolean allowVertexConstraints = Boolean.parseBoolean(properties.getProperty("allow-vertex-constraints"));
       boolean allowDiamondConstraints = Boolean.parseBoolean(properties.getProperty("allow-diamond-constraints"));
+      MinimizationMode minimizationMode = MinimizationMode.valueOf(properties.getProperty(
+          "minimization-mode", MinimizationMode.E_MINIMIZE_UNSAT_CORE.name()));
+
+      String metricsFileName = properties.getProperty("metrics-file");
+      File metricsFile = metricsFileName == null ? null : new File(metricsFileName);
+      String cacheDirectoryName = properties.getProperty("cache-directory");
+      File cacheDirectory = cacheDirectoryName == null ? null : new File(cacheDirectoryName);
 
       DesignProperties designProperties = new DesignProperties();
       designProperties.setEnableVertexConstraints(allowVertexConstraints);
       designProperties.setEnableDiamondConstraints(allowDiamondConstraints);
+      designProperties.setMinimizationMode(minimizationMode);
 
       return new GridGeneratorProperties(
           inputFile,
@@ -108,7 +173,11 @@ public class GridGenerator {
           inputSideLength,
           outputSideLength,
           designProperties,
-          Palette.DEFAULT_PALETTE
+          Palette.DEFAULT_PALETTE,
+          metricsFile,
+          cacheDirectory,
+          coverageThreshold,
+          outputFormat
       );
     }
   }
@@ -118,56 +187,62 @@ public class GridGenerator {
     E_MODE_SOLUTION
   }
 
+  // Designs between random vertices are given up after this many failed attempts
+  private static final int MAX_DESIGN_ATTEMPTS = 100;
+
   private final GridGeneratorProperties properties;
-  private static final Path2D DIAMOND;
-
-  static {
-    DIAMOND = new Path2D.Double();
-    double step = 1. / 8;
-    DIAMOND.moveTo(step, 0);
-    DIAMOND.lineTo(0, step);
-    DIAMOND.lineTo(-step, 0);
-    DIAMOND.lineTo(0, -step);
-    DIAMOND.lineTo(step, 0);
-  }
+  private final AtomicInteger designCount = new AtomicInteger();
+  private PrintStream metricsStream;
 
   public GridGenerator(GridGeneratorProperties properties) {
     this.properties = properties;
   }
 
   public HashSet<Cell> getAllCells(Rectangle2D rect) {
-    HashSet<Cell> cells = new HashSet<>();
-
-    Queue<Cell> newCells = new ArrayDeque<>();
-    Cell initial = Cell.findNearestCell(rect.getX(), rect.getY(), properties.inputSideLength);
-    newCells.add(initial);
-    cells.add(initial);
-
-    while (!newCells.isEmpty()) {
-      Cell cell = newCells.poll();
-
-      for (Cell neighbour : cell.getNeighbours()) {
-        if (cells.contains(neighbour) || !neighbour.getBorder().getBounds2D().intersects(rect)) {
+    double sideLength = properties.inputSideLength;
+    double halfHeight = 0.5 * Math.sqrt(3) * sideLength;
+
+    // Flood fill over packed centers, a Cell is only created for the cells which are returned
+    long initial = PackedEisenstein.pack(
+        Cell.findNearestCell(rect.getX(), rect.getY(), sideLength).getCenter());
+    LongHashSet visited = new LongHashSet();
+    visited.add(initial);
+    long[] queue = new long[16];
+    int head = 0;
+    int tail = 0;
+    queue[tail++] = initial;
+
+    while (head < tail) {
+      long center = queue[head++];
+
+      for (int direction = 0; direction < 6; ++direction) {
+        long neighbour = PackedEisenstein.neighbour(center, direction);
+        double x = PackedEisenstein.real(neighbour) * sideLength;
+        double y = PackedEisenstein.imag(neighbour) * sideLength;
+        if (visited.contains(neighbour)
+            || !rect.intersects(x - sideLength, y - halfHeight, 2 * sideLength, 2 * halfHeight)) {
           continue;
         }
-        cells.add(neighbour);
-        newCells.add(neighbour);
+        visited.add(neighbour);
+        if (tail == queue.length) {
+          queue = Arrays.copyOf(queue, 2 * tail);
+        }
+        queue[tail++] = neighbour;
       }
     }
 
+    HashSet<Cell> cells = new HashSet<>();
+    for (int i = 0; i < tail; ++i) {
+      cells.add(new Cell(PackedEisenstein.unpack(queue[i]), sideLength));
+    }
     return cells;
   }
 
-  private static void drawCenteredString(String str, Graphics2D g, int x, int y) {
-    FontMetrics metrics = g.getFontMetrics();
-    g.drawString(str, x - metrics.stringWidth(str) / 2, y - metrics.getHeight() / 2 + metrics.getAscent());
-  }
-
   public static HashSet<Cell> selectCompletelyVisible(HashSet<Cell> cells, Rectangle2D rect) {
     HashSet<Cell> selectedCells = new HashSet<>();
 
     for (Cell cell : cells) {
-      if (rect.contains(cell.getBorder().getBounds2D())) {
+      if (cell.isInside(rect)) {
         selectedCells.add(cell);
       }
     }
@@ -176,165 +251,179 @@ public class GridGenerator {
   }
 
   public HashSet<Cell> getCellsByMask(BufferedImage img) {
-    HashSet<Cell> result = new HashSet<>();
-    for (int x = 0; x < img.getWidth(); ++x) {
-      for (int y = 0; y < img.getHeight(); ++y) {
-        Color col = new Color(img.getRGB(x, y));
-        if (!col.equals(Color.BLACK)) {
-          continue;
-        }
-
-        HashSet<Cell> cells = getAllCells(new Rectangle2D.Double(x, y, 1, 1));
-        result.addAll(cells);
-      }
-    }
-
-    return result;
+    return getCellsByMask(new BufferedImageMask(img));
   }
 
-  private BufferedImage readMask() throws IOException {
-    return ImageIO.read(properties.inputFile);
+  public HashSet<Cell> getCellsByMask(BinaryMask mask) {
+    CellCoverage coverage = new CellCoverage(properties.inputSideLength, properties.coverageThreshold);
+    return coverage.getCoveredCells(mask);
   }
 
-  private ArrayList<Cell> getScaledCellsList(GridGraph gr) {
-    ArrayList<Cell> result = new ArrayList<>(gr.size());
-
-    for (int i = 0; i < gr.size(); ++i) {
-      Cell cell = gr.getCell(i).rescale(properties.outputSideLength);
-      result.add(cell);
-    }
-
-    return result;
+  private BinaryMask readMask() throws IOException {
+    return MaskLoader.load(properties.inputFile);
   }
 
-  private Rectangle2D buildBoundingRect(List<Cell> cells) {
-    Rectangle2D boundingRect = null;
+  public static class PuzzleDesign {
+    public final GridGraph graph;
+    public final int source;
+    public final int target;
+    public final Constraints constraints;
+    public final List<Integer> path;
 
-    for (Cell cell : cells) {
-      Rectangle2D bounds = cell.getBorder().getBounds2D();
-      if (boundingRect == null) {
-        boundingRect = bounds;
-      } else {
-        boundingRect.add(bounds);
-      }
+    public PuzzleDesign(GridGraph graph, int source, int target, Constraints constraints,
+        List<Integer> path) {
+      this.graph = graph;
+      this.source = source;
+      this.target = target;
+      this.constraints = constraints;
+      this.path = path;
     }
-
-    Point2D upperLeft  = new Point2D.Double(boundingRect.getMinX(), boundingRect.getMinY());
-    Point2D lowerRight = new Point2D.Double(boundingRect.getMaxX(), boundingRect.getMaxY());
-
-    boundingRect.add(upperLeft.getX() - properties.outputSideLength, upperLeft.getY() - properties.outputSideLength);
-    boundingRect.add(lowerRight.getX() + properties.outputSideLength, lowerRight.getY() + properties.outputSideLength);
-
-    return boundingRect;
   }
 
-  private void drawDiamond(Cell cell1, Cell cell2, Graphics2D g2d) {
-    Point2D center1 = cell1.getCenterAsPoint();
-    Point2D center2 = cell2.getCenterAsPoint();
-
-    AffineTransform tx = g2d.getTransform();
-
-    g2d.translate((center1.getX() + center2.getX()) / 2, (center1.getY() + center2.getY()) / 2);
-    g2d.rotate(Math.atan2(center2.getY() - center1.getY(), center2.getX() - center1.getX()));
-    g2d.scale(properties.outputSideLength * Math.sqrt(3), properties.outputSideLength);
-
-    g2d.setColor(properties.palette.diamond);
-    g2d.fill(DIAMOND);
-
-    g2d.setTransform(tx);
+  public GridGraph buildGraph() throws IOException {
+    BinaryMask mask = readMask();
+    CellCoverage coverage = new CellCoverage(properties.inputSideLength, properties.coverageThreshold);
+    return new GridGraph(coverage.getCoveredCenters(mask), properties.inputSideLength);
   }
 
-  private BufferedImage visualize(GridGraph gr, int source, int target, Constraints constraints, VisualisationMode mode) throws IOException {
-    List<Integer> solution = null;
-    if (mode == VisualisationMode.E_MODE_SOLUTION) {
-      solution = new ReducingToSATSolver(gr, source, target, Mode.E_MODE_PATH, constraints).solve();
+  private synchronized PrintStream getMetricsStream() throws IOException {
+    if (metricsStream == null) {
+      metricsStream = new PrintStream(new FileOutputStream(properties.metricsFile, true), true);
     }
+    return metricsStream;
+  }
 
-    ArrayList<Cell> scaledCells = getScaledCellsList(gr);
-    Rectangle2D boundingRect = buildBoundingRect(scaledCells);
-
-    BufferedImage image = new BufferedImage((int)Math.ceil(boundingRect.getWidth()), (int)Math.ceil(boundingRect.getHeight()), BufferedImage.TYPE_INT_ARGB);
-    Graphics2D g2d = image.createGraphics();
-
-    g2d.translate(-boundingRect.getX(), -boundingRect.getY());
-
-    // Draw vertices with constraints
-    for (int vertex = 0; vertex < gr.size(); ++vertex) {
-      Cell cell = scaledCells.get(vertex);
-      String text = null;
-      Path2D border = cell.getBorder();
-
-      if (vertex == source) {
-        g2d.setColor(properties.palette.source);
-        text = "1";
-      } else if (vertex == target) {
-        g2d.setColor(properties.palette.target);
-        text = Integer.toString(gr.size());
-      } else if (constraints.getVertexConstraints().containsKey(vertex)) {
-        g2d.setColor(properties.palette.constraint);
-        text = Integer.toString(constraints.getVertexConstraints().get(vertex) + 1);
-      } else {
-        g2d.setColor(properties.palette.fill);
-        if (mode == VisualisationMode.E_MODE_SOLUTION) {
-          text = Integer.toString(solution.indexOf(vertex) + 1);
-        }
-      }
-
-      g2d.fill(border);
-      if (text != null) {
-        g2d.setColor(properties.palette.border);
-        Point2D center = cell.getCenterAsPoint();
-        drawCenteredString(text, g2d, (int)center.getX(), (int)center.getY());
-      }
-
-      g2d.setColor(properties.palette.border);
-      g2d.draw(border);
+  @Override
+  public synchronized void close() {
+    if (metricsStream != null) {
+      metricsStream.close();
+      metricsStream = null;
     }
+  }
 
-    // Draw diamonds
-    for (int v1 : constraints.getDiamondConstraints().keySet()) {
-      for (int v2 : constraints.getDiamondConstraints().get(v1)) {
-        if (v1 < v2) {
-          continue;
-        }
+  // Cached designs of congruent masks are reused only if asked to, but new designs are always cached
+  public PuzzleDesign designPuzzle(GridGraph graph, Random rng, boolean reuseCached)
+      throws IOException {
+    return designPuzzle(graph, rng, reuseCached, null);
+  }
 
-        drawDiamond(scaledCells.get(v1), scaledCells.get(v2), g2d);
+  // With a listener, the SAT calls, iterations and failed attempts of the design go to it instead
+  // of the metrics file; without either, failed attempts are printed to stderr
+  public PuzzleDesign designPuzzle(GridGraph graph, Random rng, boolean reuseCached,
+      DesignListener listener) throws IOException {
+    DesignCache cache = properties.cacheDirectory == null
+        ? null : new DesignCache(properties.cacheDirectory);
+    if (cache != null && reuseCached) {
+      PuzzleDesign cached = cache.lookup(graph, properties.designProperties, rng);
+      if (cached != null) {
+        System.out.println("Reusing a cached design from " + properties.cacheDirectory);
+        return cached;
       }
     }
 
-    return image;
-  }
-
-  public void buildPuzzle() throws IOException {
-    BufferedImage mask = readMask();
-    HashSet<Cell> cells = getCellsByMask(mask);
-    GridGraph graph = new GridGraph(cells);
-
     int source = -1;
     int target = -1;
+    if (listener == null && properties.metricsFile != null) {
+      String designId = properties.inputFile.getName() + "#" + designCount.incrementAndGet();
+      listener = new JsonLinesDesignListener(getMetricsStream(), designId);
+    }
 
-    Random rng = new Random();
     Constraints constraints = null;
-    while (constraints == null) {
+    List<Integer> path = null;
+    String failure = null;
+    for (int attempt = 0; constraints == null; ++attempt) {
+      if (attempt == MAX_DESIGN_ATTEMPTS) {
+        throw new IllegalStateException("No puzzle in " + MAX_DESIGN_ATTEMPTS
+            + " attempts between random vertices, the last one failed: " + failure);
+      }
       source = rng.nextInt(graph.size());
       target = rng.nextInt(graph.size());
 
       RikudoPuzzle puzzle = new RikudoPuzzle(graph, source, target);
+      puzzle.setDesignListener(listener);
       constraints = puzzle.design(rng, properties.designProperties);
+      path = puzzle.getSolution();
+      if (constraints == null) {
+        failure = puzzle.getFailure();
+        if (listener == null) {
+          System.err.println("No puzzle from " + source + " to " + target + ": " + failure);
+        }
+      }
     }
 
     constraints.addVertexConstraint(source, 0);
     constraints.addVertexConstraint(target, graph.size() - 1);
 
-    BufferedImage puzzle = visualize(graph, source, target, constraints, VisualisationMode.E_MODE_PUZZLE);
-    BufferedImage solution = visualize(graph, source, target, constraints, VisualisationMode.E_MODE_SOLUTION);
-    ImageIO.write(puzzle, "png", properties.outputFile);
-    ImageIO.write(solution, "png", properties.solutionFile);
+    PuzzleDesign design = new PuzzleDesign(graph, source, target, constraints, path);
+    if (cache != null) {
+      cache.store(design, properties.designProperties);
+    }
+    return design;
+  }
+
+  // Positions of the vertices along the solution, which is only searched for if the design lacks it
+  private static int[] solutionPositions(PuzzleDesign design) {
+    List<Integer> solution = design.path;
+    if (solution == null) {
+      solution = new DeductionSolver(design.graph, design.source, design.target,
+          design.constraints).solve();
+    }
+    return solution == null ? null : PuzzleRenderer.positionsOf(solution, design.graph.size());
+  }
+
+  public BufferedImage visualize(PuzzleDesign design, VisualisationMode mode) {
+    PuzzleRenderer renderer =
+        new PuzzleRenderer(design, properties.outputSideLength, properties.palette);
+    return renderer.render(mode == VisualisationMode.E_MODE_SOLUTION ? solutionPositions(design) : null);
+  }
+
+  private void writeImage(PuzzleRenderer renderer, int[] positions, File file) {
+    try {
+      switch (properties.outputFormat) {
+        case E_FORMAT_PNG:
+          ImageIO.write(renderer.render(positions), "png", file);
+          break;
+        case E_FORMAT_PNG_STREAMING:
+          renderer.writePng(positions, new BufferedOutputStream(new FileOutputStream(file)));
+          break;
+        case E_FORMAT_SVG:
+          renderer.writeSvg(positions, new FileOutputStream(file));
+          break;
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  // The puzzle is rendered and written in the background while the solution is
+  public void writePuzzle(PuzzleDesign design, File outputFile, File solutionFile) throws IOException {
+    PuzzleRenderer renderer =
+        new PuzzleRenderer(design, properties.outputSideLength, properties.palette);
+    CompletableFuture<Void> puzzle =
+        CompletableFuture.runAsync(() -> writeImage(renderer, null, outputFile));
+    try {
+      writeImage(renderer, solutionPositions(design), solutionFile);
+      puzzle.join();
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof UncheckedIOException) {
+        throw ((UncheckedIOException) e.getCause()).getCause();
+      }
+      throw e;
+    }
+  }
+
+  public void buildPuzzle() throws IOException {
+    GridGraph graph = buildGraph();
+    PuzzleDesign design = designPuzzle(graph, new Random(), true);
+    writePuzzle(design, properties.outputFile, properties.solutionFile);
   }
 
   public static void main(String[] args) throws IOException {
     if (args.length == 0) {
       System.err.println("Usage: prog settings1.xml settings2.xml ... settingsN.xml");
+      System.err.println("       prog --batch [-n puzzles-per-config] [-j solver-threads] settings1.xml ...");
       GridGeneratorProperties exampleProperties = new GridGeneratorProperties(
           new File("mask.png"),
           new File("puzzle.png"),
@@ -349,11 +438,17 @@ public class GridGenerator {
       System.exit(1);
     }
 
+    if (args[0].equals("--batch")) {
+      BatchGenerator.main(Arrays.copyOfRange(args, 1, args.length));
+      return;
+    }
+
     for (String filename : args) {
       System.out.println("Reading " + filename);
       GridGeneratorProperties properties = GridGeneratorProperties.loadFromXML(new FileInputStream(filename));
-      GridGenerator generator = new GridGenerator(properties);
-      generator.buildPuzzle();
+      try (GridGenerator generator = new GridGenerator(properties)) {
+        generator.buildPuzzle();
+      }
     }
   }
 
@@ -1,61 +1,125 @@
 package fr.polytechnique.rikudo.hexagonal;
 
-import fr.polytechnique.rikudo.solver.AdjListGraph;
 import fr.polytechnique.rikudo.solver.IGraph;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
-import java.util.Hashtable;
 import java.util.List;
 
+// Graph of adjacent cells. Cells are kept as packed centers (see PackedEisenstein) and adjacency
+// is stored in compressed rows, so large grids need a few arrays instead of an object per cell.
 public class GridGraph implements IGraph {
-  private final ArrayList<Cell> cells;
-  private final Hashtable<Cell, Integer> cellIndex;
-  private final AdjListGraph graph;
+  private final double sideLength;
+  private final long[] centers;
+  private final LongIntHashMap centerIndex;
+  // Neighbours of vertex v are adjacency[adjacencyStart[v]] ... adjacency[adjacencyStart[v + 1] - 1]
+  private final int[] adjacencyStart;
+  private final int[] adjacency;
 
   public GridGraph(HashSet<Cell> cellSet) {
-    cells = new ArrayList<>(cellSet);
-    cellIndex = new Hashtable<>();
+    this(packCenters(cellSet), cellSet.isEmpty() ? 0 : cellSet.iterator().next().getSideLength());
+  }
 
-    for (int i = 0; i < cells.size(); ++i) {
-      cellIndex.put(cells.get(i), i);
+  // All cells share the given side length
+  public GridGraph(LongHashSet centerSet, double sideLength) {
+    this.sideLength = sideLength;
+    centers = centerSet.toArray();
+    centerIndex = new LongIntHashMap(centers.length);
+    for (int i = 0; i < centers.length; ++i) {
+      centerIndex.put(centers[i], i);
     }
 
-    graph = new AdjListGraph(cells.size());
-    for (int cellIdx = 0; cellIdx < cells.size(); ++cellIdx) {
-      Cell cell = cells.get(cellIdx);
-      for (Cell neighbour : cell.getNeighbours()) {
-        Integer neighbourIdx = cellIndex.get(neighbour);
-        if (neighbourIdx != null) {
-          graph.addEdge(cellIdx, neighbourIdx);
+    adjacencyStart = new int[centers.length + 1];
+    int[] neighbours = new int[6 * centers.length];
+    int edgeCount = 0;
+    for (int v = 0; v < centers.length; ++v) {
+      adjacencyStart[v] = edgeCount;
+      for (int direction = 0; direction < 6; ++direction) {
+        int u = centerIndex.get(PackedEisenstein.neighbour(centers[v], direction), -1);
+        if (u != -1) {
+          neighbours[edgeCount++] = u;
         }
       }
     }
+    adjacencyStart[centers.length] = edgeCount;
+    adjacency = Arrays.copyOf(neighbours, edgeCount);
+  }
+
+  private static LongHashSet packCenters(HashSet<Cell> cellSet) {
+    LongHashSet centerSet = new LongHashSet(cellSet.size());
+    for (Cell cell : cellSet) {
+      centerSet.add(PackedEisenstein.pack(cell.getCenter()));
+    }
+    return centerSet;
   }
 
   @Override
   public boolean hasVertex(int vertex) {
-    return graph.hasVertex(vertex);
+    return 0 <= vertex && vertex < centers.length;
   }
 
   @Override
   public boolean hasEdge(int from, int to) {
-    return graph.hasEdge(from, to);
+    if (!hasVertex(from) || !hasVertex(to)) {
+      return false;
+    }
+    for (int i = adjacencyStart[from]; i < adjacencyStart[from + 1]; ++i) {
+      if (adjacency[i] == to) {
+        return true;
+      }
+    }
+    return false;
   }
 
   @Override
   public int size() {
-    return graph.size();
+    return centers.length;
   }
 
   @Override
   public List<Integer> adjacentVertices(int vertex) {
-    return graph.adjacentVertices(vertex);
+    if (!hasVertex(vertex)) {
+      return null;
+    }
+    ArrayList<Integer> neighbours = new ArrayList<>(degree(vertex));
+    for (int i = adjacencyStart[vertex]; i < adjacencyStart[vertex + 1]; ++i) {
+      neighbours.add(adjacency[i]);
+    }
+    return neighbours;
+  }
+
+  public int degree(int vertex) {
+    return adjacencyStart[vertex + 1] - adjacencyStart[vertex];
+  }
+
+  public double getSideLength() {
+    return sideLength;
+  }
+
+  // Packed center of the cell of the given vertex
+  public long getCenter(int vertex) {
+    return centers[vertex];
   }
 
   public Cell getCell(int vertex) {
     if (!hasVertex(vertex)) {
       return null;
     }
-    return cells.get(vertex);
+    return new Cell(PackedEisenstein.unpack(centers[vertex]), sideLength);
+  }
+
+  public Integer getVertex(Cell cell) {
+    EisensteinInteger center = cell.getCenter();
+    if (Double.compare(cell.getSideLength(), sideLength) != 0
+        || (int) center.getA() != center.getA() || (int) center.getB() != center.getB()) {
+      return null;
+    }
+    int vertex = getVertex(PackedEisenstein.pack(center.getA(), center.getB()));
+    return vertex == -1 ? null : vertex;
+  }
+
+  // Vertex of the cell with the given packed center, or -1
+  public int getVertex(long center) {
+    return centerIndex.get(center, -1);
   }
 }
@@ -0,0 +1,124 @@
+package fr.polytechnique.rikudo.hexagonal;
+
+import java.util.Arrays;
+
+// Open-addressing hash set of primitive longs (linear probing), used for sets of packed cell centers
+public class LongHashSet {
+  private static final long EMPTY = Long.MIN_VALUE;
+
+  private long[] keys;
+  private int size;
+  private boolean containsEmpty;
+
+  public LongHashSet() {
+    this(16);
+  }
+
+  public LongHashSet(int expectedSize) {
+    int capacity = 16;
+    while (capacity < 2L * expectedSize) {
+      capacity <<= 1;
+    }
+    keys = newTable(capacity);
+  }
+
+  private static long[] newTable(int capacity) {
+    long[] table = new long[capacity];
+    Arrays.fill(table, EMPTY);
+    return table;
+  }
+
+  static int slot(long key, int mask) {
+    // Finalizer of MurmurHash3, the low bits of packed centers are far from random
+    key ^= key >>> 33;
+    key *= 0xff51afd7ed558ccdL;
+    key ^= key >>> 33;
+    key *= 0xc4ceb9fe1a85ec53L;
+    key ^= key >>> 33;
+    return (int) key & mask;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  public boolean contains(long key) {
+    if (key == EMPTY) {
+      return containsEmpty;
+    }
+    int mask = keys.length - 1;
+    for (int i = slot(key, mask); keys[i] != EMPTY; i = (i + 1) & mask) {
+      if (keys[i] == key) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  public boolean add(long key) {
+    if (key == EMPTY) {
+      if (containsEmpty) {
+        return false;
+      }
+      containsEmpty = true;
+      ++size;
+      return true;
+    }
+
+    int mask = keys.length - 1;
+    int i = slot(key, mask);
+    for (; keys[i] != EMPTY; i = (i + 1) & mask) {
+      if (keys[i] == key) {
+        return false;
+      }
+    }
+    keys[i] = key;
+    ++size;
+    if (2 * size > keys.length) {
+      rehash();
+    }
+    return true;
+  }
+
+  public void addAll(long[] values) {
+    for (long value : values) {
+      add(value);
+    }
+  }
+
+  private void rehash() {
+    long[] oldKeys = keys;
+    keys = newTable(oldKeys.length * 2);
+    int mask = keys.length - 1;
+    for (long key : oldKeys) {
+      if (key != EMPTY) {
+        int i = slot(key, mask);
+        while (keys[i] != EMPTY) {
+          i = (i + 1) & mask;
+        }
+        keys[i] = key;
+      }
+    }
+  }
+
+  // Elements in increasing order: the table order also depends on the insertion order, which
+  // varies with the parallelism of CellCoverage, and GridGraph numbers vertices in this order
+  public long[] toArray() {
+    long[] result = new long[size];
+    int index = 0;
+    if (containsEmpty) {
+      result[index++] = EMPTY;
+    }
+    for (long key : keys) {
+      if (key != EMPTY) {
+        result[index++] = key;
+      }
+    }
+    Arrays.sort(result);
+    return result;
+  }
+}
@@ -0,0 +1,104 @@
+package fr.polytechnique.rikudo.hexagonal;
+
+import java.util.Arrays;
+
+// Open-addressing hash map from primitive longs to ints (linear probing), e.g. from packed cell
+// centers to vertex indices
+public class LongIntHashMap {
+  private static final long EMPTY = Long.MIN_VALUE;
+
+  private long[] keys;
+  private int[] values;
+  private int size;
+  private boolean containsEmpty;
+  private int emptyKeyValue;
+
+  public LongIntHashMap() {
+    this(16);
+  }
+
+  public LongIntHashMap(int expectedSize) {
+    int capacity = 16;
+    while (capacity < 2L * expectedSize) {
+      capacity <<= 1;
+    }
+    keys = new long[capacity];
+    values = new int[capacity];
+    Arrays.fill(keys, EMPTY);
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public int get(long key, int defaultValue) {
+    if (key == EMPTY) {
+      return containsEmpty ? emptyKeyValue : defaultValue;
+    }
+    int mask = keys.length - 1;
+    for (int i = LongHashSet.slot(key, mask); keys[i] != EMPTY; i = (i + 1) & mask) {
+      if (keys[i] == key) {
+        return values[i];
+      }
+    }
+    return defaultValue;
+  }
+
+  public boolean containsKey(long key) {
+    if (key == EMPTY) {
+      return containsEmpty;
+    }
+    int mask = keys.length - 1;
+    for (int i = LongHashSet.slot(key, mask); keys[i] != EMPTY; i = (i + 1) & mask) {
+      if (keys[i] == key) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  public void put(long key, int value) {
+    if (key == EMPTY) {
+      if (!containsEmpty) {
+        containsEmpty = true;
+        ++size;
+      }
+      emptyKeyValue = value;
+      return;
+    }
+
+    int mask = keys.length - 1;
+    int i = LongHashSet.slot(key, mask);
+    for (; keys[i] != EMPTY; i = (i + 1) & mask) {
+      if (keys[i] == key) {
+        values[i] = value;
+        return;
+      }
+    }
+    keys[i] = key;
+    values[i] = value;
+    ++size;
+    if (2 * size > keys.length) {
+      rehash();
+    }
+  }
+
+  private void rehash() {
+    long[] oldKeys = keys;
+    int[] oldValues = values;
+    keys = new long[oldKeys.length * 2];
+    values = new int[oldKeys.length * 2];
+    Arrays.fill(keys, EMPTY);
+    int mask = keys.length - 1;
+    for (int j = 0; j < oldKeys.length; ++j) {
+      if (oldKeys[j] != EMPTY) {
+        int i = LongHashSet.slot(oldKeys[j], mask);
+        while (keys[i] != EMPTY) {
+          i = (i + 1) & mask;
+        }
+        keys[i] = oldKeys[j];
+        values[i] = oldValues[j];
+      }
+    }
+  }
+}
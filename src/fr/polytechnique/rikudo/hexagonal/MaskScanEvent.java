@@ -0,0 +1,24 @@
+package fr.polytechnique.rikudo.hexagonal;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("fr.polytechnique.rikudo.MaskScan")
+@Label("Mask Scan")
+@Category({"Rikudo", "Grid"})
+@Description("Finding the cells covered by a mask")
+class MaskScanEvent extends jdk.jfr.Event {
+  @Label("Width")
+  int width;
+
+  @Label("Height")
+  int height;
+
+  @Label("Side Length")
+  double sideLength;
+
+  @Label("Cells")
+  int cells;
+}
@@ -0,0 +1,78 @@
+package fr.polytechnique.rikudo.hexagonal;
+
+// Eisenstein integers a + b * OMEGA packed into a single long, a in the high 32 bits and b in the
+// low 32 bits. Both coordinates must fit into an int. The helpers never allocate, so grids of
+// millions of cells can be handled without creating an object per cell.
+public final class PackedEisenstein {
+
+  private static final double OMEGA_REAL_PART = -0.5;
+  private static final double OMEGA_IMAG_PART = 0.5 * Math.sqrt(3);
+
+  // Offsets from a cell center to the centers of its neighbours, in the order of Cell.getNeighbours
+  private static final long[] NEIGHBOUR_OFFSETS = new long[6];
+
+  static {
+    long angle = pack(1, 1);
+    long offset = pack(1, -1);
+    for (int i = 0; i < 6; ++i) {
+      NEIGHBOUR_OFFSETS[i] = offset;
+      offset = mul(offset, angle);
+    }
+  }
+
+  private PackedEisenstein() {
+  }
+
+  public static long pack(long a, long b) {
+    return (a << 32) | (b & 0xFFFFFFFFL);
+  }
+
+  public static long pack(EisensteinInteger z) {
+    return pack(Math.toIntExact(z.getA()), Math.toIntExact(z.getB()));
+  }
+
+  public static EisensteinInteger unpack(long z) {
+    return new EisensteinInteger(a(z), b(z));
+  }
+
+  public static int a(long z) {
+    return (int) (z >> 32);
+  }
+
+  public static int b(long z) {
+    return (int) z;
+  }
+
+  public static double real(long z) {
+    return a(z) + b(z) * OMEGA_REAL_PART;
+  }
+
+  public static double imag(long z) {
+    return b(z) * OMEGA_IMAG_PART;
+  }
+
+  public static long add(long lhs, long rhs) {
+    return pack(a(lhs) + a(rhs), b(lhs) + b(rhs));
+  }
+
+  public static long sub(long lhs, long rhs) {
+    return pack(a(lhs) - a(rhs), b(lhs) - b(rhs));
+  }
+
+  public static long mul(long lhs, long rhs) {
+    long a1 = a(lhs);
+    long b1 = b(lhs);
+    long a2 = a(rhs);
+    long b2 = b(rhs);
+    return pack(a1 * a2 - b1 * b2, b1 * a2 + a1 * b2 - b1 * b2);
+  }
+
+  public static long conj(long z) {
+    return pack(a(z) - b(z), -b(z));
+  }
+
+  // Center of the neighbour of the cell centered at z, direction is between 0 and 5
+  public static long neighbour(long z, int direction) {
+    return add(z, NEIGHBOUR_OFFSETS[direction]);
+  }
+}
@@ -0,0 +1,416 @@
+package fr.polytechnique.rikudo.hexagonal;
+
+import fr.polytechnique.rikudo.hexagonal.GridGenerator.Palette;
+import fr.polytechnique.rikudo.hexagonal.GridGenerator.PuzzleDesign;
+import java.awt.Color;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+import java.awt.Shape;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Path2D;
+import java.awt.image.BufferedImage;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+// Draws a designed puzzle, or its solution, with cells scaled to the output side length. The layout
+// is computed once and shared by both images. Cells and diamonds are bucketed by horizontal bands
+// of the image, and the bands are drawn in parallel into scratch images padded so that nothing drawn
+// reaches their borders (clipping shapes changes how their edges are rasterized), then copied.
+public class PuzzleRenderer {
+  private static final int MIN_BAND_HEIGHT = 256;
+  // Size of the default AWT font, used for the numbers of SVG output
+  private static final int FONT_SIZE = 12;
+
+  private static final Path2D DIAMOND;
+
+  static {
+    DIAMOND = new Path2D.Double();
+    double step = 1. / 8;
+    DIAMOND.moveTo(step, 0);
+    DIAMOND.lineTo(0, step);
+    DIAMOND.lineTo(-step, 0);
+    DIAMOND.lineTo(0, -step);
+    DIAMOND.lineTo(step, 0);
+  }
+
+  private final PuzzleDesign design;
+  private final double sideLength;
+  private final Palette palette;
+
+  private final double[] centerX;
+  private final double[] centerY;
+  // Upper left corner of the image, in the coordinates of the cell centers
+  private final double originX;
+  private final double originY;
+  private final int width;
+  private final int height;
+
+  // Pairs of vertices joined by a diamond, in drawing order
+  private final int[] diamonds;
+  private final int[][] bandCells;
+  private final int[][] bandDiamonds;
+  private final int bandHeight;
+  private final int bandPadding;
+
+  public PuzzleRenderer(PuzzleDesign design, double sideLength, Palette palette) {
+    this.design = design;
+    this.sideLength = sideLength;
+    this.palette = palette;
+
+    GridGraph graph = design.graph;
+    centerX = new double[graph.size()];
+    centerY = new double[graph.size()];
+    double minX = Double.POSITIVE_INFINITY;
+    double minY = Double.POSITIVE_INFINITY;
+    double maxX = Double.NEGATIVE_INFINITY;
+    double maxY = Double.NEGATIVE_INFINITY;
+    for (int vertex = 0; vertex < graph.size(); ++vertex) {
+      long center = graph.getCenter(vertex);
+      centerX[vertex] = PackedEisenstein.real(center) * sideLength;
+      centerY[vertex] = PackedEisenstein.imag(center) * sideLength;
+      minX = Math.min(minX, centerX[vertex]);
+      minY = Math.min(minY, centerY[vertex]);
+      maxX = Math.max(maxX, centerX[vertex]);
+      maxY = Math.max(maxY, centerY[vertex]);
+    }
+
+    // Hexagons reach sideLength horizontally and sqrt(3) / 2 * sideLength vertically from centers,
+    // and a margin of sideLength is left around them
+    double halfWidth = 2 * sideLength;
+    double halfHeight = (0.5 * Math.sqrt(3) + 1) * sideLength;
+    originX = minX - halfWidth;
+    originY = minY - halfHeight;
+    width = (int) Math.ceil(maxX - minX + 2 * halfWidth);
+    height = (int) Math.ceil(maxY - minY + 2 * halfHeight);
+
+    Hashtable<Integer, HashSet<Integer>> diamondConstraints =
+        design.constraints.getDiamondConstraints();
+    int diamondCount = 0;
+    for (int v1 : diamondConstraints.keySet()) {
+      diamondCount += diamondConstraints.get(v1).size();
+    }
+    int[] pairs = new int[2 * diamondCount];
+    int pairCount = 0;
+    for (int v1 : diamondConstraints.keySet()) {
+      for (int v2 : diamondConstraints.get(v1)) {
+        if (v1 < v2) {
+          continue;
+        }
+        pairs[2 * pairCount] = v1;
+        pairs[2 * pairCount + 1] = v2;
+        ++pairCount;
+      }
+    }
+    diamonds = Arrays.copyOf(pairs, 2 * pairCount);
+
+    // Anything drawn for a cell, including its label, stays within this distance of its center
+    double reach = Math.max(sideLength, textHeight()) + 2;
+    bandPadding = (int) Math.ceil(2 * reach) + 1;
+    // Keeps the padding small compared to the band
+    bandHeight = Math.max(MIN_BAND_HEIGHT, 4 * bandPadding);
+    int bandCount = Math.max(1, (height + bandHeight - 1) / bandHeight);
+    bandCells = bucketByBand(centerY, bandCount, reach);
+    double[] diamondY = new double[pairCount];
+    for (int i = 0; i < pairCount; ++i) {
+      diamondY[i] = (centerY[diamonds[2 * i]] + centerY[diamonds[2 * i + 1]]) / 2;
+    }
+    bandDiamonds = bucketByBand(diamondY, bandCount, sideLength);
+  }
+
+  private static int textHeight() {
+    Graphics2D g = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB).createGraphics();
+    int textHeight = g.getFontMetrics().getHeight();
+    g.dispose();
+    return textHeight;
+  }
+
+  // Indices of the items whose extent [y - reach, y + reach] overlaps each band, in increasing order
+  private int[][] bucketByBand(double[] y, int bandCount, double reach) {
+    int[] firstBand = new int[y.length];
+    int[] lastBand = new int[y.length];
+    int[] counts = new int[bandCount];
+    for (int i = 0; i < y.length; ++i) {
+      firstBand[i] = Math.max(0, (int) Math.floor((y[i] - originY - reach) / bandHeight));
+      lastBand[i] = Math.min(bandCount - 1,
+          (int) Math.floor((y[i] - originY + reach) / bandHeight));
+      for (int band = firstBand[i]; band <= lastBand[i]; ++band) {
+        ++counts[band];
+      }
+    }
+
+    int[][] buckets = new int[bandCount][];
+    for (int band = 0; band < bandCount; ++band) {
+      buckets[band] = new int[counts[band]];
+      counts[band] = 0;
+    }
+    for (int i = 0; i < y.length; ++i) {
+      for (int band = firstBand[i]; band <= lastBand[i]; ++band) {
+        buckets[band][counts[band]++] = i;
+      }
+    }
+    return buckets;
+  }
+
+  public int getWidth() {
+    return width;
+  }
+
+  public int getHeight() {
+    return height;
+  }
+
+  public int getBandHeight() {
+    return bandHeight;
+  }
+
+  public int getBandCount() {
+    return bandCells.length;
+  }
+
+  // Position of every vertex along the path
+  public static int[] positionsOf(List<Integer> path, int vertexCount) {
+    int[] positions = new int[vertexCount];
+    for (int i = 0; i < path.size(); ++i) {
+      positions[path.get(i)] = i;
+    }
+    return positions;
+  }
+
+  // Renders the puzzle, or the solution if the positions of the vertices along the path are given
+  public BufferedImage render(int[] positions) {
+    RenderEvent event = new RenderEvent();
+    event.begin();
+    BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+    IntStream bands = IntStream.range(0, getBandCount());
+    if (getBandCount() > 1) {
+      bands = bands.parallel();
+    }
+    // Bands cover disjoint rows, so they can be copied into the same image concurrently
+    bands.forEach(band -> image.getRaster().setRect(0, band * bandHeight,
+        renderBand(band, positions).getRaster()));
+    commit(event, "image", getBandCount(), positions);
+    return image;
+  }
+
+  // SVG output is not drawn in bands, zero bands are recorded for it
+  private void commit(RenderEvent event, String output, int bands, int[] positions) {
+    event.end();
+    if (event.shouldCommit()) {
+      event.output = output;
+      event.width = width;
+      event.height = height;
+      event.bands = bands;
+      event.solution = positions != null;
+      event.commit();
+    }
+  }
+
+  // Streams the image as a PNG. Bands are rendered ahead in parallel, but at most a few more than
+  // there are threads are held in memory at once, so memory does not grow with the image height.
+  public void writePng(int[] positions, OutputStream out) throws IOException {
+    RenderEvent event = new RenderEvent();
+    event.begin();
+    int window = ForkJoinPool.getCommonPoolParallelism() + 1;
+    ArrayDeque<CompletableFuture<BufferedImage>> pending = new ArrayDeque<>();
+    try (StreamingPngWriter writer = new StreamingPngWriter(out, width, height)) {
+      for (int band = 0; band < getBandCount(); ++band) {
+        int b = band;
+        pending.add(CompletableFuture.supplyAsync(() -> renderBand(b, positions)));
+        if (pending.size() >= window) {
+          writer.writeRows(pending.poll().join());
+        }
+      }
+      while (!pending.isEmpty()) {
+        writer.writeRows(pending.poll().join());
+      }
+    } finally {
+      commit(event, "png", getBandCount(), positions);
+      for (CompletableFuture<BufferedImage> future : pending) {
+        future.cancel(false);
+      }
+    }
+  }
+
+  // Rows [band * getBandHeight(), (band + 1) * getBandHeight()) of the image, the last band may be
+  // shorter
+  public BufferedImage renderBand(int band, int[] positions) {
+    int top = band * bandHeight;
+    int rows = Math.min(bandHeight, height - top);
+    BufferedImage scratch = new BufferedImage(width, rows + 2 * bandPadding,
+        BufferedImage.TYPE_INT_ARGB);
+    Graphics2D g2d = scratch.createGraphics();
+    g2d.translate(0, bandPadding - top);
+    drawBand(g2d, band, positions);
+    g2d.dispose();
+    return scratch.getSubimage(0, bandPadding, width, rows);
+  }
+
+  // Draws everything which overlaps the band, g2d maps image coordinates to the output
+  public void drawBand(Graphics2D g2d, int band, int[] positions) {
+    g2d.translate(-originX, -originY);
+    AffineTransform imageTransform = g2d.getTransform();
+    Shape hexagon = Cell.getHexagon(sideLength);
+
+    // Draw vertices with constraints
+    for (int vertex : bandCells[band]) {
+      String text = labelOf(vertex, positions);
+
+      g2d.setColor(fillOf(vertex));
+      g2d.translate(centerX[vertex], centerY[vertex]);
+      g2d.fill(hexagon);
+      g2d.setTransform(imageTransform);
+      if (text != null) {
+        g2d.setColor(palette.border);
+        drawCenteredString(text, g2d, (int) centerX[vertex], (int) centerY[vertex]);
+      }
+
+      g2d.setColor(palette.border);
+      g2d.translate(centerX[vertex], centerY[vertex]);
+      g2d.draw(hexagon);
+      g2d.setTransform(imageTransform);
+    }
+
+    // Draw diamonds
+    for (int i : bandDiamonds[band]) {
+      drawDiamond(diamonds[2 * i], diamonds[2 * i + 1], g2d);
+      g2d.setTransform(imageTransform);
+    }
+  }
+
+  private Color fillOf(int vertex) {
+    if (vertex == design.source) {
+      return palette.source;
+    } else if (vertex == design.target) {
+      return palette.target;
+    } else if (design.constraints.getVertexConstraints().containsKey(vertex)) {
+      return palette.constraint;
+    }
+    return palette.fill;
+  }
+
+  // Number shown in the cell, if any
+  private String labelOf(int vertex, int[] positions) {
+    Hashtable<Integer, Integer> vertexConstraints = design.constraints.getVertexConstraints();
+    if (vertex == design.source) {
+      return "1";
+    } else if (vertex == design.target) {
+      return Integer.toString(design.graph.size());
+    } else if (vertexConstraints.containsKey(vertex)) {
+      return Integer.toString(vertexConstraints.get(vertex) + 1);
+    } else if (positions != null) {
+      return Integer.toString(positions[vertex] + 1);
+    }
+    return null;
+  }
+
+  // Streams the image as SVG. The hexagon and the diamond are defined once as symbols and every
+  // cell or diamond refers to them, so the file grows linearly with the number of cells.
+  public void writeSvg(int[] positions, OutputStream out) throws IOException {
+    RenderEvent event = new RenderEvent();
+    event.begin();
+    try (Writer writer =
+        new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8))) {
+      Color[] fills = {palette.fill, palette.source, palette.target, palette.constraint};
+
+      writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+      writer.write(String.format(Locale.ROOT, "<svg xmlns=\"http://www.w3.org/2000/svg\" "
+          + "xmlns:xlink=\"http://www.w3.org/1999/xlink\" width=\"%d\" height=\"%d\" "
+          + "viewBox=\"0 0 %d %d\">\n", width, height, width, height));
+      writer.write("<style>\n");
+      for (int i = 0; i < fills.length; ++i) {
+        writer.write(".f" + i + "{fill:" + svgColor(fills[i]) + "}\n");
+      }
+      writer.write("text{font:" + FONT_SIZE + "px sans-serif;text-anchor:middle;"
+          + "dominant-baseline:central;fill:" + svgColor(palette.border) + "}\n");
+      writer.write("</style>\n<defs>\n");
+      writer.write("<symbol id=\"h\" overflow=\"visible\"><polygon points=\"");
+      for (int i = 0; i < 6; ++i) {
+        double angle = i * Math.PI / 3;
+        writer.write(String.format(Locale.ROOT, "%s%.3f,%.3f", i == 0 ? "" : " ",
+            sideLength * Math.cos(angle), sideLength * Math.sin(angle)));
+      }
+      writer.write("\"/></symbol>\n");
+      double step = 1. / 8;
+      writer.write(String.format(Locale.ROOT, "<symbol id=\"d\" overflow=\"visible\">"
+              + "<polygon points=\"%.3f,0 0,%.3f %.3f,0 0,%.3f\"/></symbol>\n",
+          step * sideLength * Math.sqrt(3), step * sideLength,
+          -step * sideLength * Math.sqrt(3), -step * sideLength));
+      writer.write("</defs>\n");
+
+      writer.write(String.format(Locale.ROOT, "<g transform=\"translate(%.3f,%.3f)\">\n",
+          -originX, -originY));
+      writer.write("<g stroke=\"" + svgColor(palette.border) + "\">\n");
+      for (int vertex = 0; vertex < centerX.length; ++vertex) {
+        Color fill = fillOf(vertex);
+        int fillClass = 0;
+        for (int i = 0; i < fills.length; ++i) {
+          if (fills[i] == fill) {
+            fillClass = i;
+            break;
+          }
+        }
+        writer.write(String.format(Locale.ROOT, "<use xlink:href=\"#h\" x=\"%.2f\" y=\"%.2f\" "
+            + "class=\"f%d\"/>\n", centerX[vertex], centerY[vertex], fillClass));
+      }
+      writer.write("</g>\n");
+
+      for (int vertex = 0; vertex < centerX.length; ++vertex) {
+        String text = labelOf(vertex, positions);
+        if (text != null) {
+          writer.write(String.format(Locale.ROOT, "<text x=\"%.2f\" y=\"%.2f\">%s</text>\n",
+              centerX[vertex], centerY[vertex], text));
+        }
+      }
+
+      writer.write("<g fill=\"" + svgColor(palette.diamond) + "\">\n");
+      for (int i = 0; 2 * i < diamonds.length; ++i) {
+        int v1 = diamonds[2 * i];
+        int v2 = diamonds[2 * i + 1];
+        double angle = Math.toDegrees(
+            Math.atan2(centerY[v2] - centerY[v1], centerX[v2] - centerX[v1]));
+        writer.write(String.format(Locale.ROOT, "<use xlink:href=\"#d\" "
+                + "transform=\"translate(%.2f,%.2f) rotate(%.1f)\"/>\n",
+            (centerX[v1] + centerX[v2]) / 2, (centerY[v1] + centerY[v2]) / 2, angle));
+      }
+      writer.write("</g>\n</g>\n</svg>\n");
+    } finally {
+      commit(event, "svg", 0, positions);
+    }
+  }
+
+  private static String svgColor(Color color) {
+    return String.format("#%06x", color.getRGB() & 0xFFFFFF);
+  }
+
+  private static void drawCenteredString(String str, Graphics2D g, int x, int y) {
+    FontMetrics metrics = g.getFontMetrics();
+    g.drawString(str, x - metrics.stringWidth(str) / 2, y - metrics.getHeight() / 2 + metrics.getAscent());
+  }
+
+  private void drawDiamond(int v1, int v2, Graphics2D g2d) {
+    double x1 = centerX[v1];
+    double y1 = centerY[v1];
+    double x2 = centerX[v2];
+    double y2 = centerY[v2];
+
+    g2d.translate((x1 + x2) / 2, (y1 + y2) / 2);
+    g2d.rotate(Math.atan2(y2 - y1, x2 - x1));
+    g2d.scale(sideLength * Math.sqrt(3), sideLength);
+
+    g2d.setColor(palette.diamond);
+    g2d.fill(DIAMOND);
+  }
+}
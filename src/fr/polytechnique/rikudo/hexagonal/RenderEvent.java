@@ -0,0 +1,29 @@
+package fr.polytechnique.rikudo.hexagonal;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("fr.polytechnique.rikudo.Render")
+@Label("Render")
+@Category({"Rikudo", "Grid"})
+@Description("Drawing a puzzle or its solution")
+class RenderEvent extends jdk.jfr.Event {
+  @Label("Output")
+  @Description("image, png or svg")
+  String output;
+
+  @Label("Width")
+  int width;
+
+  @Label("Height")
+  int height;
+
+  @Label("Bands")
+  @Description("Zero for svg, which is not drawn in bands")
+  int bands;
+
+  @Label("Solution")
+  boolean solution;
+}
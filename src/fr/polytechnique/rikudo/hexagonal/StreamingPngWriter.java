@@ -0,0 +1,164 @@
+package fr.polytechnique.rikudo.hexagonal;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.Raster;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+// Writes an 8-bit RGBA PNG whose rows are given band by band, from top to bottom, so that an image
+// never has to be held in memory as a whole. Rows are filtered with the Up filter, which suits the
+// large flat areas of puzzles, and compressed data is emitted as IDAT chunks of bounded size.
+public class StreamingPngWriter implements Closeable {
+  private static final byte[] SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n'};
+  private static final int IDAT_SIZE = 1 << 16;
+  private static final int FILTER_UP = 2;
+
+  private final DataOutputStream out;
+  private final int width;
+  private final int height;
+  private final DeflaterOutputStream idat;
+  private final Deflater deflater;
+  private byte[] previousRow;
+  private byte[] row;
+  private final byte[] filtered;
+  private int rowsWritten;
+
+  public StreamingPngWriter(OutputStream out, int width, int height) throws IOException {
+    this.out = new DataOutputStream(out);
+    this.width = width;
+    this.height = height;
+    previousRow = new byte[4 * width];
+    row = new byte[4 * width];
+    filtered = new byte[4 * width];
+
+    this.out.write(SIGNATURE);
+    ByteArrayOutputStream header = new ByteArrayOutputStream();
+    DataOutputStream headerData = new DataOutputStream(header);
+    headerData.writeInt(width);
+    headerData.writeInt(height);
+    headerData.writeByte(8); // bit depth
+    headerData.writeByte(6); // color type RGBA
+    headerData.writeByte(0); // deflate
+    headerData.writeByte(0); // adaptive filtering
+    headerData.writeByte(0); // no interlace
+    writeChunk("IHDR", header.toByteArray(), header.size());
+
+    deflater = new Deflater();
+    idat = new DeflaterOutputStream(new ChunkOutputStream(), deflater, IDAT_SIZE);
+  }
+
+  // Appends the rows of the band, which must be as wide as the image
+  public void writeRows(BufferedImage band) throws IOException {
+    if (band.getWidth() != width) {
+      throw new IllegalArgumentException("Band width " + band.getWidth() + " != " + width);
+    }
+    if (rowsWritten + band.getHeight() > height) {
+      throw new IllegalStateException("More rows than the image height " + height);
+    }
+
+    int[] argb = new int[width];
+    Raster raster = band.getRaster();
+    boolean packed = band.getType() == BufferedImage.TYPE_INT_ARGB
+        && raster.getDataBuffer() instanceof DataBufferInt;
+    for (int y = 0; y < band.getHeight(); ++y) {
+      if (packed) {
+        raster.getDataElements(0, y, width, 1, argb);
+      } else {
+        band.getRGB(0, y, width, 1, argb, 0, width);
+      }
+      for (int x = 0; x < width; ++x) {
+        int pixel = argb[x];
+        row[4 * x] = (byte) (pixel >> 16);
+        row[4 * x + 1] = (byte) (pixel >> 8);
+        row[4 * x + 2] = (byte) pixel;
+        row[4 * x + 3] = (byte) (pixel >>> 24);
+      }
+      writeRow();
+    }
+  }
+
+  private void writeRow() throws IOException {
+    for (int i = 0; i < row.length; ++i) {
+      filtered[i] = (byte) (row[i] - previousRow[i]);
+    }
+    idat.write(FILTER_UP);
+    idat.write(filtered);
+
+    byte[] swap = previousRow;
+    previousRow = row;
+    row = swap;
+    ++rowsWritten;
+  }
+
+  @Override
+  public void close() throws IOException {
+    try {
+      if (rowsWritten != height) {
+        throw new IllegalStateException(rowsWritten + " rows written out of " + height);
+      }
+      idat.finish();
+      idat.flush();
+      writeChunk("IEND", new byte[0], 0);
+      out.flush();
+    } finally {
+      deflater.end();
+      out.close();
+    }
+  }
+
+  private void writeChunk(String type, byte[] data, int length) throws IOException {
+    byte[] typeBytes = type.getBytes(StandardCharsets.US_ASCII);
+    CRC32 crc = new CRC32();
+    crc.update(typeBytes);
+    crc.update(data, 0, length);
+
+    out.writeInt(length);
+    out.write(typeBytes);
+    out.write(data, 0, length);
+    out.writeInt((int) crc.getValue());
+  }
+
+  // Collects compressed data and emits it as IDAT chunks
+  private class ChunkOutputStream extends OutputStream {
+    private final byte[] buffer = new byte[IDAT_SIZE];
+    private int size;
+
+    @Override
+    public void write(int b) throws IOException {
+      if (size == buffer.length) {
+        flush();
+      }
+      buffer[size++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      while (len > 0) {
+        if (size == buffer.length) {
+          flush();
+        }
+        int n = Math.min(len, buffer.length - size);
+        System.arraycopy(b, off, buffer, size, n);
+        size += n;
+        off += n;
+        len -= n;
+      }
+    }
+
+    @Override
+    public void flush() throws IOException {
+      if (size > 0) {
+        writeChunk("IDAT", buffer, size);
+        size = 0;
+      }
+    }
+  }
+}
@@ -0,0 +1,20 @@
+package fr.polytechnique.rikudo.puzzle;
+
+public class DesignIteration {
+  public final int index;
+  public final int vertexConstraints;
+  public final int diamondConstraints;
+  public final int redundantConstraints;
+  public final int necessaryConstraints;
+  public final long nanos;
+
+  public DesignIteration(int index, int vertexConstraints, int diamondConstraints,
+      int redundantConstraints, int necessaryConstraints, long nanos) {
+    this.index = index;
+    this.vertexConstraints = vertexConstraints;
+    this.diamondConstraints = diamondConstraints;
+    this.redundantConstraints = redundantConstraints;
+    this.necessaryConstraints = necessaryConstraints;
+    this.nanos = nanos;
+  }
+}
@@ -0,0 +1,27 @@
+package fr.polytechnique.rikudo.puzzle;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("fr.polytechnique.rikudo.DesignIteration")
+@Label("Design Iteration")
+@Category({"Rikudo", "Design"})
+@Description("Removing a redundant constraint and looking for the redundant ones left")
+class DesignIterationEvent extends jdk.jfr.Event {
+  @Label("Iteration")
+  int iteration;
+
+  @Label("Vertex Constraints")
+  int vertexConstraints;
+
+  @Label("Diamond Constraints")
+  int diamondConstraints;
+
+  @Label("Redundant Constraints")
+  int redundantConstraints;
+
+  @Label("Necessary Constraints")
+  int necessaryConstraints;
+}
@@ -0,0 +1,16 @@
+package fr.polytechnique.rikudo.puzzle;
+
+import fr.polytechnique.rikudo.solver.SolverListener;
+
+// Receives every SAT call made while designing a puzzle, and a summary of each design iteration
+public interface DesignListener extends SolverListener {
+  // Called by each design attempt before the SAT call looking for its path
+  default void designStarted(int source, int target) {
+  }
+
+  // Called by each design attempt which gives up, with the reason why
+  default void designFailed(int source, int target, String reason) {
+  }
+
+  void iterationDone(DesignIteration iteration);
+}
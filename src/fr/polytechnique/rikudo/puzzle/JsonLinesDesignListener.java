@@ -0,0 +1,64 @@
+package fr.polytechnique.rikudo.puzzle;
+
+import fr.polytechnique.rikudo.solver.Json;
+import fr.polytechnique.rikudo.solver.SolverStats;
+import java.io.PrintStream;
+
+// Writes one JSON object per line: a "sat-call" line per SAT call, an "iteration" line per
+// design iteration and a "failed" line per failed design attempt, the latter two with the number
+// of SAT calls made since the previous one.
+public class JsonLinesDesignListener implements DesignListener {
+  private final PrintStream output;
+  private final String designId;
+  private int satCalls;
+
+  public JsonLinesDesignListener(PrintStream output, String designId) {
+    this.output = output;
+    this.designId = designId;
+    this.satCalls = 0;
+  }
+
+  @Override
+  public void solverCalled(SolverStats stats, boolean satisfiable) {
+    ++satCalls;
+    output.println("{\"event\":\"sat-call\""
+        + ",\"design\":" + Json.quote(designId)
+        + ",\"satisfiable\":" + satisfiable
+        + ",\"variables\":" + stats.variables
+        + ",\"clauses\":" + stats.clauses
+        + ",\"decisions\":" + stats.decisions
+        + ",\"conflicts\":" + stats.conflicts
+        + ",\"propagations\":" + stats.propagations
+        + ",\"restarts\":" + stats.restarts
+        + ",\"encodingNanos\":" + stats.encodingNanos
+        + ",\"solvingNanos\":" + stats.solvingNanos
+        + "}");
+  }
+
+  @Override
+  public void designFailed(int source, int target, String reason) {
+    output.println("{\"event\":\"failed\""
+        + ",\"design\":" + Json.quote(designId)
+        + ",\"source\":" + source
+        + ",\"target\":" + target
+        + ",\"reason\":" + Json.quote(reason)
+        + ",\"satCalls\":" + satCalls
+        + "}");
+    satCalls = 0;
+  }
+
+  @Override
+  public void iterationDone(DesignIteration iteration) {
+    output.println("{\"event\":\"iteration\""
+        + ",\"design\":" + Json.quote(designId)
+        + ",\"iteration\":" + iteration.index
+        + ",\"satCalls\":" + satCalls
+        + ",\"vertexConstraints\":" + iteration.vertexConstraints
+        + ",\"diamondConstraints\":" + iteration.diamondConstraints
+        + ",\"redundantConstraints\":" + iteration.redundantConstraints
+        + ",\"necessaryConstraints\":" + iteration.necessaryConstraints
+        + ",\"nanos\":" + iteration.nanos
+        + "}");
+    satCalls = 0;
+  }
+}
@@ -5,7 +5,6 @@ import fr.polytechnique.rikudo.solver.BacktrackingSolver;
 import fr.polytechnique.rikudo.solver.Constraints;
 import fr.polytechnique.rikudo.solver.GraphReader;
 import fr.polytechnique.rikudo.solver.IGraph;
-import fr.polytechnique.rikudo.solver.IHamPathSolver;
 import fr.polytechnique.rikudo.solver.ReducingToSATSolver;
 import fr.polytechnique.rikudo.solver.ReducingToSATSolver.Mode;
 import java.util.HashSet;
@@ -17,6 +16,13 @@ import java.util.Set;
 
 public class RikudoPuzzle {
 
+  public enum MinimizationMode {
+    // Remove random redundant constraints and recheck all the remaining ones after each removal
+    E_MINIMIZE_ITERATIVE,
+    // Extract a minimal unsatisfiable subset of constraints from a single incremental SAT solver
+    E_MINIMIZE_UNSAT_CORE,
+  }
+
   public static class DesignProperties {
 
     public boolean isEnableDiamondConstraints() {
@@ -35,12 +41,22 @@ public class RikudoPuzzle {
       this.enableVertexConstraints = enableVertexConstraints;
     }
 
+    public MinimizationMode getMinimizationMode() {
+      return minimizationMode;
+    }
+
+    public void setMinimizationMode(MinimizationMode minimizationMode) {
+      this.minimizationMode = minimizationMode;
+    }
+
     private boolean enableDiamondConstraints;
     private boolean enableVertexConstraints;
+    private MinimizationMode minimizationMode;
 
     public DesignProperties() {
       enableVertexConstraints = true;
       enableDiamondConstraints = true;
+      minimizationMode = MinimizationMode.E_MINIMIZE_UNSAT_CORE;
     }
   }
 
@@ -48,6 +64,9 @@ public class RikudoPuzzle {
   private final int source;
   private final int target;
   private final Constraints constraints;
+  private DesignListener listener;
+  private List<Integer> solution;
+  private String failure;
 
   public RikudoPuzzle(IGraph graph, int source, int target) {
     this(graph, source, target, new Constraints());
@@ -60,11 +79,67 @@ public class RikudoPuzzle {
     this.constraints = constraints;
   }
 
+  // The path the last design() call has built the puzzle around
+  public List<Integer> getSolution() {
+    return solution;
+  }
+
+  public void setDesignListener(DesignListener listener) {
+    this.listener = listener;
+  }
+
   public boolean verifyUniqueness(List<Integer> path) {
     ReducingToSATSolver solver = new ReducingToSATSolver(graph, source, target, Mode.E_MODE_PATH, constraints);
+    solver.setListener(listener);
     return solver.verifyUniqueness(path);
   }
 
+  // Ends the iteration recorded by the event, which was begun with the iteration
+  private void reportIteration(int iteration, Constraints redundantConstraints,
+      Constraints necessaryConstraints, long nanos, DesignIterationEvent event) {
+    event.end();
+    if (listener == null && !event.shouldCommit()) {
+      return;
+    }
+    int redundant =
+        redundantConstraints.countVertexConstraints() + redundantConstraints.countDiamondConstraints();
+    int necessary =
+        necessaryConstraints.countVertexConstraints() + necessaryConstraints.countDiamondConstraints();
+    if (event.shouldCommit()) {
+      event.iteration = iteration;
+      event.vertexConstraints = constraints.countVertexConstraints();
+      event.diamondConstraints = constraints.countDiamondConstraints();
+      event.redundantConstraints = redundant;
+      event.necessaryConstraints = necessary;
+      event.commit();
+    }
+    if (listener == null) {
+      return;
+    }
+    listener.iterationDone(new DesignIteration(iteration,
+        constraints.countVertexConstraints(),
+        constraints.countDiamondConstraints(),
+        redundant,
+        necessary,
+        nanos));
+  }
+
+  // Whether the path is still unique, the constraint having been removed by the caller
+  private boolean isRedundant(List<Integer> path, String constraint, int first, int second) {
+    UniquenessCheckEvent event = new UniquenessCheckEvent();
+    event.begin();
+    boolean redundant = verifyUniqueness(path);
+    event.end();
+    if (event.shouldCommit()) {
+      event.constraint = constraint;
+      event.first = first;
+      event.second = second;
+      event.redundant = redundant;
+      event.commit();
+    }
+    return redundant;
+  }
+
   // public boolean verifyUniqueness() {
   //   BacktrackingSolver solver = new BacktrackingSolver(graph, source, target, constraints);
   //   if (solver.findKth(2) == null) {
@@ -109,7 +184,7 @@ public class RikudoPuzzle {
 
       int position = vertexConstraints.get(vertex);
       constraints.removeVertexConstraint(vertex, position);
-      if (verifyUniqueness(path)) {
+      if (isRedundant(path, "vertex", vertex, position)) {
         redundantConstraints.addVertexConstraint(vertex, position);
       } else {
         necessaryConstraints.addVertexConstraint(vertex, position);
@@ -131,7 +206,7 @@ public class RikudoPuzzle {
           continue;
         }
         constraints.removeDiamondConstraint(v1, v2);
-        if (verifyUniqueness(path)) {
+        if (isRedundant(path, "diamond", v1, v2)) {
           redundantConstraints.addDiamondConstraint(v1, v2);
         } else {
           necessaryConstraints.addDiamondConstraint(v1, v2);
@@ -143,17 +218,36 @@ public class RikudoPuzzle {
     return redundantConstraints;
   }
 
+  // Why the last design() call returned null
+  public String getFailure() {
+    return failure;
+  }
+
+  private Constraints fail(String reason) {
+    failure = reason;
+    if (listener != null) {
+      listener.designFailed(source, target, reason);
+    }
+    return null;
+  }
+
+  // The constraints making the path found unique, or null if there is no path between the source
+  // and the target, or if the allowed kinds of constraints cannot make it unique (see getFailure())
   public Constraints design(Random rng, DesignProperties properties) {
+    failure = null;
+    if (listener != null) {
+      listener.designStarted(source, target);
+    }
     //BacktrackingSolver solver = new BacktrackingSolver(graph, source, target, constraints);
     //List<Integer> foundPath = solver.findKth(1);
-    IHamPathSolver solver = new ReducingToSATSolver(graph, source, target,
+    ReducingToSATSolver solver = new ReducingToSATSolver(graph, source, target,
         Mode.E_MODE_PATH, constraints);
+    solver.setListener(listener);
     List<Integer> foundPath = solver.solve();
     if (foundPath == null) {
-      System.out.println("Rikudo puzzle can not be created: there is no hamiltonian path!");
-      return null;
+      return fail("no Hamiltonian path between the source and the target");
     }
-    System.out.println("Hamiltonian path: " + foundPath);
+    solution = foundPath;
     if (properties.isEnableVertexConstraints()) {
       for (int i = 1; i < foundPath.size() - 1; i++) {
         constraints.addVertexConstraint(foundPath.get(i), i);
@@ -173,21 +267,43 @@ public class RikudoPuzzle {
       constraints.getDiamondConstraints().clear();
     }
 
+    if (properties.getMinimizationMode() == MinimizationMode.E_MINIMIZE_UNSAT_CORE) {
+      DesignIterationEvent event = new DesignIterationEvent();
+      event.begin();
+      long timeBegin = System.nanoTime();
+      ReducingToSATSolver satSolver = new ReducingToSATSolver(graph, source, target,
+          Mode.E_MODE_PATH, constraints);
+      satSolver.setListener(listener);
+      Constraints minimalConstraints = satSolver.minimalUniqueConstraints(foundPath, rng);
+      if (minimalConstraints == null) {
+        return fail(satSolver.isTimedOut()
+            ? "the minimisation of the constraints timed out"
+            : "the allowed constraints cannot make the path unique");
+      }
+      constraints.clear();
+      constraints.addAll(minimalConstraints);
+      reportIteration(1, new Constraints(), minimalConstraints, System.nanoTime() - timeBegin,
+          event);
+      return constraints;
+    }
+
     if (!verifyUniqueness(foundPath)) {
-      System.out.println("Cannot build a puzzle with such properties");
-      return null;
+      return fail("the allowed constraints cannot make the path unique");
     }
 
+    DesignIterationEvent event = new DesignIterationEvent();
+    event.begin();
+    long timeBegin = System.nanoTime();
     Constraints necessaryConstraints = new Constraints();
     Constraints redundantConstraints = this.redundantConstraints(foundPath, necessaryConstraints);
     int iteration = 0;
+    reportIteration(iteration, redundantConstraints, necessaryConstraints,
+        System.nanoTime() - timeBegin, event);
     while (!isEmpty(redundantConstraints)) {
-      long timeBegin = System.nanoTime();
+      event = new DesignIterationEvent();
+      event.begin();
+      timeBegin = System.nanoTime();
       ++iteration;
-      System.out.println("Iteration #" + iteration);
-      System.out.println("Constraints: " + constraints);
-      System.out.println("Redundant:   " + redundantConstraints);
-      System.out.println("Necessary:   " + necessaryConstraints);
       int vertexConstraintsCnt = redundantConstraints.countVertexConstraints();
       int diamondConstraintsCnt = redundantConstraints.countDiamondConstraints();
       int randomNumber = rng.nextInt(vertexConstraintsCnt + diamondConstraintsCnt);
@@ -225,8 +341,8 @@ public class RikudoPuzzle {
       }
 
       redundantConstraints = this.redundantConstraints(foundPath, necessaryConstraints);
-      long timeEnd = System.nanoTime();
-      System.out.printf("Done in %.3f s\n", (timeEnd - timeBegin) / 1e9);
+      reportIteration(iteration, redundantConstraints, necessaryConstraints,
+          System.nanoTime() - timeBegin, event);
     }
 
     return constraints;
@@ -264,6 +380,7 @@ public class RikudoPuzzle {
         instance.constraints);
     DesignProperties props = new DesignProperties();
     props.setEnableVertexConstraints(false);
+    puzzle.setDesignListener(new JsonLinesDesignListener(System.err, "riXkudo"));
     Constraints constraints = puzzle.design(new Random(), props);
 
     System.out.println("Vertex constraints:      " + constraints.getVertexConstraints());
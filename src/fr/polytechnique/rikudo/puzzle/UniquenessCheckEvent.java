@@ -0,0 +1,28 @@
+package fr.polytechnique.rikudo.puzzle;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("fr.polytechnique.rikudo.UniquenessCheck")
+@Label("Uniqueness Check")
+@Category({"Rikudo", "Design"})
+@Description("Whether the path stays unique without one constraint")
+class UniquenessCheckEvent extends jdk.jfr.Event {
+  @Label("Constraint")
+  @Description("vertex or diamond")
+  String constraint;
+
+  @Label("First")
+  @Description("The vertex of a vertex constraint, or one end of a diamond")
+  int first;
+
+  @Label("Second")
+  @Description("The position of a vertex constraint, or the other end of a diamond")
+  int second;
+
+  @Label("Redundant")
+  @Description("The path is unique without the constraint")
+  boolean redundant;
+}
@@ -0,0 +1,229 @@
+package fr.polytechnique.rikudo.solver;
+
+import fr.polytechnique.rikudo.benchmark.Benchmark.ProblemInstance;
+import fr.polytechnique.rikudo.solver.ReducingToSATSolver.Mode;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+// Runs the solvers on an executor and hands back futures, for callers which must answer in time:
+//   - every call takes a deadline in System.nanoTime() terms (Long.MAX_VALUE for none), which
+//     becomes the sat4j timeout or the time limit of the backtracker; past it, the future fails
+//     with a java.util.concurrent.TimeoutException
+//   - cancelling the token given to the call, or the future itself, stops the solver within a few
+//     hundred conflicts or a few thousand nodes; the future fails with a CancellationException
+//   - a progress listener, if given, is called every progress interval from the solving thread
+// The problem is only read while the future is pending, several calls can share it.
+public class AsyncSolver {
+  public static enum Algorithm {
+    SAT,
+    BACKTRACKING,
+  }
+
+  private final Executor executor;
+  private long progressIntervalMillis = 1000;
+
+  public AsyncSolver(Executor executor) {
+    this.executor = executor;
+  }
+
+  public void setProgressIntervalMillis(long progressIntervalMillis) {
+    this.progressIntervalMillis = progressIntervalMillis;
+  }
+
+  // Cancelling the future cancels its token, and thus the solver working for it
+  private static class SolverFuture<T> extends CompletableFuture<T> {
+    private final CancellationToken token;
+
+    SolverFuture(CancellationToken token) {
+      this.token = token;
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+      boolean cancelled = super.cancel(mayInterruptIfRunning);
+      token.cancel();
+      return cancelled;
+    }
+  }
+
+  private interface Task<T> {
+    T run(CancellationToken token) throws TimeoutException;
+  }
+
+  private <T> CompletableFuture<T> submit(CancellationToken token, Task<T> task) {
+    CancellationToken actualToken = token != null ? token : new CancellationToken();
+    SolverFuture<T> future = new SolverFuture<>(actualToken);
+    try {
+      executor.execute(() -> {
+        try {
+          if (actualToken.isCancelled()) {
+            throw new CancellationException();
+          }
+          future.complete(task.run(actualToken));
+        } catch (Throwable e) {
+          future.completeExceptionally(e);
+        }
+      });
+    } catch (RejectedExecutionException e) {
+      future.completeExceptionally(e);
+    }
+    return future;
+  }
+
+  // A path from the source to the target, or null if there is none
+  public CompletableFuture<List<Integer>> solve(ProblemInstance problem, Algorithm algorithm,
+      long deadline, CancellationToken token, ProgressListener progress) {
+    return submit(token, actualToken -> {
+      if (algorithm == Algorithm.BACKTRACKING) {
+        BacktrackingSolver solver = backtracking(problem, progress);
+        return run(solver, actualToken, deadline, solver::solve);
+      }
+      ReducingToSATSolver solver = sat(problem, progress);
+      return run(solver, actualToken, deadline, solver::solve);
+    });
+  }
+
+  // BatchSolver.STATUS_UNIQUE, STATUS_MULTIPLE or STATUS_NO_SOLUTION, the deadline covers both
+  // the search of a path and the search of a second one
+  public CompletableFuture<String> checkUniqueness(ProblemInstance problem, Algorithm algorithm,
+      long deadline, CancellationToken token, ProgressListener progress) {
+    return submit(token, actualToken -> {
+      boolean unique;
+      if (algorithm == Algorithm.BACKTRACKING) {
+        BacktrackingSolver solver = backtracking(problem, progress);
+        if (run(solver, actualToken, deadline, solver::solve) == null) {
+          return BatchSolver.STATUS_NO_SOLUTION;
+        }
+        unique = run(solver, actualToken, deadline, () -> solver.findKth(2)) == null;
+      } else {
+        ReducingToSATSolver solver = sat(problem, progress);
+        List<Integer> path = run(solver, actualToken, deadline, solver::solve);
+        if (path == null) {
+          return BatchSolver.STATUS_NO_SOLUTION;
+        }
+        unique = run(solver, actualToken, deadline, () -> solver.verifyUniqueness(path));
+      }
+      return unique ? BatchSolver.STATUS_UNIQUE : BatchSolver.STATUS_MULTIPLE;
+    });
+  }
+
+  // The number of paths, by backtracking: the progress reports the paths found so far
+  public CompletableFuture<Long> count(ProblemInstance problem, long deadline,
+      CancellationToken token, ProgressListener progress) {
+    return submit(token, actualToken -> {
+      BacktrackingSolver solver = backtracking(problem, progress);
+      return run(solver, actualToken, deadline, solver::count);
+    });
+  }
+
+  private BacktrackingSolver backtracking(ProblemInstance problem, ProgressListener progress) {
+    BacktrackingSolver solver = new BacktrackingSolver(problem.graph, problem.source,
+        problem.target, problem.constraints);
+    if (progress != null) {
+      solver.setProgressListener(progress, progressIntervalMillis);
+    }
+    return solver;
+  }
+
+  private ReducingToSATSolver sat(ProblemInstance problem, ProgressListener progress) {
+    ReducingToSATSolver solver = new ReducingToSATSolver(problem.graph, problem.source,
+        problem.target, Mode.E_MODE_PATH, problem.constraints);
+    if (progress != null) {
+      solver.setProgressListener(progress, progressIntervalMillis);
+    }
+    return solver;
+  }
+
+  private static <T> T run(BacktrackingSolver solver, CancellationToken token, long deadline,
+      Supplier<T> search) throws TimeoutException {
+    Runnable stop = solver::cancel;
+    token.register(stop);
+    try {
+      solver.setTimeoutMillis(timeoutMillis(deadline));
+      T result = search.get();
+      if (solver.isCancelled()) {
+        throw new CancellationException();
+      }
+      if (solver.isTimedOut()) {
+        throw new TimeoutException("Deadline passed after " + solver.getStats().nodes + " nodes");
+      }
+      return result;
+    } finally {
+      token.unregister(stop);
+    }
+  }
+
+  private static <T> T run(ReducingToSATSolver solver, CancellationToken token, long deadline,
+      Supplier<T> search) throws TimeoutException {
+    Runnable stop = solver::cancel;
+    token.register(stop);
+    try {
+      solver.setTimeoutMillis(timeoutMillis(deadline));
+      T result = search.get();
+      if (solver.isCancelled()) {
+        throw new CancellationException();
+      }
+      if (solver.isTimedOut()) {
+        throw new TimeoutException(
+            "Deadline passed after " + solver.getStats().conflicts + " conflicts");
+      }
+      return result;
+    } finally {
+      token.unregister(stop);
+    }
+  }
+
+  // The time limit of a solver, zero without deadline
+  private static int timeoutMillis(long deadline) throws TimeoutException {
+    if (deadline == Long.MAX_VALUE) {
+      return 0;
+    }
+    long remaining = (deadline - System.nanoTime()) / 1000000;
+    if (remaining <= 0) {
+      throw new TimeoutException("Deadline passed before solving");
+    }
+    return (int) Math.min(remaining, Integer.MAX_VALUE);
+  }
+
+  // Counts the paths of a problem, printing progress, for at most the given time:
+  //   prog [-t millis] graph.txt constraints.txt
+  public static void main(String[] args) throws Exception {
+    long timeoutMillis = 0;
+    int first = 0;
+    if (args.length > 0 && args[0].equals("-t")) {
+      timeoutMillis = Long.parseLong(args[1]);
+      first = 2;
+    }
+    if (args.length != first + 2) {
+      System.err.println("Usage: prog [-t millis] graph.txt constraints.txt");
+      System.exit(1);
+    }
+    ProblemInstance problem = new GraphReader(args[first], args[first + 1]).readProblem();
+
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      AsyncSolver solver = new AsyncSolver(executor);
+      long deadline = timeoutMillis > 0
+          ? System.nanoTime() + 1000000L * timeoutMillis : Long.MAX_VALUE;
+      CompletableFuture<Long> count = solver.count(problem, deadline, null, progress ->
+          System.out.printf("%8.1f s %14d nodes %14.0f nodes/s %10d paths\n",
+              progress.elapsedNanos / 1e9, progress.nodes, progress.perSecond(progress.nodes),
+              progress.pathsFound));
+      try {
+        System.out.println("Paths: " + count.join());
+      } catch (CompletionException e) {
+        System.out.println("No count: " + e.getCause().getMessage());
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+}
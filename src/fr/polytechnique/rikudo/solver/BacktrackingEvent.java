@@ -0,0 +1,34 @@
+package fr.polytechnique.rikudo.solver;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("fr.polytechnique.rikudo.Backtracking")
+@Label("Backtracking Search")
+@Category({"Rikudo", "Solver"})
+@Description("A search of the backtracking solver")
+class BacktrackingEvent extends jdk.jfr.Event {
+  @Label("Operation")
+  @Description("solve, count or findKth")
+  String operation;
+
+  @Label("Vertices")
+  int vertices;
+
+  @Label("Nodes")
+  long nodes;
+
+  @Label("Backtracks")
+  long backtracks;
+
+  @Label("Paths Found")
+  long pathsFound;
+
+  @Label("Timed Out")
+  boolean timedOut;
+
+  @Label("Cancelled")
+  boolean cancelled;
+}
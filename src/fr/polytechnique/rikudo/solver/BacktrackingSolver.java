@@ -12,6 +12,23 @@ public class BacktrackingSolver implements IHamPathSolver {
   private final Constraints constraints;
   private List<Integer> foundPath;
   private long pathCnt;
+  private int timeoutMillis;
+  private long deadline;
+  private long nodeCnt;
+  private boolean timedOut;
+  private volatile boolean cancelled;
+  // Set once the search saw the time limit or the cancellation, it unwinds from then on
+  private boolean stopped;
+  private ProgressListener progressListener;
+  private long progressIntervalNanos;
+  private long searchBegin;
+  private long nextProgress;
+  private long backtrackCnt;
+  private int maxDepth;
+  private long vertexPruneCnt;
+  private long diamondPruneCnt;
+  private long targetPruneCnt;
+  private long searchNanos;
 
   public BacktrackingSolver(IGraph graph, int source, int target){
     this(graph, source, target, new Constraints());
@@ -26,9 +43,73 @@ public class BacktrackingSolver implements IHamPathSolver {
     this.constraints = constraints;
   }
 
+  // Time limit of every search started from now on, zero means no limit
+  public void setTimeoutMillis(int timeoutMillis) {
+    this.timeoutMillis = timeoutMillis;
+  }
+
+  // Whether the last search ran out of time, in which case solve() and findKth(k) return null and
+  // count() only returns the number of paths found so far
+  public boolean isTimedOut() {
+    return timedOut;
+  }
+
+  // Stops the running search (within a few thousand nodes) and every later one, from any thread.
+  // The results are then those of a search which ran out of time, without isTimedOut().
+  public void cancel() {
+    cancelled = true;
+  }
+
+  public boolean isCancelled() {
+    return cancelled;
+  }
+
+  // The listener is called about every intervalMillis with the nodes and paths found so far
+  public void setProgressListener(ProgressListener listener, long intervalMillis) {
+    this.progressListener = listener;
+    this.progressIntervalNanos = 1000000L * intervalMillis;
+  }
+
+  // Work done by the last search, the counters are plain fields bumped along the way
+  public SolverStats getStats() {
+    return SolverStats.ofSearch(nodeCnt, backtrackCnt, maxDepth, vertexPruneCnt,
+        diamondPruneCnt, targetPruneCnt, searchNanos);
+  }
+
   private void reset() {
     foundPath = null;
     pathCnt = 0;
+    nodeCnt = 0;
+    timedOut = false;
+    backtrackCnt = 0;
+    maxDepth = 0;
+    vertexPruneCnt = 0;
+    diamondPruneCnt = 0;
+    targetPruneCnt = 0;
+    stopped = cancelled;
+    searchBegin = System.nanoTime();
+    deadline = searchBegin + 1000000L * timeoutMillis;
+    nextProgress = searchBegin + progressIntervalNanos;
+  }
+
+  // The clock and the cancellation are only looked at every few thousand nodes
+  private boolean isExpired() {
+    if ((nodeCnt & 4095) == 0 && !stopped) {
+      if (cancelled) {
+        stopped = true;
+      } else if (timeoutMillis > 0 || progressListener != null) {
+        long now = System.nanoTime();
+        if (timeoutMillis > 0 && now - deadline > 0) {
+          timedOut = true;
+          stopped = true;
+        }
+        if (progressListener != null && now - nextProgress >= 0) {
+          nextProgress = now + progressIntervalNanos;
+          progressListener.progress(new SolverProgress(nodeCnt, pathCnt, 0, now - searchBegin));
+        }
+      }
+    }
+    return stopped;
   }
 
   private List<Integer> applyDiamondConstraints(int vertex, boolean[] isVisited){
@@ -45,6 +126,7 @@ public class BacktrackingSolver implements IHamPathSolver {
       }
     }
     if (!diamondsTmp.isEmpty()){
+      diamondPruneCnt += Math.max(0, adjacentVertices.size() - diamondsTmp.size());
       return new ArrayList<>(diamondsTmp);
     } else{
       return adjacentVertices;
@@ -53,58 +135,88 @@ public class BacktrackingSolver implements IHamPathSolver {
 
   private boolean findPath(int vertex, ArrayList<Integer> path, boolean[] isVisited,
       long maxPathCnt) {
+    ++nodeCnt;
+    if (path.size() > maxDepth) {
+      maxDepth = path.size();
+    }
     if (vertex == target) {
       if (path.size() == graph.size()) {
         foundPath = path;
         ++pathCnt;
         return maxPathCnt > 0 && pathCnt >= maxPathCnt;
       } else {
+        ++targetPruneCnt;
         return false;
       }
     }
+    if (isExpired()) {
+      return true;
+    }
     //System.out.println(path);
     List<Integer> adjacentVertices = applyDiamondConstraints(vertex, isVisited);
     for (int adjacentVert : adjacentVertices) {
-      if (!isVisited[adjacentVert] && constraints.isAllowedVertex(adjacentVert, path.size())) {
-        isVisited[adjacentVert] = true;
-        path.add(adjacentVert);
-
-        if (findPath(adjacentVert, path, isVisited, maxPathCnt)) {
-          return true;
-        }
+      if (isVisited[adjacentVert]) {
+        continue;
+      }
+      if (!constraints.isAllowedVertex(adjacentVert, path.size())) {
+        ++vertexPruneCnt;
+        continue;
+      }
+      isVisited[adjacentVert] = true;
+      path.add(adjacentVert);
 
-        isVisited[adjacentVert] = false;
-        path.remove(path.size() - 1);
+      if (findPath(adjacentVert, path, isVisited, maxPathCnt)) {
+        return true;
       }
+
+      isVisited[adjacentVert] = false;
+      path.remove(path.size() - 1);
+      ++backtrackCnt;
     }
 
     return false;
   }
 
-  private boolean findPathTrampoline(long max_path_cnt) {
+  private boolean findPathTrampoline(long max_path_cnt, String operation) {
     boolean[] visitedVertices = new boolean[graph.size()];
     visitedVertices[source] = true;
     ArrayList<Integer> path = new ArrayList<>();
     path.add(source);
-    return findPath(source, path, visitedVertices, max_path_cnt);
+    BacktrackingEvent event = new BacktrackingEvent();
+    event.begin();
+    long timeBegin = System.nanoTime();
+    boolean done = findPath(source, path, visitedVertices, max_path_cnt);
+    searchNanos = System.nanoTime() - timeBegin;
+    event.end();
+    if (event.shouldCommit()) {
+      event.operation = operation;
+      event.vertices = graph.size();
+      event.nodes = nodeCnt;
+      event.backtracks = backtrackCnt;
+      event.pathsFound = pathCnt;
+      event.timedOut = timedOut;
+      event.cancelled = stopped && !timedOut;
+      event.commit();
+    }
+    return done;
   }
 
   @Override
   public List<Integer> solve() {
     reset();
-    findPathTrampoline(1);
-    return foundPath;
+    findPathTrampoline(1, "solve");
+    return stopped ? null : foundPath;
   }
 
   public long count() {
     reset();
-    findPathTrampoline(0);
+    findPathTrampoline(0, "count");
     return pathCnt;
   }
 
   public List<Integer> findKth(long k) {
     reset();
-    if (!findPathTrampoline(k)) {
+    if (!findPathTrampoline(k, "findKth") || stopped) {
       return null;
     }
     return foundPath;
@@ -0,0 +1,457 @@
+package fr.polytechnique.rikudo.solver;
+
+import fr.polytechnique.rikudo.benchmark.Benchmark.ProblemInstance;
+import fr.polytechnique.rikudo.solver.ReducingToSATSolver.Mode;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+// Checks many problem instances from disk: every instance is parsed, solved, and its solution is
+// checked for uniqueness. Instances come from a directory (every *.rkp problem file, and every
+// <name>_graph.txt with its <name>_constraints.txt) or from a JSON lines manifest with one object
+// per instance: {"id": ..., "problem": "x.rkp"} or {"id": ..., "graph": ..., "constraints": ...}.
+//
+// The stages are connected by bounded queues, so a slow stage holds the previous ones back:
+//   listing -> jobs -> parse workers -> parsed -> solve workers -> results -> results file
+// One JSON line per instance is appended to the results file as soon as the instance is done.
+public class BatchSolver {
+  public static final String STATUS_UNIQUE = "unique";
+  public static final String STATUS_MULTIPLE = "multiple";
+  public static final String STATUS_NO_SOLUTION = "no-solution";
+  public static final String STATUS_TIMEOUT = "timeout";
+  public static final String STATUS_ERROR = "error";
+
+  private static class Job {
+    // Marks the end of a queue, one per consumer
+    static final Job END = new Job(null, null, null, null);
+
+    final String id;
+    final Path problemPath;
+    final Path graphPath;
+    final Path constraintsPath;
+
+    Job(String id, Path problemPath, Path graphPath, Path constraintsPath) {
+      this.id = id;
+      this.problemPath = problemPath;
+      this.graphPath = graphPath;
+      this.constraintsPath = constraintsPath;
+    }
+  }
+
+  private static class Parsed {
+    static final Parsed END = new Parsed(Job.END, null, 0, null);
+
+    final Job job;
+    final ProblemInstance problem;
+    final long parseNanos;
+    final String error;
+
+    Parsed(Job job, ProblemInstance problem, long parseNanos, String error) {
+      this.job = job;
+      this.problem = problem;
+      this.parseNanos = parseNanos;
+      this.error = error;
+    }
+  }
+
+  private static class Result {
+    static final Result END = new Result(Parsed.END, null, 0, null);
+
+    final Parsed parsed;
+    final String status;
+    final long solveNanos;
+    final String message;
+    // Summed over the search and the uniqueness check, null if the solver did not run
+    SolverStats stats;
+
+    Result(Parsed parsed, String status, long solveNanos, String message) {
+      this.parsed = parsed;
+      this.status = status;
+      this.solveNanos = solveNanos;
+      this.message = message;
+    }
+
+    Result withStats(SolverStats stats) {
+      this.stats = stats;
+      return this;
+    }
+  }
+
+  private final int parseWorkers;
+  private final int solveWorkers;
+  private final int timeoutMillis;
+  private final BlockingQueue<Job> jobs;
+  private final BlockingQueue<Parsed> parsed;
+  private final BlockingQueue<Result> results;
+  private final Map<String, Integer> statusCounts = new TreeMap<>();
+
+  public BatchSolver(int parseWorkers, int solveWorkers, int timeoutMillis, int queueCapacity) {
+    this.parseWorkers = parseWorkers;
+    this.solveWorkers = solveWorkers;
+    this.timeoutMillis = timeoutMillis;
+    jobs = new ArrayBlockingQueue<>(queueCapacity);
+    parsed = new ArrayBlockingQueue<>(queueCapacity);
+    results = new ArrayBlockingQueue<>(queueCapacity);
+  }
+
+  public Map<String, Integer> getStatusCounts() {
+    return statusCounts;
+  }
+
+  // Runs the whole pipeline and returns once every instance has its result line
+  public void run(Path input, PrintStream output) throws IOException, InterruptedException {
+    ExecutorService parsePool = Executors.newFixedThreadPool(parseWorkers);
+    ExecutorService solvePool = Executors.newFixedThreadPool(solveWorkers);
+    Thread writer = new Thread(() -> writeResults(output), "batch-results");
+    writer.start();
+    for (int i = 0; i < parseWorkers; ++i) {
+      parsePool.execute(this::parseLoop);
+    }
+    for (int i = 0; i < solveWorkers; ++i) {
+      solvePool.execute(this::solveLoop);
+    }
+
+    try {
+      if (Files.isDirectory(input)) {
+        listDirectory(input);
+      } else {
+        listManifest(input);
+      }
+    } finally {
+      // Every stage ends its consumers once all of its own workers are done
+      for (int i = 0; i < parseWorkers; ++i) {
+        jobs.put(Job.END);
+      }
+      parsePool.shutdown();
+      parsePool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+      for (int i = 0; i < solveWorkers; ++i) {
+        parsed.put(Parsed.END);
+      }
+      solvePool.shutdown();
+      solvePool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+      results.put(Result.END);
+      writer.join();
+    }
+  }
+
+  private void listDirectory(Path directory) throws IOException, InterruptedException {
+    try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory)) {
+      for (Path entry : entries) {
+        String name = entry.getFileName().toString();
+        if (name.endsWith(".rkp")) {
+          jobs.put(new Job(name.substring(0, name.length() - 4), entry, null, null));
+        } else if (name.endsWith("_graph.txt")) {
+          String id = name.substring(0, name.length() - "_graph.txt".length());
+          jobs.put(new Job(id, null, entry, entry.resolveSibling(id + "_constraints.txt")));
+        }
+      }
+    }
+  }
+
+  private void listManifest(Path manifest) throws IOException, InterruptedException {
+    Path base = manifest.toAbsolutePath().getParent();
+    try (BufferedReader reader = Files.newBufferedReader(manifest)) {
+      int lineNumber = 0;
+      for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+        ++lineNumber;
+        if (line.trim().isEmpty()) {
+          continue;
+        }
+        Map<String, String> fields = parseJsonObject(line);
+        String id = fields.getOrDefault("id", "line-" + lineNumber);
+        String problem = fields.get("problem");
+        String graph = fields.get("graph");
+        String constraints = fields.get("constraints");
+        if (problem != null) {
+          jobs.put(new Job(id, base.resolve(problem), null, null));
+        } else if (graph != null && constraints != null) {
+          jobs.put(new Job(id, null, base.resolve(graph), base.resolve(constraints)));
+        } else {
+          throw new IOException(manifest + ":" + lineNumber
+              + ": expected \"problem\", or \"graph\" and \"constraints\"");
+        }
+      }
+    }
+  }
+
+  // Flat objects are all a manifest needs: numbers, true and false are kept as written, while
+  // null, arrays and objects are skipped
+  static Map<String, String> parseJsonObject(String line) throws IOException {
+    Map<String, String> fields = new TreeMap<>();
+    int[] position = {skipSpaces(line, 0)};
+    expect(line, position, '{');
+    if (line.charAt(skipSpaces(line, position[0])) == '}') {
+      return fields;
+    }
+    while (true) {
+      String key = parseJsonString(line, position);
+      expect(line, position, ':');
+      String value = parseJsonValue(line, position);
+      if (value != null) {
+        fields.put(key, value);
+      }
+      position[0] = skipSpaces(line, position[0]);
+      if (position[0] < line.length() && line.charAt(position[0]) == ',') {
+        ++position[0];
+      } else {
+        expect(line, position, '}');
+        return fields;
+      }
+    }
+  }
+
+  private static int skipSpaces(String line, int position) {
+    while (position < line.length() && Character.isWhitespace(line.charAt(position))) {
+      ++position;
+    }
+    return position;
+  }
+
+  private static void expect(String line, int[] position, char c) throws IOException {
+    position[0] = skipSpaces(line, position[0]);
+    if (position[0] >= line.length() || line.charAt(position[0]) != c) {
+      throw new IOException("Expected '" + c + "' at column " + (position[0] + 1) + ": " + line);
+    }
+    ++position[0];
+  }
+
+  private static String parseJsonValue(String line, int[] position) throws IOException {
+    position[0] = skipSpaces(line, position[0]);
+    if (position[0] >= line.length()) {
+      throw new IOException("Expected a value at column " + (position[0] + 1) + ": " + line);
+    }
+    char first = line.charAt(position[0]);
+    if (first == '"') {
+      return parseJsonString(line, position);
+    }
+    if (first == '[' || first == '{') {
+      skipJsonContainer(line, position);
+      return null;
+    }
+    int begin = position[0];
+    while (position[0] < line.length() && ",}] \t".indexOf(line.charAt(position[0])) < 0) {
+      ++position[0];
+    }
+    String value = line.substring(begin, position[0]);
+    if (value.isEmpty()) {
+      throw new IOException("Expected a value at column " + (begin + 1) + ": " + line);
+    }
+    return value.equals("null") ? null : value;
+  }
+
+  // Skips a whole array or object, with the strings inside it
+  private static void skipJsonContainer(String line, int[] position) throws IOException {
+    int depth = 0;
+    do {
+      if (position[0] >= line.length()) {
+        throw new IOException("Unterminated array or object: " + line);
+      }
+      char c = line.charAt(position[0]);
+      if (c == '"') {
+        parseJsonString(line, position);
+        continue;
+      }
+      if (c == '[' || c == '{') {
+        ++depth;
+      } else if (c == ']' || c == '}') {
+        --depth;
+      }
+      ++position[0];
+    } while (depth > 0);
+  }
+
+  private static String parseJsonString(String line, int[] position) throws IOException {
+    expect(line, position, '"');
+    StringBuilder result = new StringBuilder();
+    while (position[0] < line.length()) {
+      char c = line.charAt(position[0]++);
+      if (c == '"') {
+        return result.toString();
+      } else if (c != '\\') {
+        result.append(c);
+      } else if (position[0] < line.length()) {
+        char escaped = line.charAt(position[0]++);
+        switch (escaped) {
+          case 'n':
+            result.append('\n');
+            break;
+          case 't':
+            result.append('\t');
+            break;
+          case 'u':
+            result.append((char) Integer.parseInt(line.substring(position[0], position[0] + 4), 16));
+            position[0] += 4;
+            break;
+          default:
+            result.append(escaped);
+        }
+      }
+    }
+    throw new IOException("Unterminated string: " + line);
+  }
+
+  private void parseLoop() {
+    try {
+      for (Job job = jobs.take(); job != Job.END; job = jobs.take()) {
+        parsed.put(parse(job));
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private static Parsed parse(Job job) {
+    long timeBegin = System.nanoTime();
+    try {
+      ProblemInstance problem;
+      if (job.problemPath != null) {
+        problem = ProblemFile.map(job.problemPath).toProblemInstance();
+      } else if (!Files.isRegularFile(job.constraintsPath)) {
+        return new Parsed(job, null, System.nanoTime() - timeBegin,
+            "no constraints file " + job.constraintsPath);
+      } else {
+        problem = new GraphReader(job.graphPath.toString(), job.constraintsPath.toString())
+            .read();
+      }
+      return new Parsed(job, problem, System.nanoTime() - timeBegin, null);
+    } catch (IOException | RuntimeException e) {
+      return new Parsed(job, null, System.nanoTime() - timeBegin, e.toString());
+    }
+  }
+
+  private void solveLoop() {
+    try {
+      for (Parsed instance = parsed.take(); instance != Parsed.END; instance = parsed.take()) {
+        results.put(solve(instance));
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  // The time limit covers both the search of a solution and the uniqueness check
+  private Result solve(Parsed instance) {
+    if (instance.problem == null) {
+      return new Result(instance, STATUS_ERROR, 0, instance.error);
+    }
+
+    long timeBegin = System.nanoTime();
+    try {
+      ProblemInstance problem = instance.problem;
+      ReducingToSATSolver solver = new ReducingToSATSolver(problem.graph, problem.source,
+          problem.target, Mode.E_MODE_PATH, problem.constraints);
+      solver.setTimeoutMillis(timeoutMillis);
+      List<Integer> path = solver.solve();
+      SolverStats stats = solver.getStats();
+      if (path == null) {
+        String status = solver.isTimedOut() ? STATUS_TIMEOUT : STATUS_NO_SOLUTION;
+        return new Result(instance, status, System.nanoTime() - timeBegin, null).withStats(stats);
+      }
+
+      if (timeoutMillis > 0) {
+        long remaining = timeoutMillis - (System.nanoTime() - timeBegin) / 1000000;
+        if (remaining <= 0) {
+          return new Result(instance, STATUS_TIMEOUT, System.nanoTime() - timeBegin, null)
+              .withStats(stats);
+        }
+        solver.setTimeoutMillis((int) remaining);
+      }
+      boolean unique = solver.verifyUniqueness(path);
+      String status = solver.isTimedOut()
+          ? STATUS_TIMEOUT : unique ? STATUS_UNIQUE : STATUS_MULTIPLE;
+      return new Result(instance, status, System.nanoTime() - timeBegin, null)
+          .withStats(stats.plus(solver.getStats()));
+    } catch (RuntimeException e) {
+      return new Result(instance, STATUS_ERROR, System.nanoTime() - timeBegin, e.toString());
+    }
+  }
+
+  private void writeResults(PrintStream output) {
+    try {
+      for (Result result = results.take(); result != Result.END; result = results.take()) {
+        StringBuilder line = new StringBuilder();
+        line.append("{\"id\":").append(Json.quote(result.parsed.job.id))
+            .append(",\"status\":\"").append(result.status).append('"');
+        if (result.parsed.problem != null) {
+          line.append(",\"vertices\":").append(result.parsed.problem.graph.size());
+        }
+        line.append(",\"parseNanos\":").append(result.parsed.parseNanos)
+            .append(",\"solveNanos\":").append(result.solveNanos);
+        if (result.stats != null) {
+          line.append(",\"variables\":").append(result.stats.variables)
+              .append(",\"clauses\":").append(result.stats.clauses)
+              .append(",\"decisions\":").append(result.stats.decisions)
+              .append(",\"conflicts\":").append(result.stats.conflicts)
+              .append(",\"propagations\":").append(result.stats.propagations)
+              .append(",\"restarts\":").append(result.stats.restarts)
+              .append(",\"encodingNanos\":").append(result.stats.encodingNanos);
+        }
+        if (result.message != null) {
+          line.append(",\"message\":").append(Json.quote(result.message));
+        }
+        output.println(line.append('}'));
+        output.flush();
+        statusCounts.merge(result.status, 1, Integer::sum);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  public static void main(String[] args) throws IOException, InterruptedException {
+    int processors = Runtime.getRuntime().availableProcessors();
+    int parseWorkers = Math.max(1, processors / 4);
+    int solveWorkers = processors;
+    int timeoutSeconds = 60;
+    int queueCapacity = 64;
+    String outputName = null;
+    String inputName = null;
+
+    for (int i = 0; i < args.length; ++i) {
+      if (args[i].equals("-p")) {
+        parseWorkers = Integer.parseInt(args[++i]);
+      } else if (args[i].equals("-s")) {
+        solveWorkers = Integer.parseInt(args[++i]);
+      } else if (args[i].equals("-t")) {
+        timeoutSeconds = Integer.parseInt(args[++i]);
+      } else if (args[i].equals("-q")) {
+        queueCapacity = Integer.parseInt(args[++i]);
+      } else if (args[i].equals("-o")) {
+        outputName = args[++i];
+      } else {
+        inputName = args[i];
+      }
+    }
+
+    if (inputName == null) {
+      System.err.println("Usage: prog [-p parse-workers] [-s solve-workers] [-t timeout-seconds]"
+          + " [-q queue-capacity] [-o results.jsonl] directory-or-manifest.jsonl");
+      System.exit(1);
+    }
+
+    BatchSolver batch = new BatchSolver(parseWorkers, solveWorkers, 1000 * timeoutSeconds,
+        queueCapacity);
+    long timeBegin = System.nanoTime();
+    if (outputName == null) {
+      batch.run(Paths.get(inputName), System.out);
+    } else {
+      try (PrintStream output = new PrintStream(Files.newOutputStream(Paths.get(outputName)))) {
+        batch.run(Paths.get(inputName), output);
+      }
+    }
+    long timeEnd = System.nanoTime();
+    System.err.printf("Checked %s in %.3f s\n", batch.getStatusCounts(), (timeEnd - timeBegin) / 1e9);
+  }
+}
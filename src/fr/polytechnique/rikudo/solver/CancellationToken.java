@@ -0,0 +1,45 @@
+package fr.polytechnique.rikudo.solver;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Shared by a caller and the solvers working for it: cancel() stops every solver registered with
+// the token, including the ones registered afterwards
+public class CancellationToken {
+  private final List<Runnable> onCancel = new ArrayList<>();
+  private volatile boolean cancelled;
+
+  public void cancel() {
+    List<Runnable> actions;
+    synchronized (this) {
+      if (cancelled) {
+        return;
+      }
+      cancelled = true;
+      actions = new ArrayList<>(onCancel);
+      onCancel.clear();
+    }
+    for (Runnable action : actions) {
+      action.run();
+    }
+  }
+
+  public boolean isCancelled() {
+    return cancelled;
+  }
+
+  // The action runs at once if the token is already cancelled
+  void register(Runnable action) {
+    synchronized (this) {
+      if (!cancelled) {
+        onCancel.add(action);
+        return;
+      }
+    }
+    action.run();
+  }
+
+  synchronized void unregister(Runnable action) {
+    onCancel.remove(action);
+  }
+}
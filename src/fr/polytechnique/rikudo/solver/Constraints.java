@@ -54,6 +54,23 @@ public class Constraints {
     diamond_constraints.get(v2).remove(v1);
   }
 
+  public void addAll(Constraints other) {
+    for (int vertex : other.getVertexConstraints().keySet()) {
+      addVertexConstraint(vertex, other.getVertexConstraints().get(vertex));
+    }
+    for (int v1 : other.getDiamondConstraints().keySet()) {
+      for (int v2 : other.getDiamondedNeighbours(v1)) {
+        addDiamondConstraint(v1, v2);
+      }
+    }
+  }
+
+  public void clear() {
+    pos_to_vertex_constraints.clear();
+    vertex_to_pos_constraints.clear();
+    diamond_constraints.clear();
+  }
+
   public boolean isAllowedVertex(int vertex, int position) {
     if (pos_to_vertex_constraints.containsKey(position)
         && pos_to_vertex_constraints.get(position) != vertex) {
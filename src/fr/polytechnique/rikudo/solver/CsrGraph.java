@@ -0,0 +1,133 @@
+package fr.polytechnique.rikudo.solver;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Directed graph in compressed sparse rows: the neighbours of vertex v are
+// neighbours[offsets[v]] ... neighbours[offsets[v + 1] - 1], sorted and without duplicates.
+// It takes two int arrays instead of a hash set per vertex, so graphs with millions of edges load
+// quickly and stay small.
+public class CsrGraph implements IGraph {
+  private final int[] offsets;
+  private final int[] neighbours;
+
+  // The arrays are used as given, see the class comment for their layout
+  public CsrGraph(int[] offsets, int[] neighbours) {
+    this.offsets = offsets;
+    this.neighbours = neighbours;
+  }
+
+  // Collects edges like AdjListGraph.addEdge does, and sorts them into rows once at the end
+  public static class Builder {
+    private final int vertexCount;
+    private int[] from;
+    private int[] to;
+    private int edgeCount;
+
+    public Builder(int vertexCount) {
+      this(vertexCount, 16);
+    }
+
+    public Builder(int vertexCount, int expectedEdgeCount) {
+      this.vertexCount = vertexCount;
+      from = new int[Math.max(1, expectedEdgeCount)];
+      to = new int[Math.max(1, expectedEdgeCount)];
+    }
+
+    // Edges with a missing endpoint are ignored
+    public boolean addEdge(int u, int v) {
+      if (u < 0 || u >= vertexCount || v < 0 || v >= vertexCount) {
+        return false;
+      }
+      if (edgeCount == from.length) {
+        from = Arrays.copyOf(from, 2 * edgeCount);
+        to = Arrays.copyOf(to, 2 * edgeCount);
+      }
+      from[edgeCount] = u;
+      to[edgeCount] = v;
+      ++edgeCount;
+      return true;
+    }
+
+    public CsrGraph build() {
+      int[] offsets = new int[vertexCount + 1];
+      for (int i = 0; i < edgeCount; ++i) {
+        ++offsets[from[i] + 1];
+      }
+      for (int v = 0; v < vertexCount; ++v) {
+        offsets[v + 1] += offsets[v];
+      }
+
+      int[] next = Arrays.copyOf(offsets, vertexCount);
+      int[] neighbours = new int[edgeCount];
+      for (int i = 0; i < edgeCount; ++i) {
+        neighbours[next[from[i]]++] = to[i];
+      }
+
+      // Sort every row and drop duplicate edges, compacting the rows in place
+      int size = 0;
+      int rowStart = 0;
+      for (int v = 0; v < vertexCount; ++v) {
+        int rowEnd = offsets[v + 1];
+        Arrays.sort(neighbours, rowStart, rowEnd);
+        offsets[v] = size;
+        for (int i = rowStart; i < rowEnd; ++i) {
+          if (i == rowStart || neighbours[i] != neighbours[i - 1]) {
+            neighbours[size++] = neighbours[i];
+          }
+        }
+        rowStart = rowEnd;
+      }
+      offsets[vertexCount] = size;
+
+      return new CsrGraph(offsets, size == edgeCount ? neighbours : Arrays.copyOf(neighbours, size));
+    }
+  }
+
+  @Override
+  public boolean hasVertex(int vertex) {
+    return 0 <= vertex && vertex < size();
+  }
+
+  @Override
+  public boolean hasEdge(int from, int to) {
+    if (!hasVertex(from)) {
+      return false;
+    }
+    return Arrays.binarySearch(neighbours, offsets[from], offsets[from + 1], to) >= 0;
+  }
+
+  @Override
+  public int size() {
+    return offsets.length - 1;
+  }
+
+  @Override
+  public List<Integer> adjacentVertices(int vertex) {
+    if (!hasVertex(vertex)) {
+      return null;
+    }
+    ArrayList<Integer> result = new ArrayList<>(degree(vertex));
+    for (int i = offsets[vertex]; i < offsets[vertex + 1]; ++i) {
+      result.add(neighbours[i]);
+    }
+    return result;
+  }
+
+  public int degree(int vertex) {
+    return offsets[vertex + 1] - offsets[vertex];
+  }
+
+  public int edgeCount() {
+    return neighbours.length;
+  }
+
+  public int[] getOffsets() {
+    return offsets;
+  }
+
+  public int[] getNeighbours() {
+    return neighbours;
+  }
+}
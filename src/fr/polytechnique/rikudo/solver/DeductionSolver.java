@@ -0,0 +1,371 @@
+package fr.polytechnique.rikudo.solver;
+
+import fr.polytechnique.rikudo.solver.ReducingToSATSolver.Mode;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Hashtable;
+import java.util.List;
+
+// Solves puzzles by local deductions applied to a fixpoint, and hands off to the SAT solver
+// (with everything deduced so far added as constraints) only when the deductions stall.
+// The graph is expected to be undirected, as Rikudo grids are.
+public class DeductionSolver implements IHamPathSolver {
+
+  private static final byte EDGE_UNKNOWN = 0;
+  private static final byte EDGE_FORCED = 1;
+  private static final byte EDGE_FORBIDDEN = 2;
+
+  private static class Contradiction extends Exception {
+    private static final long serialVersionUID = 1L;
+
+    Contradiction() {
+      super(null, null, false, false);
+    }
+  }
+
+  private final IGraph graph;
+  private final int source;
+  private final int target;
+  private final Constraints constraints;
+
+  private int[][] adjacent;
+  private byte[][] edgeState;
+  private int[] forcedCount;
+  private int[] position;
+  private int[] vertexAt;
+  private int assignedCount;
+  // Forced edges form vertex-disjoint chains, both ends of a chain know each other and its size
+  private int[] chainOtherEnd;
+  private int[] chainSize;
+  private boolean changed;
+
+  private int deductionDepth;
+  private boolean solvedByDeduction;
+
+  public DeductionSolver(IGraph graph, int source, int target) {
+    this(graph, source, target, new Constraints());
+  }
+
+  public DeductionSolver(IGraph graph, int source, int target, Constraints constraints) {
+    this.graph = graph;
+    this.source = source;
+    this.target = target;
+    this.constraints = constraints;
+  }
+
+  // Number of deduction rounds which changed something during the last solve() call
+  public int getDeductionDepth() {
+    return deductionDepth;
+  }
+
+  // Whether the last solve() call found the path without the SAT solver
+  public boolean isSolvedByDeduction() {
+    return solvedByDeduction;
+  }
+
+  @Override
+  public List<Integer> solve() {
+    deductionDepth = 0;
+    solvedByDeduction = false;
+
+    try {
+      if (!init()) {
+        return new ReducingToSATSolver(graph, source, target, Mode.E_MODE_PATH, constraints).solve();
+      }
+
+      do {
+        changed = false;
+        for (int v = 0; v < graph.size(); ++v) {
+          applyRules(v);
+        }
+        if (changed) {
+          ++deductionDepth;
+        }
+      } while (changed && assignedCount < graph.size());
+
+      if (assignedCount == graph.size()) {
+        List<Integer> path = buildPath();
+        solvedByDeduction = path != null;
+        return path;
+      }
+    } catch (Contradiction e) {
+      return null;
+    }
+
+    return new ReducingToSATSolver(graph, source, target, Mode.E_MODE_PATH, deducedConstraints())
+        .solve();
+  }
+
+  private boolean init() throws Contradiction {
+    int n = graph.size();
+    adjacent = new int[n][];
+    edgeState = new byte[n][];
+    for (int v = 0; v < n; ++v) {
+      List<Integer> neighbours = graph.adjacentVertices(v);
+      adjacent[v] = new int[neighbours.size()];
+      for (int i = 0; i < neighbours.size(); ++i) {
+        adjacent[v][i] = neighbours.get(i);
+        if (!graph.hasEdge(adjacent[v][i], v)) {
+          // Deductions below rely on the graph being undirected
+          return false;
+        }
+      }
+      edgeState[v] = new byte[adjacent[v].length];
+    }
+
+    forcedCount = new int[n];
+    position = new int[n];
+    vertexAt = new int[n];
+    chainOtherEnd = new int[n];
+    chainSize = new int[n];
+    assignedCount = 0;
+    for (int v = 0; v < n; ++v) {
+      position[v] = -1;
+      vertexAt[v] = -1;
+      chainOtherEnd[v] = v;
+      chainSize[v] = 1;
+    }
+
+    assign(source, 0);
+    assign(target, n - 1);
+    Hashtable<Integer, Integer> vertexConstraints = constraints.getVertexConstraints();
+    for (int vertex : vertexConstraints.keySet()) {
+      assign(vertex, vertexConstraints.get(vertex));
+    }
+    Hashtable<Integer, HashSet<Integer>> diamondConstraints = constraints.getDiamondConstraints();
+    for (int v1 : diamondConstraints.keySet()) {
+      for (int v2 : diamondConstraints.get(v1)) {
+        forceEdge(v1, v2);
+      }
+    }
+    return true;
+  }
+
+  private int requiredDegree(int vertex) {
+    if (graph.size() == 1) {
+      return 0;
+    }
+    return vertex == source || vertex == target ? 1 : 2;
+  }
+
+  private static int indexOf(int[] array, int value) {
+    for (int i = 0; i < array.length; ++i) {
+      if (array[i] == value) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private void assign(int vertex, int pos) throws Contradiction {
+    if (pos < 0 || pos >= graph.size()) {
+      throw new Contradiction();
+    }
+    if (position[vertex] == pos) {
+      return;
+    }
+    if (position[vertex] != -1 || vertexAt[pos] != -1
+        || !constraints.isAllowedVertex(vertex, pos)) {
+      throw new Contradiction();
+    }
+    position[vertex] = pos;
+    vertexAt[pos] = vertex;
+    ++assignedCount;
+    changed = true;
+  }
+
+  private void forceEdge(int u, int v) throws Contradiction {
+    int uIdx = indexOf(adjacent[u], v);
+    if (uIdx == -1) {
+      throw new Contradiction();
+    }
+    if (edgeState[u][uIdx] == EDGE_FORCED) {
+      return;
+    }
+    if (edgeState[u][uIdx] == EDGE_FORBIDDEN
+        || forcedCount[u] >= requiredDegree(u) || forcedCount[v] >= requiredDegree(v)) {
+      throw new Contradiction();
+    }
+
+    int uEnd = chainOtherEnd[u];
+    int vEnd = chainOtherEnd[v];
+    int size = chainSize[u] + chainSize[v];
+    if (uEnd == v || (isSourceAndTarget(uEnd, vEnd) && size < graph.size())) {
+      throw new Contradiction();
+    }
+    chainOtherEnd[uEnd] = vEnd;
+    chainOtherEnd[vEnd] = uEnd;
+    chainSize[uEnd] = size;
+    chainSize[vEnd] = size;
+
+    edgeState[u][uIdx] = EDGE_FORCED;
+    edgeState[v][indexOf(adjacent[v], u)] = EDGE_FORCED;
+    ++forcedCount[u];
+    ++forcedCount[v];
+    changed = true;
+  }
+
+  private void forbidEdge(int u, int v) throws Contradiction {
+    int uIdx = indexOf(adjacent[u], v);
+    if (edgeState[u][uIdx] == EDGE_FORBIDDEN) {
+      return;
+    }
+    if (edgeState[u][uIdx] == EDGE_FORCED) {
+      throw new Contradiction();
+    }
+    edgeState[u][uIdx] = EDGE_FORBIDDEN;
+    edgeState[v][indexOf(adjacent[v], u)] = EDGE_FORBIDDEN;
+    changed = true;
+  }
+
+  private boolean isSourceAndTarget(int u, int v) {
+    return (u == source && v == target) || (u == target && v == source);
+  }
+
+  private void applyRules(int v) throws Contradiction {
+    applyDegreeRule(v);
+    applyChainRule(v);
+    if (position[v] != -1) {
+      applyPositionRules(v);
+    }
+  }
+
+  // A cell is entered and left exactly once: when only enough free edges remain, all of them are
+  // used, and once enough edges are used, the remaining ones are not
+  private void applyDegreeRule(int v) throws Contradiction {
+    int required = requiredDegree(v);
+    int unknownCount = 0;
+    for (byte state : edgeState[v]) {
+      if (state == EDGE_UNKNOWN) {
+        ++unknownCount;
+      }
+    }
+    if (unknownCount == 0) {
+      if (forcedCount[v] != required) {
+        throw new Contradiction();
+      }
+      return;
+    }
+
+    if (forcedCount[v] == required) {
+      for (int i = 0; i < adjacent[v].length; ++i) {
+        if (edgeState[v][i] == EDGE_UNKNOWN) {
+          forbidEdge(v, adjacent[v][i]);
+        }
+      }
+    } else if (forcedCount[v] + unknownCount == required) {
+      for (int i = 0; i < adjacent[v].length; ++i) {
+        if (edgeState[v][i] == EDGE_UNKNOWN) {
+          forceEdge(v, adjacent[v][i]);
+        }
+      }
+    } else if (forcedCount[v] + unknownCount < required) {
+      throw new Contradiction();
+    }
+  }
+
+  // An edge must not close a chain of forced edges into a cycle, nor join the source to the
+  // target before every cell is on the path
+  private void applyChainRule(int v) throws Contradiction {
+    if (forcedCount[v] >= requiredDegree(v)) {
+      return;
+    }
+    for (int i = 0; i < adjacent[v].length; ++i) {
+      int u = adjacent[v][i];
+      if (edgeState[v][i] != EDGE_UNKNOWN || forcedCount[u] >= requiredDegree(u)) {
+        continue;
+      }
+      int vEnd = chainOtherEnd[v];
+      int uEnd = chainOtherEnd[u];
+      if (vEnd == u
+          || (isSourceAndTarget(vEnd, uEnd) && chainSize[v] + chainSize[u] < graph.size())) {
+        forbidEdge(v, u);
+      }
+    }
+  }
+
+  // A cell pinned at position i is linked to the cells at positions i - 1 and i + 1
+  private void applyPositionRules(int v) throws Contradiction {
+    int pos = position[v];
+
+    for (int i = 0; i < adjacent[v].length; ++i) {
+      int u = adjacent[v][i];
+      if (edgeState[v][i] == EDGE_FORBIDDEN) {
+        continue;
+      }
+      if (position[u] != -1) {
+        if (Math.abs(position[u] - pos) == 1) {
+          forceEdge(v, u);
+        } else {
+          forbidEdge(v, u);
+        }
+      } else if (edgeState[v][i] == EDGE_FORCED) {
+        // A forced neighbour takes whichever of the two adjacent positions is still free
+        boolean before = pos > 0 && vertexAt[pos - 1] == -1;
+        boolean after = pos + 1 < graph.size() && vertexAt[pos + 1] == -1;
+        if (!before && !after) {
+          throw new Contradiction();
+        } else if (before != after) {
+          assign(u, before ? pos - 1 : pos + 1);
+        }
+      }
+    }
+
+    for (int side = pos - 1; side <= pos + 1; side += 2) {
+      if (side < 0 || side >= graph.size() || vertexAt[side] != -1) {
+        continue;
+      }
+      int candidate = -1;
+      int candidateCnt = 0;
+      for (int i = 0; i < adjacent[v].length; ++i) {
+        int u = adjacent[v][i];
+        if (edgeState[v][i] != EDGE_FORBIDDEN && position[u] == -1
+            && constraints.isAllowedVertex(u, side)) {
+          candidate = u;
+          ++candidateCnt;
+        }
+      }
+      if (candidateCnt == 0) {
+        throw new Contradiction();
+      } else if (candidateCnt == 1) {
+        assign(candidate, side);
+      }
+    }
+  }
+
+  private List<Integer> buildPath() throws Contradiction {
+    ArrayList<Integer> path = new ArrayList<>(graph.size());
+    for (int pos = 0; pos < graph.size(); ++pos) {
+      if (pos > 0 && !graph.hasEdge(vertexAt[pos - 1], vertexAt[pos])) {
+        throw new Contradiction();
+      }
+      path.add(vertexAt[pos]);
+    }
+    Hashtable<Integer, HashSet<Integer>> diamondConstraints = constraints.getDiamondConstraints();
+    for (int v1 : diamondConstraints.keySet()) {
+      for (int v2 : diamondConstraints.get(v1)) {
+        if (Math.abs(position[v1] - position[v2]) != 1) {
+          throw new Contradiction();
+        }
+      }
+    }
+    return path;
+  }
+
+  // Everything deduced is implied by the original constraints, so it is safe to give it to SAT
+  private Constraints deducedConstraints() {
+    Constraints deduced = new Constraints();
+    deduced.addAll(constraints);
+    for (int v = 0; v < graph.size(); ++v) {
+      if (position[v] != -1) {
+        deduced.addVertexConstraint(v, position[v]);
+      }
+      for (int i = 0; i < adjacent[v].length; ++i) {
+        if (edgeState[v][i] == EDGE_FORCED) {
+          deduced.addDiamondConstraint(v, adjacent[v][i]);
+        }
+      }
+    }
+    return deduced;
+  }
+}
@@ -1,13 +1,16 @@
 package fr.polytechnique.rikudo.solver;
 
 import fr.polytechnique.rikudo.benchmark.Benchmark.ProblemInstance;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.util.InputMismatchException;
+import java.io.UncheckedIOException;
 import java.util.NoSuchElementException;
-import java.util.Scanner;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 public class GraphReader {
+  // Edges pre-allocated from the header at most, the counts may come from an untrusted request
+  private static final int MAX_EXPECTED_EDGES = 1 << 16;
+
   private final String graphPath;
   private final String constraintsPath;
 
@@ -17,58 +20,124 @@ public class GraphReader {
   }
 
   private IGraph readGraph() throws IOException {
-    Scanner scanner = new Scanner(new FileInputStream(graphPath));
-    int vertexCount = scanner.nextInt();
-    int edgeCount = scanner.nextInt();
+    try (IntTokenizer tokenizer = new IntTokenizer(graphPath)) {
+      return readGraph(tokenizer, Integer.MAX_VALUE - 1);
+    }
+  }
+
+  private static IGraph readGraph(IntTokenizer tokenizer, int maxVertices) throws IOException {
+    int vertexCount = tokenizer.nextInt();
+    int edgeCount = tokenizer.nextInt();
+    if (vertexCount < 0 || edgeCount < 0) {
+      throw new IllegalArgumentException(
+          "Negative vertex or edge count: " + vertexCount + " " + edgeCount);
+    }
+    if (vertexCount > maxVertices) {
+      throw new IllegalArgumentException(
+          vertexCount + " vertices, at most " + maxVertices + " are allowed");
+    }
 
-    AdjListGraph graph = new AdjListGraph(vertexCount);
+    CsrGraph.Builder graph =
+        new CsrGraph.Builder(vertexCount, Math.min(edgeCount, MAX_EXPECTED_EDGES));
     for (int i = 0; i < edgeCount; ++i) {
-      int u = scanner.nextInt();
-      int v = scanner.nextInt();
+      int u = tokenizer.nextInt();
+      int v = tokenizer.nextInt();
       graph.addEdge(u, v);
     }
-
-    scanner.close();
-    return graph;
+    return graph.build();
   }
 
   private Constraints readConstraints() throws IOException {
-    Scanner scanner = new Scanner(new FileInputStream(constraintsPath));
+    try (IntTokenizer tokenizer = new IntTokenizer(constraintsPath)) {
+      return readConstraints(tokenizer);
+    }
+  }
+
+  private static Constraints readConstraints(IntTokenizer tokenizer) throws IOException {
     Constraints constraints = new Constraints();
 
-    int vertexConstraintsCnt = scanner.nextInt();
-    int diamondConstraintsCnt = scanner.nextInt();
+    int vertexConstraintsCnt = tokenizer.nextInt();
+    int diamondConstraintsCnt = tokenizer.nextInt();
+    if (vertexConstraintsCnt < 0 || diamondConstraintsCnt < 0) {
+      throw new IllegalArgumentException("Negative constraint count: " + vertexConstraintsCnt
+          + " " + diamondConstraintsCnt);
+    }
 
     for (int i = 0; i < vertexConstraintsCnt; ++i) {
-      int vertex = scanner.nextInt();
-      int pos = scanner.nextInt();
+      int vertex = tokenizer.nextInt();
+      int pos = tokenizer.nextInt();
       constraints.addVertexConstraint(vertex, pos);
     }
 
     for (int i = 0; i < diamondConstraintsCnt; ++i) {
-      int u = scanner.nextInt();
-      int v = scanner.nextInt();
+      int u = tokenizer.nextInt();
+      int v = tokenizer.nextInt();
       constraints.addDiamondConstraint(u, v);
     }
 
     return constraints;
   }
 
+  private static <T> T join(CompletableFuture<T> future) throws IOException {
+    try {
+      return future.join();
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof UncheckedIOException) {
+        throw ((UncheckedIOException) e.getCause()).getCause();
+      } else if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw e;
+    }
+  }
+
+  // Reads a graph followed by its constraints from a single stream, both in the file formats.
+  // Unlike readProblem(), errors are thrown: NoSuchElementException on a bad format, and
+  // IllegalArgumentException on a negative count, on more than maxVertices vertices, or if the
+  // source or the target is not constrained.
+  public static ProblemInstance readProblem(IntTokenizer tokenizer, int maxVertices)
+      throws IOException {
+    IGraph graph = readGraph(tokenizer, maxVertices);
+    Constraints constraints = readConstraints(tokenizer);
+    Integer sourceVertex = constraints.getVertexByPos(0);
+    Integer targetVertex = constraints.getVertexByPos(graph.size() - 1);
+    if (sourceVertex == null || targetVertex == null) {
+      throw new IllegalArgumentException("Cannot deduce source and/or target vertex");
+    }
+    return new ProblemInstance(graph, sourceVertex, targetVertex, constraints);
+  }
+
+  // Like readProblem(tokenizer), errors are thrown instead of printed
+  public ProblemInstance read() throws IOException {
+    // The constraints are parsed in the background while the graph is
+    CompletableFuture<Constraints> constraintsFuture = CompletableFuture.supplyAsync(() -> {
+      try {
+        return readConstraints();
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    });
+    IGraph graph = readGraph();
+    Constraints constraints = join(constraintsFuture);
+    Integer sourceVertex = constraints.getVertexByPos(0);
+    Integer targetVertex = constraints.getVertexByPos(graph.size() - 1);
+    if (sourceVertex == null || targetVertex == null) {
+      throw new IllegalArgumentException("Cannot deduce source and/or target vertex");
+    }
+    return new ProblemInstance(graph, sourceVertex, targetVertex, constraints);
+  }
+
   public ProblemInstance readProblem() {
     try {
-      IGraph graph = readGraph();
-      Constraints constraints = readConstraints();
-      int sourceVertex = constraints.getVertexByPos(0);
-      int targetVertex = constraints.getVertexByPos(graph.size() - 1);
-      return new ProblemInstance(graph, sourceVertex, targetVertex, constraints);
+      return read();
     } catch (NoSuchElementException e) {
       System.err.println("Bad file format!");
       e.printStackTrace();
     } catch (IOException e) {
       System.err.println("An I/O error occurred!");
       e.printStackTrace();
-    } catch (NullPointerException e) {
-      System.err.println("Cannot deduce source and/or target vertex!");
+    } catch (IllegalArgumentException e) {
+      System.err.println("Bad file format: " + e.getMessage() + "!");
       e.printStackTrace();
     }
     return null;
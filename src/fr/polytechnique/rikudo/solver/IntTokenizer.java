@@ -0,0 +1,94 @@
+package fr.polytechnique.rikudo.solver;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.InputMismatchException;
+import java.util.NoSuchElementException;
+
+// Reads whitespace separated decimal integers from a file, byte by byte out of a large buffer.
+// Much faster than Scanner, which matches every token against a regular expression. Errors are
+// reported with the same exceptions as Scanner.nextInt().
+public class IntTokenizer implements Closeable {
+  private static final int BUFFER_SIZE = 1 << 16;
+
+  private final ReadableByteChannel channel;
+  private final byte[] buffer = new byte[BUFFER_SIZE];
+  private final ByteBuffer wrapped = ByteBuffer.wrap(buffer);
+  private int position;
+  private int limit;
+
+  public IntTokenizer(String path) throws IOException {
+    this(FileChannel.open(Paths.get(path), StandardOpenOption.READ));
+  }
+
+  // Reads from any channel, e.g. Channels.newChannel(inputStream), which is closed with this
+  public IntTokenizer(ReadableByteChannel channel) {
+    this.channel = channel;
+  }
+
+  private int read() throws IOException {
+    if (position == limit) {
+      wrapped.clear();
+      int count;
+      do {
+        count = channel.read(wrapped);
+      } while (count == 0);
+      if (count < 0) {
+        return -1;
+      }
+      position = 0;
+      limit = count;
+    }
+    return buffer[position++];
+  }
+
+  private static boolean isWhitespace(int c) {
+    return c == ' ' || c == '\n' || c == '\r' || c == '\t' || c == '\f';
+  }
+
+  public int nextInt() throws IOException {
+    int c = read();
+    while (isWhitespace(c)) {
+      c = read();
+    }
+    if (c == -1) {
+      throw new NoSuchElementException("Unexpected end of input");
+    }
+
+    boolean negative = c == '-';
+    if (negative || c == '+') {
+      c = read();
+    }
+    if (c < '0' || c > '9') {
+      throw new InputMismatchException("Not a 32-bit integer");
+    }
+
+    long value = 0;
+    while (c >= '0' && c <= '9') {
+      value = 10 * value + (c - '0');
+      if (value > Integer.MAX_VALUE + 1L) {
+        throw new InputMismatchException("Not a 32-bit integer");
+      }
+      c = read();
+    }
+    if (c != -1 && !isWhitespace(c)) {
+      throw new InputMismatchException("Not a 32-bit integer");
+    }
+
+    value = negative ? -value : value;
+    if (value > Integer.MAX_VALUE) {
+      throw new InputMismatchException("Not a 32-bit integer");
+    }
+    return (int) value;
+  }
+
+  @Override
+  public void close() throws IOException {
+    channel.close();
+  }
+}
@@ -0,0 +1,23 @@
+package fr.polytechnique.rikudo.solver;
+
+// The few JSON helpers needed by the tools which write JSON by hand
+public class Json {
+  private Json() {
+  }
+
+  // A JSON string literal: quotes and backslashes are escaped, control characters as unicode escapes
+  public static String quote(String s) {
+    StringBuilder result = new StringBuilder("\"");
+    for (int i = 0; i < s.length(); ++i) {
+      char c = s.charAt(i);
+      if (c == '"' || c == '\\') {
+        result.append('\\').append(c);
+      } else if (c < 0x20) {
+        result.append(String.format("\\u%04x", (int) c));
+      } else {
+        result.append(c);
+      }
+    }
+    return result.append('"').toString();
+  }
+}
@@ -0,0 +1,70 @@
+package fr.polytechnique.rikudo.solver;
+
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+// Graph in compressed sparse rows read straight from buffers, e.g. views of a memory-mapped
+// ProblemFile, without copying. Rows must be sorted, see CsrGraph for the layout.
+public class MappedGraph implements IGraph {
+  private final IntBuffer offsets;
+  private final IntBuffer neighbours;
+
+  public MappedGraph(IntBuffer offsets, IntBuffer neighbours) {
+    this.offsets = offsets;
+    this.neighbours = neighbours;
+  }
+
+  @Override
+  public boolean hasVertex(int vertex) {
+    return 0 <= vertex && vertex < size();
+  }
+
+  @Override
+  public boolean hasEdge(int from, int to) {
+    if (!hasVertex(from)) {
+      return false;
+    }
+    int low = offsets.get(from);
+    int high = offsets.get(from + 1) - 1;
+    while (low <= high) {
+      int middle = (low + high) >>> 1;
+      int neighbour = neighbours.get(middle);
+      if (neighbour < to) {
+        low = middle + 1;
+      } else if (neighbour > to) {
+        high = middle - 1;
+      } else {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  @Override
+  public int size() {
+    return offsets.limit() - 1;
+  }
+
+  @Override
+  public List<Integer> adjacentVertices(int vertex) {
+    if (!hasVertex(vertex)) {
+      return null;
+    }
+    int from = offsets.get(vertex);
+    int to = offsets.get(vertex + 1);
+    ArrayList<Integer> result = new ArrayList<>(to - from);
+    for (int i = from; i < to; ++i) {
+      result.add(neighbours.get(i));
+    }
+    return result;
+  }
+
+  public int degree(int vertex) {
+    return offsets.get(vertex + 1) - offsets.get(vertex);
+  }
+
+  public int edgeCount() {
+    return neighbours.limit();
+  }
+}
@@ -0,0 +1,341 @@
+package fr.polytechnique.rikudo.solver;
+
+import fr.polytechnique.rikudo.benchmark.Benchmark.ProblemInstance;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.HashSet;
+import java.util.Hashtable;
+import java.util.List;
+
+// Binary problem instances, much faster to load than the text files of GraphReader. A file is
+// memory-mapped and its graph is used in place, through MappedGraph.
+//
+// All numbers are big-endian 32-bit ints, except the cell centers:
+//   magic "RKDP", format version, flags (1: solution present, 2: cell centers present)
+//   vertex count n, edge count m, source, target, vertex constraint count c, diamond count d
+//   n + 1 row offsets and m neighbours of the graph in compressed sparse rows (rows sorted)
+//   c pairs (vertex, position) of vertex constraints
+//   d pairs (v1, v2) of diamond constraints, v1 < v2
+//   if flag 1: the n vertices along the solution
+//   if flag 2: n 64-bit cell centers, packed Eisenstein integers a << 32 | b
+// Mapped files are limited to 2 GB.
+public class ProblemFile {
+  public static final int MAGIC = 0x524B4450;
+  public static final int VERSION = 1;
+
+  private static final int FLAG_SOLUTION = 1;
+  private static final int FLAG_CENTERS = 2;
+  private static final int HEADER_INTS = 9;
+
+  private final IGraph graph;
+  private final int source;
+  private final int target;
+  private final Constraints constraints;
+  private final IntBuffer solution;
+  private final LongBuffer centers;
+
+  private ProblemFile(IGraph graph, int source, int target, Constraints constraints,
+      IntBuffer solution, LongBuffer centers) {
+    this.graph = graph;
+    this.source = source;
+    this.target = target;
+    this.constraints = constraints;
+    this.solution = solution;
+    this.centers = centers;
+  }
+
+  public IGraph getGraph() {
+    return graph;
+  }
+
+  public int getSource() {
+    return source;
+  }
+
+  public int getTarget() {
+    return target;
+  }
+
+  public Constraints getConstraints() {
+    return constraints;
+  }
+
+  public ProblemInstance toProblemInstance() {
+    return new ProblemInstance(graph, source, target, constraints);
+  }
+
+  public boolean hasSolution() {
+    return solution != null;
+  }
+
+  // Vertices along the known solution, or null
+  public List<Integer> getSolution() {
+    if (solution == null) {
+      return null;
+    }
+    return new AbstractList<Integer>() {
+      @Override
+      public Integer get(int index) {
+        return solution.get(index);
+      }
+
+      @Override
+      public int size() {
+        return solution.limit();
+      }
+    };
+  }
+
+  public boolean hasCenters() {
+    return centers != null;
+  }
+
+  // Packed Eisenstein coordinates of the cell of the vertex
+  public long getCenter(int vertex) {
+    return centers.get(vertex);
+  }
+
+  public static ProblemFile map(Path path) throws IOException {
+    MappedByteBuffer buffer;
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      if (channel.size() > Integer.MAX_VALUE) {
+        throw new IOException(path + " is larger than 2 GB");
+      }
+      buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
+
+    if (buffer.capacity() < 4 * HEADER_INTS || buffer.getInt(0) != MAGIC) {
+      throw new IOException(path + " is not a problem file");
+    }
+    IntBuffer header = buffer.asIntBuffer();
+    int version = header.get(1);
+    if (version != VERSION) {
+      throw new IOException(path + " has format version " + version + ", expected " + VERSION);
+    }
+    int flags = header.get(2);
+    int vertexCount = header.get(3);
+    int edgeCount = header.get(4);
+    int source = header.get(5);
+    int target = header.get(6);
+    int vertexConstraintCount = header.get(7);
+    int diamondCount = header.get(8);
+
+    long intCount = HEADER_INTS + (vertexCount + 1L) + edgeCount
+        + 2L * vertexConstraintCount + 2L * diamondCount
+        + ((flags & FLAG_SOLUTION) != 0 ? vertexCount : 0);
+    long expectedSize = 4 * intCount + ((flags & FLAG_CENTERS) != 0 ? 8L * vertexCount : 0);
+    if (vertexCount < 0 || edgeCount < 0 || vertexConstraintCount < 0 || diamondCount < 0
+        || expectedSize != buffer.capacity()) {
+      throw new IOException(path + " is truncated or corrupt");
+    }
+
+    int position = 4 * HEADER_INTS;
+    IntBuffer offsets = intSlice(buffer, position, vertexCount + 1);
+    position += 4 * (vertexCount + 1);
+    IntBuffer neighbours = intSlice(buffer, position, edgeCount);
+    position += 4 * edgeCount;
+    checkGraph(path, offsets, neighbours);
+    if (vertexCount > 0 && (source < 0 || source >= vertexCount || target < 0
+        || target >= vertexCount)) {
+      throw new IOException(path + " has the source or the target out of range");
+    }
+
+    Constraints constraints = new Constraints();
+    for (int i = 0; i < vertexConstraintCount; ++i, position += 8) {
+      constraints.addVertexConstraint(buffer.getInt(position), buffer.getInt(position + 4));
+    }
+    for (int i = 0; i < diamondCount; ++i, position += 8) {
+      constraints.addDiamondConstraint(buffer.getInt(position), buffer.getInt(position + 4));
+    }
+
+    IntBuffer solution = null;
+    if ((flags & FLAG_SOLUTION) != 0) {
+      solution = intSlice(buffer, position, vertexCount);
+      position += 4 * vertexCount;
+    }
+    LongBuffer centers = null;
+    if ((flags & FLAG_CENTERS) != 0) {
+      ByteBuffer slice = buffer.duplicate();
+      slice.position(position).limit(position + 8 * vertexCount);
+      centers = slice.slice().asLongBuffer();
+    }
+
+    return new ProblemFile(new MappedGraph(offsets, neighbours), source, target, constraints,
+        solution, centers);
+  }
+
+  // Checked once here, so that MappedGraph can trust the arrays: the offsets go from 0 to the edge
+  // count without decreasing, and each row is a sorted list of vertices
+  private static void checkGraph(Path path, IntBuffer offsets, IntBuffer neighbours)
+      throws IOException {
+    int vertexCount = offsets.limit() - 1;
+    if (offsets.get(0) != 0 || offsets.get(vertexCount) != neighbours.limit()) {
+      throw new IOException(path + " has row offsets out of range");
+    }
+    for (int v = 0; v < vertexCount; ++v) {
+      int from = offsets.get(v);
+      int to = offsets.get(v + 1);
+      if (to < from || to > neighbours.limit()) {
+        throw new IOException(path + " has row offsets out of order at vertex " + v);
+      }
+      int previous = -1;
+      for (int i = from; i < to; ++i) {
+        int neighbour = neighbours.get(i);
+        if (neighbour <= previous || neighbour >= vertexCount) {
+          throw new IOException(path + " has an unsorted row or a neighbour out of range at vertex "
+              + v);
+        }
+        previous = neighbour;
+      }
+    }
+  }
+
+  private static IntBuffer intSlice(ByteBuffer buffer, int position, int count) {
+    ByteBuffer slice = buffer.duplicate();
+    slice.position(position).limit(position + 4 * count);
+    return slice.slice().asIntBuffer();
+  }
+
+  public static void write(Path path, ProblemInstance problem) throws IOException {
+    write(path, problem, null, null);
+  }
+
+  // The solution and the cell centers are optional
+  public static void write(Path path, ProblemInstance problem, List<Integer> solution,
+      long[] centers) throws IOException {
+    IGraph graph = problem.graph;
+    int vertexCount = graph.size();
+    int[] offsets;
+    int[] neighbours;
+    if (graph instanceof CsrGraph) {
+      offsets = ((CsrGraph) graph).getOffsets();
+      neighbours = ((CsrGraph) graph).getNeighbours();
+    } else {
+      CsrGraph.Builder builder = new CsrGraph.Builder(vertexCount);
+      for (int v = 0; v < vertexCount; ++v) {
+        for (int u : graph.adjacentVertices(v)) {
+          builder.addEdge(v, u);
+        }
+      }
+      CsrGraph csr = builder.build();
+      offsets = csr.getOffsets();
+      neighbours = csr.getNeighbours();
+    }
+
+    Hashtable<Integer, Integer> vertexConstraints = problem.constraints.getVertexConstraints();
+    Hashtable<Integer, HashSet<Integer>> diamondConstraints =
+        problem.constraints.getDiamondConstraints();
+    int flags = (solution != null ? FLAG_SOLUTION : 0) | (centers != null ? FLAG_CENTERS : 0);
+
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+        Files.newOutputStream(path), 1 << 16))) {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeInt(flags);
+      out.writeInt(vertexCount);
+      out.writeInt(neighbours.length);
+      out.writeInt(problem.source);
+      out.writeInt(problem.target);
+      out.writeInt(vertexConstraints.size());
+      out.writeInt(problem.constraints.countDiamondConstraints());
+
+      for (int offset : offsets) {
+        out.writeInt(offset);
+      }
+      for (int neighbour : neighbours) {
+        out.writeInt(neighbour);
+      }
+      for (int vertex : vertexConstraints.keySet()) {
+        out.writeInt(vertex);
+        out.writeInt(vertexConstraints.get(vertex));
+      }
+      for (int v1 : diamondConstraints.keySet()) {
+        for (int v2 : diamondConstraints.get(v1)) {
+          if (v1 < v2) {
+            out.writeInt(v1);
+            out.writeInt(v2);
+          }
+        }
+      }
+      if (solution != null) {
+        if (solution.size() != vertexCount) {
+          throw new IllegalArgumentException("The solution must visit all " + vertexCount + " vertices");
+        }
+        for (int vertex : solution) {
+          out.writeInt(vertex);
+        }
+      }
+      if (centers != null) {
+        if (centers.length != vertexCount) {
+          throw new IllegalArgumentException("Expected " + vertexCount + " cell centers");
+        }
+        for (long center : centers) {
+          out.writeLong(center);
+        }
+      }
+    }
+  }
+
+  // Writes the graph and constraints in the text format of GraphReader
+  public static void writeText(ProblemInstance problem, Path graphPath, Path constraintsPath)
+      throws IOException {
+    IGraph graph = problem.graph;
+    try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(graphPath))) {
+      int edgeCount = 0;
+      for (int v = 0; v < graph.size(); ++v) {
+        edgeCount += graph.adjacentVertices(v).size();
+      }
+      out.println(graph.size() + " " + edgeCount);
+      for (int v = 0; v < graph.size(); ++v) {
+        for (int u : graph.adjacentVertices(v)) {
+          out.println(v + " " + u);
+        }
+      }
+    }
+
+    Constraints constraints = problem.constraints;
+    Hashtable<Integer, Integer> vertexConstraints = constraints.getVertexConstraints();
+    Hashtable<Integer, HashSet<Integer>> diamondConstraints = constraints.getDiamondConstraints();
+    try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(constraintsPath))) {
+      out.println(vertexConstraints.size() + " " + constraints.countDiamondConstraints());
+      for (int vertex : vertexConstraints.keySet()) {
+        out.println(vertex + " " + vertexConstraints.get(vertex));
+      }
+      for (int v1 : diamondConstraints.keySet()) {
+        for (int v2 : diamondConstraints.get(v1)) {
+          if (v1 < v2) {
+            out.println(v1 + " " + v2);
+          }
+        }
+      }
+    }
+  }
+
+  public static void main(String[] args) throws IOException {
+    if (args.length == 3 && !args[0].startsWith("--")) {
+      ProblemInstance problem = new GraphReader(args[0], args[1]).readProblem();
+      if (problem == null) {
+        System.exit(1);
+      }
+      write(Paths.get(args[2]), problem);
+    } else if (args.length == 4 && args[0].equals("--to-text")) {
+      writeText(map(Paths.get(args[1])).toProblemInstance(), Paths.get(args[2]), Paths.get(args[3]));
+    } else {
+      System.err.println("Usage: prog graph.txt constraints.txt problem.rkp");
+      System.err.println("       prog --to-text problem.rkp graph.txt constraints.txt");
+      System.exit(1);
+    }
+  }
+}
@@ -0,0 +1,6 @@
+package fr.polytechnique.rikudo.solver;
+
+// Called on the solving thread, so it must return quickly
+public interface ProgressListener {
+  void progress(SolverProgress progress);
+}
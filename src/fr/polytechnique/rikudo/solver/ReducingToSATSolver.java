@@ -2,15 +2,21 @@ package fr.polytechnique.rikudo.solver;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Hashtable;
 import java.util.List;
+import java.util.Random;
 import org.sat4j.core.VecInt;
 import org.sat4j.minisat.SolverFactory;
 import org.sat4j.specs.ContradictionException;
+import org.sat4j.specs.IConstr;
 import org.sat4j.specs.ISolver;
+import org.sat4j.specs.ISolverService;
 import org.sat4j.specs.IVecInt;
 import org.sat4j.specs.TimeoutException;
+import org.sat4j.tools.SearchListenerAdapter;
 
 public class ReducingToSATSolver implements IHamPathSolver {
 
@@ -19,6 +25,15 @@ public class ReducingToSATSolver implements IHamPathSolver {
   private final int target;
   private final Constraints constraints;
   private final Mode mode;
+  private SolverListener listener;
+  private int timeoutMillis;
+  private boolean timedOut;
+  private SolverStats stats = SolverStats.EMPTY;
+  private volatile boolean cancelled;
+  // The sat4j solver searching right now, so that cancel() can stop it
+  private volatile ISolver running;
+  private ProgressListener progressListener;
+  private long progressIntervalNanos;
 
   public static enum Mode {
     E_MODE_PATH,
@@ -53,72 +68,182 @@ public class ReducingToSATSolver implements IHamPathSolver {
     this.constraints = constraints;
   }
 
-  private ISolver prepareSolver() {
-    ISolver satSolver = SolverFactory.newDefault();
+  public void setListener(SolverListener listener) {
+    this.listener = listener;
+  }
 
-    try {
-      // Each vertex appears precisely once in the path
-      for (int v = 0; v < graph.size(); ++v) {
-        for (int i = 0; i < graph.size(); ++i) {
-          for (int j = i + 1; j < graph.size(); ++j) {
-            satSolver
-                .addClause(new VecInt(new int[]{-encodeVariable(i, v), -encodeVariable(j, v)}));
-          }
-        }
+  // Time limit of every SAT call made from now on, zero keeps the sat4j default
+  public void setTimeoutMillis(int timeoutMillis) {
+    this.timeoutMillis = timeoutMillis;
+  }
+
+  // Whether the last SAT call ran out of time, in which case solve() and
+  // minimalUniqueConstraints(path, rng) return null and verifyUniqueness(path) returns false
+  // without an answer
+  public boolean isTimedOut() {
+    return timedOut;
+  }
+
+  // Stops the running SAT call and every later one, from any thread. The results are then those
+  // of a call which ran out of time, without isTimedOut().
+  public void cancel() {
+    cancelled = true;
+    ISolver satSolver = running;
+    if (satSolver != null) {
+      satSolver.expireTimeout();
+    }
+  }
+
+  public boolean isCancelled() {
+    return cancelled;
+  }
+
+  // The listener is called about every intervalMillis with the conflicts of the running SAT call
+  public void setProgressListener(ProgressListener listener, long intervalMillis) {
+    this.progressListener = listener;
+    this.progressIntervalNanos = 1000000L * intervalMillis;
+  }
+
+  // Sees every conflict of the search: every few hundred of them, it stops the search if it was
+  // cancelled in between (cancel() can come before sat4j starts to watch its timeout) and reports
+  // progress when it is due
+  private class SearchMonitor extends SearchListenerAdapter<ISolverService> {
+    private static final long serialVersionUID = 1L;
+
+    private final ISolver satSolver;
+    private long conflicts;
+    private long searchBegin;
+    private long nextProgress;
 
-        IVecInt vecInt = new VecInt(graph.size());
-        for (int i = 0; i < graph.size(); ++i) {
-          vecInt.push(encodeVariable(i, v));
+    SearchMonitor(ISolver satSolver) {
+      this.satSolver = satSolver;
+    }
+
+    @Override
+    public void start() {
+      conflicts = 0;
+      searchBegin = System.nanoTime();
+      nextProgress = searchBegin + progressIntervalNanos;
+    }
+
+    @Override
+    public void conflictFound(IConstr confl, int dlevel, int trailLevel) {
+      if ((++conflicts & 255) != 0) {
+        return;
+      }
+      if (cancelled) {
+        satSolver.expireTimeout();
+      } else if (progressListener != null) {
+        long now = System.nanoTime();
+        if (now - nextProgress >= 0) {
+          nextProgress = now + progressIntervalNanos;
+          progressListener.progress(new SolverProgress(0, 0, conflicts, now - searchBegin));
         }
-        satSolver.addClause(vecInt);
       }
+    }
+  }
 
-      // Each index is occupied precisely once
-      for (int i = 0; i < graph.size(); ++i) {
-        for (int v = 0; v < graph.size(); ++v) {
-          for (int w = v + 1; w < graph.size(); ++w) {
-            satSolver
-                .addClause(new VecInt(new int[]{-encodeVariable(i, v), -encodeVariable(i, w)}));
-          }
-        }
+  // Work done by the last solve(), verifyUniqueness(path), minimalUniqueConstraints(path, rng) or
+  // encode() call, summed over its SAT calls
+  public SolverStats getStats() {
+    return stats;
+  }
 
-        IVecInt vecInt = new VecInt(graph.size());
-        for (int v = 0; v < graph.size(); ++v) {
-          vecInt.push(encodeVariable(i, v));
-        }
-        satSolver.addClause(vecInt);
+  // Runs the solver, and reports the work done by this very call if somebody listens
+  private boolean isSatisfiable(ISolver satSolver, IVecInt assumptions, long encodingNanos)
+      throws TimeoutException {
+    timedOut = false;
+    running = satSolver;
+    try {
+      if (cancelled) {
+        throw new TimeoutException("Cancelled");
       }
+      return isSatisfiableHelper(satSolver, assumptions, encodingNanos);
+    } catch (TimeoutException e) {
+      timedOut = !cancelled;
+      throw e;
+    } finally {
+      running = null;
+    }
+  }
 
-      // Consecutive vertices along the path are adjacent in the graph
-      for (int u = 0; u < graph.size(); ++u) {
-        for (int v = 0; v < graph.size(); ++v) {
-          if (graph.hasEdge(u, v)) {
-            continue;
-          }
+  // The counters are read before and after every call (even one which times out), and added to
+  // the stats of the current method
+  private boolean isSatisfiableHelper(ISolver satSolver, IVecInt assumptions, long encodingNanos)
+      throws TimeoutException {
+    SatSolveEvent event = new SatSolveEvent();
+    SolverStats before = SolverStats.of(satSolver, null, 0, 0);
+    event.begin();
+    long timeBegin = System.nanoTime();
+    boolean satisfiable;
+    try {
+      satisfiable = satSolver.isSatisfiable(assumptions);
+    } catch (TimeoutException e) {
+      SolverStats callStats =
+          SolverStats.of(satSolver, before, encodingNanos, System.nanoTime() - timeBegin);
+      stats = stats.plus(callStats);
+      commit(event, callStats, assumptions, cancelled ? "cancelled" : "timeout");
+      throw e;
+    }
+    long timeEnd = System.nanoTime();
+    SolverStats callStats = SolverStats.of(satSolver, before, encodingNanos, timeEnd - timeBegin);
+    stats = stats.plus(callStats);
+    commit(event, callStats, assumptions, satisfiable ? "sat" : "unsat");
+    if (listener != null) {
+      listener.solverCalled(callStats, satisfiable);
+    }
+    return satisfiable;
+  }
 
-          for (int i = 0; i < graph.size() - 1; ++i) {
-            satSolver
-                .addClause(new VecInt(new int[]{-encodeVariable(i, u), -encodeVariable(i + 1, v)}));
-          }
+  private static void commit(SatSolveEvent event, SolverStats callStats, IVecInt assumptions,
+      String result) {
+    event.end();
+    if (event.shouldCommit()) {
+      event.variables = callStats.variables;
+      event.clauses = callStats.clauses;
+      event.assumptions = assumptions.size();
+      event.result = result;
+      event.decisions = callStats.decisions;
+      event.conflicts = callStats.conflicts;
+      event.commit();
+    }
+  }
 
-          if (mode == Mode.E_MODE_CYCLE) {
-            satSolver
-                .addClause(new VecInt(new int[]{-encodeVariable(graph.size() - 1, u), -encodeVariable(0, v)}));
-          }
-        }
+  private static void commit(SatEncodeEvent event, int vertices, ISolver satSolver) {
+    if (event.shouldCommit()) {
+      event.vertices = vertices;
+      event.contradiction = satSolver == null;
+      if (satSolver != null) {
+        event.variables = satSolver.nVars();
+        event.clauses = satSolver.nConstraints();
       }
+      event.commit();
+    }
+  }
 
-      if (mode == Mode.E_MODE_PATH) {
-        // The first vertex should be the source and the last vertex should be the target
-        satSolver.addClause(new VecInt(1, encodeVariable(0, source)));
-        satSolver.addClause(new VecInt(1, encodeVariable(graph.size() - 1, target)));
-      }
+  // Every sat4j solver is built here, so that all of them get the time limit and the monitor
+  private ISolver newSatSolver() {
+    ISolver satSolver = SolverFactory.newDefault();
+    timedOut = false;
+    if (timeoutMillis > 0) {
+      satSolver.setTimeoutMs(timeoutMillis);
+    }
+    satSolver.setSearchListener(new SearchMonitor(satSolver));
+    return satSolver;
+  }
+
+  private ISolver prepareSolver() {
+    SatEncodeEvent event = new SatEncodeEvent();
+    event.begin();
+    ISolver satSolver = newSatSolver();
+
+    try {
+      addStructuralClauses(satSolver);
 
       // Applying constraints
       Hashtable<Integer, Integer> vertex_to_pos = constraints.getVertexConstraints();
       for (int vertex : vertex_to_pos.keySet()) {
-        int pos = vertex_to_pos.get(vertex);
-        satSolver.addClause(new VecInt(1, encodeVariable(pos, vertex)));
+        addVertexConstraintClauses(satSolver, vertex, vertex_to_pos.get(vertex), 0);
       }
 
       for (int v = 0; v < graph.size(); ++v) {
@@ -126,44 +251,142 @@ public class ReducingToSATSolver implements IHamPathSolver {
         if (diamonds == null) {
           continue;
         }
-        for (int u  : diamonds) {
-          for (int i = 1; i < graph.size() - 1; ++i) {
-            satSolver.addClause(new VecInt(new int[]{
-                -encodeVariable(i,v), encodeVariable(i + 1, u), encodeVariable(i - 1, u)
-            }));
-          }
-
-          if (mode == Mode.E_MODE_PATH) {
-            satSolver.addClause(new VecInt(new int[]{
-                -encodeVariable(0, v), encodeVariable(1, u)
-            }));
-            satSolver.addClause(new VecInt(new int[]{
-                -encodeVariable(graph.size() - 1, v), encodeVariable(graph.size() - 2, u)
-            }));
-          } else if (mode == Mode.E_MODE_CYCLE) {
-            satSolver.addClause(new VecInt(new int[]{
-                -encodeVariable(0, v), encodeVariable(1, u), encodeVariable(graph.size() - 1, u)
-            }));
-            satSolver.addClause(new VecInt(new int[]{
-                -encodeVariable(graph.size() - 1, v), encodeVariable(graph.size() - 2, u), encodeVariable(0, u)
-            }));
-          }
+        for (int u : diamonds) {
+          addDiamondConstraintClauses(satSolver, v, u, 0);
         }
       }
 
+      commit(event, graph.size(), satSolver);
       return satSolver;
     } catch (ContradictionException e) {
+      commit(event, graph.size(), null);
       return null;
     }
   }
 
-  private List<Integer> solveHelper(ISolver satSolver) {
+  /**
+   * Builds the CNF of the problem into a fresh sat4j solver without searching, so that encoding
+   * can be measured apart from solving. Returns null if the clauses already contradict each other.
+   */
+  public ISolver encode() {
+    long timeBegin = System.nanoTime();
+    ISolver satSolver = prepareSolver();
+    long encodingNanos = System.nanoTime() - timeBegin;
+    stats = satSolver == null
+        ? encodingStats(encodingNanos) : SolverStats.of(satSolver, null, encodingNanos, 0);
+    return satSolver;
+  }
+
+  // Stats of a call which stopped before any search
+  private static SolverStats encodingStats(long encodingNanos) {
+    return new SolverStats(0, 0, 0, 0, 0, 0, encodingNanos, 0);
+  }
+
+  private void addStructuralClauses(ISolver satSolver) throws ContradictionException {
+    // Each vertex appears precisely once in the path
+    for (int v = 0; v < graph.size(); ++v) {
+      for (int i = 0; i < graph.size(); ++i) {
+        for (int j = i + 1; j < graph.size(); ++j) {
+          satSolver
+              .addClause(new VecInt(new int[]{-encodeVariable(i, v), -encodeVariable(j, v)}));
+        }
+      }
+
+      IVecInt vecInt = new VecInt(graph.size());
+      for (int i = 0; i < graph.size(); ++i) {
+        vecInt.push(encodeVariable(i, v));
+      }
+      satSolver.addClause(vecInt);
+    }
+
+    // Each index is occupied precisely once
+    for (int i = 0; i < graph.size(); ++i) {
+      for (int v = 0; v < graph.size(); ++v) {
+        for (int w = v + 1; w < graph.size(); ++w) {
+          satSolver
+              .addClause(new VecInt(new int[]{-encodeVariable(i, v), -encodeVariable(i, w)}));
+        }
+      }
+
+      IVecInt vecInt = new VecInt(graph.size());
+      for (int v = 0; v < graph.size(); ++v) {
+        vecInt.push(encodeVariable(i, v));
+      }
+      satSolver.addClause(vecInt);
+    }
+
+    // Consecutive vertices along the path are adjacent in the graph
+    for (int u = 0; u < graph.size(); ++u) {
+      for (int v = 0; v < graph.size(); ++v) {
+        if (graph.hasEdge(u, v)) {
+          continue;
+        }
+
+        for (int i = 0; i < graph.size() - 1; ++i) {
+          satSolver
+              .addClause(new VecInt(new int[]{-encodeVariable(i, u), -encodeVariable(i + 1, v)}));
+        }
+
+        if (mode == Mode.E_MODE_CYCLE) {
+          satSolver
+              .addClause(new VecInt(new int[]{-encodeVariable(graph.size() - 1, u), -encodeVariable(0, v)}));
+        }
+      }
+    }
+
+    if (mode == Mode.E_MODE_PATH) {
+      // The first vertex should be the source and the last vertex should be the target
+      satSolver.addClause(new VecInt(1, encodeVariable(0, source)));
+      satSolver.addClause(new VecInt(1, encodeVariable(graph.size() - 1, target)));
+    }
+  }
+
+  // A non-zero selector guards every clause of the constraint: the constraint is only enforced
+  // when the selector literal is assumed to be true.
+  private static IVecInt guardedClause(int selector, int... literals) {
+    IVecInt clause = new VecInt(literals.length + 1);
+    for (int literal : literals) {
+      clause.push(literal);
+    }
+    if (selector != 0) {
+      clause.push(-selector);
+    }
+    return clause;
+  }
+
+  private void addVertexConstraintClauses(ISolver satSolver, int vertex, int pos, int selector)
+      throws ContradictionException {
+    satSolver.addClause(guardedClause(selector, encodeVariable(pos, vertex)));
+  }
+
+  private void addDiamondConstraintClauses(ISolver satSolver, int v, int u, int selector)
+      throws ContradictionException {
+    for (int i = 1; i < graph.size() - 1; ++i) {
+      satSolver.addClause(guardedClause(selector,
+          -encodeVariable(i, v), encodeVariable(i + 1, u), encodeVariable(i - 1, u)));
+    }
+
+    if (mode == Mode.E_MODE_PATH) {
+      satSolver.addClause(guardedClause(selector,
+          -encodeVariable(0, v), encodeVariable(1, u)));
+      satSolver.addClause(guardedClause(selector,
+          -encodeVariable(graph.size() - 1, v), encodeVariable(graph.size() - 2, u)));
+    } else if (mode == Mode.E_MODE_CYCLE) {
+      satSolver.addClause(guardedClause(selector,
+          -encodeVariable(0, v), encodeVariable(1, u), encodeVariable(graph.size() - 1, u)));
+      satSolver.addClause(guardedClause(selector,
+          -encodeVariable(graph.size() - 1, v), encodeVariable(graph.size() - 2, u), encodeVariable(0, u)));
+    }
+  }
+
+  private List<Integer> solveHelper(ISolver satSolver, long encodingNanos) {
     if (satSolver == null) {
+      stats = encodingStats(encodingNanos);
       return null;
     }
 
     try {
-      if (satSolver.isSatisfiable()) {
+      if (isSatisfiable(satSolver, new VecInt(), encodingNanos)) {
         int[] solution = satSolver.model();
 
         Integer[] result = new Integer[graph.size()];
@@ -188,13 +411,18 @@ public class ReducingToSATSolver implements IHamPathSolver {
 
   @Override
   public List<Integer> solve() {
+    stats = SolverStats.EMPTY;
+    long timeBegin = System.nanoTime();
     ISolver satSolver = prepareSolver();
-    return solveHelper(satSolver);
+    return solveHelper(satSolver, System.nanoTime() - timeBegin);
   }
 
   public boolean verifyUniqueness(List<Integer> path) {
+    stats = SolverStats.EMPTY;
+    long timeBegin = System.nanoTime();
     ISolver satSolver = prepareSolver();
     if (satSolver == null) {
+      stats = encodingStats(System.nanoTime() - timeBegin);
       return false;
     }
 
@@ -208,17 +436,154 @@ public class ReducingToSATSolver implements IHamPathSolver {
       satSolver.addClause(new VecInt(restriction));
     } catch (ContradictionException e) {
       // e.printStackTrace();
+      stats = encodingStats(System.nanoTime() - timeBegin);
       return true;
     }
 
     try {
-      return !satSolver.isSatisfiable();
+      return !isSatisfiable(satSolver, new VecInt(), System.nanoTime() - timeBegin);
     } catch (TimeoutException e) {
-      e.printStackTrace();
+      // Told apart from a second solution by isTimedOut()
       return false;
     }
   }
 
+  /**
+   * Extracts a minimal subset of the solver constraints which still makes the given path the
+   * unique solution, or returns null if the path is not unique even with all the constraints.
+   *
+   * <p>Every constraint is guarded by its own selector variable and the given path is blocked, so
+   * a sufficient set of constraints is exactly an unsatisfiable set of assumptions. The unsat core
+   * reported by sat4j shrinks the set on every step, and the remaining constraints are dropped one
+   * by one (in random order) until each of them is necessary.
+   *
+   * <p>Null is also returned when a SAT call runs out of time or the solver is cancelled, callers
+   * must check isTimedOut() and isCancelled() before concluding that the path is not unique.
+   */
+  public Constraints minimalUniqueConstraints(List<Integer> path, Random rng) {
+    stats = SolverStats.EMPTY;
+    // The source and the target are always known to the player
+    Constraints result = new Constraints();
+    ArrayList<int[]> candidates = new ArrayList<>();
+    for (int vertex : constraints.getVertexConstraints().keySet()) {
+      int pos = constraints.getVertexConstraints().get(vertex);
+      if (mode == Mode.E_MODE_PATH && (vertex == source || vertex == target)) {
+        result.addVertexConstraint(vertex, pos);
+      } else {
+        candidates.add(new int[]{vertex, pos});
+      }
+    }
+    int vertexConstraintsCnt = candidates.size();
+    for (int v1 : constraints.getDiamondConstraints().keySet()) {
+      for (int v2 : constraints.getDiamondConstraints().get(v1)) {
+        if (v1 < v2) {
+          candidates.add(new int[]{v1, v2});
+        }
+      }
+    }
+    int firstSelector = graph.size() * graph.size() + 1;
+
+    long timeBegin = System.nanoTime();
+    SatEncodeEvent event = new SatEncodeEvent();
+    event.begin();
+    ISolver satSolver = newSatSolver();
+    satSolver.newVar(firstSelector + candidates.size());
+    try {
+      addStructuralClauses(satSolver);
+      for (int k = 0; k < candidates.size(); ++k) {
+        int[] candidate = candidates.get(k);
+        if (k < vertexConstraintsCnt) {
+          addVertexConstraintClauses(satSolver, candidate[0], candidate[1], firstSelector + k);
+        } else {
+          addDiamondConstraintClauses(satSolver, candidate[0], candidate[1], firstSelector + k);
+          addDiamondConstraintClauses(satSolver, candidate[1], candidate[0], firstSelector + k);
+        }
+      }
+
+      // Forbid the found solution
+      int restriction[] = new int[path.size()];
+      for (int i = 0; i < path.size(); ++i) {
+        restriction[i] = -encodeVariable(i, path.get(i));
+      }
+      satSolver.addClause(new VecInt(restriction));
+      commit(event, graph.size(), satSolver);
+    } catch (ContradictionException e) {
+      // The path is unique without any other constraint
+      commit(event, graph.size(), null);
+      stats = encodingStats(System.nanoTime() - timeBegin);
+      return result;
+    }
+
+    ArrayList<Integer> selectors = new ArrayList<>(candidates.size());
+    for (int k = 0; k < candidates.size(); ++k) {
+      selectors.add(firstSelector + k);
+    }
+    Collections.shuffle(selectors, rng);
+
+    try {
+      // Unsatisfiable without any assumption: no constraint is needed, and sat4j would give no
+      // explanation in terms of the assumptions
+      if (!isSatisfiable(satSolver, new VecInt(), System.nanoTime() - timeBegin)) {
+        return result;
+      }
+      HashSet<Integer> core = unsatCore(satSolver, selectors, 0);
+      if (core == null) {
+        return null;
+      }
+
+      HashSet<Integer> necessary = new HashSet<>();
+      for (int selector : selectors) {
+        if (!core.contains(selector)) {
+          continue;
+        }
+        core.remove(selector);
+        HashSet<Integer> smallerCore = unsatCore(satSolver, core, 0);
+        if (smallerCore == null) {
+          core.add(selector);
+          necessary.add(selector);
+        } else {
+          smallerCore.addAll(necessary);
+          core = smallerCore;
+        }
+      }
+
+      for (int selector : core) {
+        int[] candidate = candidates.get(selector - firstSelector);
+        if (selector - firstSelector < vertexConstraintsCnt) {
+          result.addVertexConstraint(candidate[0], candidate[1]);
+        } else {
+          result.addDiamondConstraint(candidate[0], candidate[1]);
+        }
+      }
+      return result;
+    } catch (TimeoutException e) {
+      // Told apart from a path which is not unique by isTimedOut() and isCancelled()
+      return null;
+    }
+  }
+
+  // Returns the assumptions involved in the contradiction, or null if they are satisfiable
+  private HashSet<Integer> unsatCore(ISolver satSolver, Collection<Integer> assumptions,
+      long encodingNanos) throws TimeoutException {
+    IVecInt vecInt = new VecInt(assumptions.size());
+    for (int literal : assumptions) {
+      vecInt.push(literal);
+    }
+    if (isSatisfiable(satSolver, vecInt, encodingNanos)) {
+      return null;
+    }
+
+    HashSet<Integer> core = new HashSet<>();
+    IVecInt explanation = satSolver.unsatExplanation();
+    if (explanation != null) {
+      for (int i = 0; i < explanation.size(); ++i) {
+        core.add(Math.abs(explanation.get(i)));
+      }
+    }
+    core.retainAll(assumptions);
+    return core;
+  }
+
   public static void main(String[] args) {
     AdjListGraph graph = new AdjListGraph(5);
     for (int i = 0; i < graph.size(); ++i) {
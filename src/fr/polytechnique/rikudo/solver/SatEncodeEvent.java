@@ -0,0 +1,25 @@
+package fr.polytechnique.rikudo.solver;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("fr.polytechnique.rikudo.SatEncode")
+@Label("SAT Encode")
+@Category({"Rikudo", "Solver"})
+@Description("Building the CNF of a problem into a sat4j solver")
+class SatEncodeEvent extends jdk.jfr.Event {
+  @Label("Vertices")
+  int vertices;
+
+  @Label("Variables")
+  int variables;
+
+  @Label("Clauses")
+  int clauses;
+
+  @Label("Contradiction")
+  @Description("The clauses contradicted each other while they were added")
+  boolean contradiction;
+}
@@ -0,0 +1,31 @@
+package fr.polytechnique.rikudo.solver;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("fr.polytechnique.rikudo.SatSolve")
+@Label("SAT Solve")
+@Category({"Rikudo", "Solver"})
+@Description("A single sat4j search")
+class SatSolveEvent extends jdk.jfr.Event {
+  @Label("Variables")
+  int variables;
+
+  @Label("Clauses")
+  int clauses;
+
+  @Label("Assumptions")
+  int assumptions;
+
+  @Label("Result")
+  @Description("sat, unsat, timeout or cancelled")
+  String result;
+
+  @Label("Decisions")
+  long decisions;
+
+  @Label("Conflicts")
+  long conflicts;
+}
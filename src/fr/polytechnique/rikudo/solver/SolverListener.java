@@ -0,0 +1,5 @@
+package fr.polytechnique.rikudo.solver;
+
+public interface SolverListener {
+  void solverCalled(SolverStats stats, boolean satisfiable);
+}
@@ -0,0 +1,32 @@
+package fr.polytechnique.rikudo.solver;
+
+// Snapshot of a search still running: the backtracking solver fills nodes and pathsFound, the
+// SAT solver fills conflicts
+public class SolverProgress {
+  public final long nodes;
+  public final long pathsFound;
+  public final long conflicts;
+  public final long elapsedNanos;
+
+  public SolverProgress(long nodes, long pathsFound, long conflicts, long elapsedNanos) {
+    this.nodes = nodes;
+    this.pathsFound = pathsFound;
+    this.conflicts = conflicts;
+    this.elapsedNanos = elapsedNanos;
+  }
+
+  // Average rate since the search started, e.g. perSecond(nodes)
+  public double perSecond(long count) {
+    return elapsedNanos == 0 ? 0 : count * 1e9 / elapsedNanos;
+  }
+
+  @Override
+  public String toString() {
+    return "SolverProgress{" +
+        "nodes=" + nodes +
+        ", pathsFound=" + pathsFound +
+        ", conflicts=" + conflicts +
+        ", elapsedNanos=" + elapsedNanos +
+        '}';
+  }
+}
@@ -0,0 +1,552 @@
+package fr.polytechnique.rikudo.solver;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import fr.polytechnique.rikudo.benchmark.Benchmark.ProblemInstance;
+import fr.polytechnique.rikudo.benchmark.GraphBuilder;
+import fr.polytechnique.rikudo.solver.ReducingToSATSolver.Mode;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// A long-running solver on localhost, so that tools asking for many solves only pay for class
+// loading and JIT compilation once. Problems are posted as the graph file followed by the
+// constraints file (both in the GraphReader formats) to
+//   POST /solve    a Hamiltonian path satisfying the constraints
+//   POST /count    the number of such paths (always counted by backtracking)
+//   POST /unique   whether there is exactly one such path
+// with the optional query parameters solver=sat|backtracking (sat by default) and deadline=<ms>,
+// the time allowed from the arrival of the request (0 for no limit). Every answer is a JSON
+// object with a status.
+// GET /metrics reports the queue depth and the recent latencies.
+// Bodies larger than the body limit answer 413, problems with more vertices than the vertex limit
+// answer 400, so that a request cannot run the service out of memory.
+//
+// Requests are parsed on the HTTP threads and wait in a bounded queue (a full queue answers 503).
+// A solver worker takes one request, and more of them only while no other worker is idle: a batch
+// of several small problems, or one large one, saves hand-offs when all the workers are busy, but
+// would make requests wait behind each other when some worker could start them at once. Requests
+// whose deadline passed while they were waiting are not solved at all.
+public class SolverService {
+  public static final String STATUS_SOLVED = "solved";
+  public static final String STATUS_COUNTED = "counted";
+
+  private static final String[] QUERIES = {"solve", "count", "unique"};
+  private static final int LATENCY_WINDOW = 4096;
+
+  // Thrown while reading a body past the body limit
+  private static class BodyTooLargeException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    BodyTooLargeException(long limit) {
+      super("request body larger than " + limit + " bytes");
+    }
+  }
+
+  // Counts the bytes of a request body, whatever its Content-Length says
+  private static class LimitedInputStream extends FilterInputStream {
+    private long remaining;
+    private final long limit;
+
+    LimitedInputStream(InputStream input, long limit) {
+      super(input);
+      this.remaining = limit;
+      this.limit = limit;
+    }
+
+    @Override
+    public int read() throws IOException {
+      int b = super.read();
+      if (b >= 0 && --remaining < 0) {
+        throw new BodyTooLargeException(limit);
+      }
+      return b;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+      int count = super.read(buffer, offset, length);
+      if (count > 0) {
+        remaining -= count;
+        if (remaining < 0) {
+          throw new BodyTooLargeException(limit);
+        }
+      }
+      return count;
+    }
+  }
+
+  private static class Request {
+    final String query;
+    final boolean backtracking;
+    final ProblemInstance problem;
+    final long arrival;
+    final long deadline;
+    final CompletableFuture<String> response = new CompletableFuture<>();
+
+    Request(String query, boolean backtracking, ProblemInstance problem, long arrival,
+        long deadline) {
+      this.query = query;
+      this.backtracking = backtracking;
+      this.problem = problem;
+      this.arrival = arrival;
+      this.deadline = deadline;
+    }
+  }
+
+  // The latest durations, in nanoseconds
+  private static class Latencies {
+    private final long[] window = new long[LATENCY_WINDOW];
+    private long count;
+
+    synchronized void add(long nanos) {
+      window[(int) (count++ % window.length)] = nanos;
+    }
+
+    synchronized String toJson() {
+      long[] sorted = Arrays.copyOf(window, (int) Math.min(count, window.length));
+      Arrays.sort(sorted);
+      StringBuilder result = new StringBuilder("{\"count\":").append(count);
+      if (sorted.length > 0) {
+        result.append(String.format(",\"p50Millis\":%.3f,\"p90Millis\":%.3f,\"p99Millis\":%.3f"
+                + ",\"maxMillis\":%.3f", percentile(sorted, 50) / 1e6, percentile(sorted, 90) / 1e6,
+            percentile(sorted, 99) / 1e6, sorted[sorted.length - 1] / 1e6));
+      }
+      return result.append('}').toString();
+    }
+
+    private static long percentile(long[] sorted, int p) {
+      return sorted[Math.min(sorted.length - 1, p * sorted.length / 100)];
+    }
+  }
+
+  private final int workerCount;
+  private final int batchSize;
+  private final int batchVertices;
+  private final int defaultTimeoutMillis;
+  private int maxVertices = 1 << 20;
+  private long maxBodyBytes = 64L << 20;
+  private final BlockingQueue<Request> queue;
+  private final ExecutorService workers;
+  private final ExecutorService httpThreads;
+  private HttpServer server;
+
+  private final AtomicInteger inFlight = new AtomicInteger();
+  private final AtomicInteger idleWorkers = new AtomicInteger();
+  private volatile boolean stopping;
+  private final Map<String, Long> statusCounts = new TreeMap<>();
+  private long batchCount;
+  private long batchedRequestCount;
+  private final Latencies queueLatencies = new Latencies();
+  private final Latencies solveLatencies = new Latencies();
+  private final Latencies totalLatencies = new Latencies();
+
+  // A batch stops at batchSize requests, or once it holds batchVertices vertices
+  public SolverService(int workerCount, int parseThreads, int queueCapacity, int batchSize,
+      int batchVertices, int defaultTimeoutMillis) {
+    this.workerCount = workerCount;
+    this.batchSize = batchSize;
+    this.batchVertices = batchVertices;
+    this.defaultTimeoutMillis = defaultTimeoutMillis;
+    queue = new ArrayBlockingQueue<>(queueCapacity);
+    workers = Executors.newFixedThreadPool(workerCount);
+    httpThreads = Executors.newFixedThreadPool(parseThreads);
+  }
+
+  // Larger problems are refused, the default is 2^20 vertices
+  public void setMaxVertices(int maxVertices) {
+    this.maxVertices = maxVertices;
+  }
+
+  // Larger request bodies are refused, the default is 64 MB
+  public void setMaxBodyBytes(long maxBodyBytes) {
+    this.maxBodyBytes = maxBodyBytes;
+  }
+
+  public void start(int port) throws IOException {
+    warmUp();
+    synchronized (this) {
+      statusCounts.clear();
+    }
+    for (int i = 0; i < workerCount; ++i) {
+      workers.execute(this::workerLoop);
+    }
+
+    server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+    server.setExecutor(httpThreads);
+    for (String query : QUERIES) {
+      server.createContext("/" + query, exchange -> {
+        try {
+          handleQuery(exchange, query);
+        } catch (Throwable e) {
+          // Whatever happened, the client gets an answer instead of a dropped connection
+          respondOrClose(exchange, error("internal error: " + e));
+        }
+      });
+    }
+    server.createContext("/metrics", this::handleMetrics);
+    server.start();
+  }
+
+  public int getPort() {
+    return server.getAddress().getPort();
+  }
+
+  // Requests which were not started yet are answered with an error, the running ones still finish
+  public void stop() {
+    stopping = true;
+    rejectQueued();
+    server.stop(0);
+    workers.shutdownNow();
+    httpThreads.shutdown();
+  }
+
+  private void rejectQueued() {
+    for (Request request = queue.poll(); request != null; request = queue.poll()) {
+      request.response.complete(error("service stopped"));
+    }
+  }
+
+  // Runs every query on a small grid, so that the first requests do not run interpreted code
+  private void warmUp() {
+    ProblemInstance problem = GraphBuilder.buildGridGraph(4, 5);
+    for (int i = 0; i < 20; ++i) {
+      for (String query : QUERIES) {
+        answer(new Request(query, false, problem, System.nanoTime(), Long.MAX_VALUE), 0);
+        answer(new Request(query, true, problem, System.nanoTime(), Long.MAX_VALUE), 0);
+      }
+    }
+  }
+
+  private void handleQuery(HttpExchange exchange, String query) throws IOException {
+    long arrival = System.nanoTime();
+    if (!exchange.getRequestMethod().equals("POST")) {
+      respond(exchange, 405, error("expected POST"));
+      return;
+    }
+
+    Map<String, String> parameters = parseQuery(exchange.getRequestURI().getRawQuery());
+    String solver = parameters.getOrDefault("solver", "sat");
+    if (!solver.equals("sat") && !solver.equals("backtracking")) {
+      respond(exchange, 400, error("unknown solver " + solver));
+      return;
+    }
+    String length = exchange.getRequestHeaders().getFirst("Content-Length");
+    if (length != null && length.matches("[0-9]+") && Long.parseLong(length) > maxBodyBytes) {
+      respond(exchange, 413, error("request body larger than " + maxBodyBytes + " bytes"));
+      return;
+    }
+    long timeoutMillis;
+    ProblemInstance problem;
+    try {
+      timeoutMillis = Long.parseLong(
+          parameters.getOrDefault("deadline", Integer.toString(defaultTimeoutMillis)));
+      problem = GraphReader.readProblem(new IntTokenizer(Channels.newChannel(
+          new LimitedInputStream(exchange.getRequestBody(), maxBodyBytes))), maxVertices);
+    } catch (BodyTooLargeException e) {
+      respond(exchange, 413, error(e.getMessage()));
+      return;
+    } catch (NoSuchElementException | IllegalArgumentException e) {
+      respond(exchange, 400, error("bad problem: " + e));
+      return;
+    }
+
+    long deadline = timeoutMillis > 0 ? arrival + 1000000L * timeoutMillis : Long.MAX_VALUE;
+    Request request = new Request(query, solver.equals("backtracking"), problem, arrival, deadline);
+    if (!queue.offer(request)) {
+      respond(exchange, 503, error("queue full"));
+      return;
+    }
+    // Checked after queueing, so that stop() cannot drain the queue before this request joins it
+    if (stopping && queue.remove(request)) {
+      respond(exchange, 503, error("service stopped"));
+      return;
+    }
+    // Answered from the worker thread, this HTTP thread goes back to parsing
+    request.response.thenAccept(response -> {
+      try {
+        respond(exchange, 200, response);
+      } catch (IOException e) {
+        // The client is gone
+      }
+    });
+  }
+
+  private void handleMetrics(HttpExchange exchange) throws IOException {
+    StringBuilder metrics = new StringBuilder();
+    metrics.append("{\"queueDepth\":").append(queue.size())
+        .append(",\"queueCapacity\":").append(queue.size() + queue.remainingCapacity())
+        .append(",\"inFlight\":").append(inFlight.get());
+    synchronized (this) {
+      metrics.append(",\"batches\":").append(batchCount)
+          .append(",\"batchedRequests\":").append(batchedRequestCount)
+          .append(",\"statuses\":{");
+      String separator = "";
+      for (Map.Entry<String, Long> entry : statusCounts.entrySet()) {
+        metrics.append(separator).append(Json.quote(entry.getKey())).append(':')
+            .append(entry.getValue());
+        separator = ",";
+      }
+      metrics.append('}');
+    }
+    metrics.append(",\"queueLatency\":").append(queueLatencies.toJson())
+        .append(",\"solveLatency\":").append(solveLatencies.toJson())
+        .append(",\"totalLatency\":").append(totalLatencies.toJson())
+        .append('}');
+    respond(exchange, 200, metrics.toString());
+  }
+
+  private static void respond(HttpExchange exchange, int code, String body) throws IOException {
+    byte[] bytes = (body + "\n").getBytes(StandardCharsets.UTF_8);
+    exchange.getResponseHeaders().set("Content-Type", "application/json");
+    exchange.sendResponseHeaders(code, bytes.length);
+    try (OutputStream out = exchange.getResponseBody()) {
+      out.write(bytes);
+    }
+  }
+
+  // A 500 answer, or only closing the exchange if the response has already begun
+  private static void respondOrClose(HttpExchange exchange, String body) {
+    try {
+      if (exchange.getResponseCode() == -1) {
+        respond(exchange, 500, body);
+      }
+    } catch (Throwable e) {
+      // The client is gone, or there is no memory left to answer
+    } finally {
+      exchange.close();
+    }
+  }
+
+  private static String error(String message) {
+    return "{\"status\":\"" + BatchSolver.STATUS_ERROR + "\",\"message\":"
+        + Json.quote(message) + "}";
+  }
+
+  private static Map<String, String> parseQuery(String query) {
+    Map<String, String> parameters = new TreeMap<>();
+    if (query != null) {
+      for (String parameter : query.split("&")) {
+        int equals = parameter.indexOf('=');
+        if (equals > 0) {
+          parameters.put(parameter.substring(0, equals), parameter.substring(equals + 1));
+        }
+      }
+    }
+    return parameters;
+  }
+
+  private void workerLoop() {
+    List<Request> batch = new ArrayList<>();
+    try {
+      while (true) {
+        batch.clear();
+        idleWorkers.incrementAndGet();
+        Request request;
+        try {
+          request = queue.take();
+        } finally {
+          idleWorkers.decrementAndGet();
+        }
+        int vertices = request.problem.graph.size();
+        batch.add(request);
+        while (batch.size() < batchSize && vertices < batchVertices && idleWorkers.get() == 0
+            && (request = queue.poll()) != null) {
+          vertices += request.problem.graph.size();
+          batch.add(request);
+        }
+
+        inFlight.addAndGet(batch.size());
+        synchronized (this) {
+          ++batchCount;
+          batchedRequestCount += batch.size();
+        }
+        for (Request current : batch) {
+          if (stopping) {
+            current.response.complete(error("service stopped"));
+            inFlight.decrementAndGet();
+            continue;
+          }
+          long timeBegin = System.nanoTime();
+          queueLatencies.add(timeBegin - current.arrival);
+          current.response.complete(answer(current, timeBegin));
+          long timeEnd = System.nanoTime();
+          solveLatencies.add(timeEnd - timeBegin);
+          totalLatencies.add(timeEnd - current.arrival);
+          inFlight.decrementAndGet();
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private String answer(Request request, long timeBegin) {
+    String response;
+    try {
+      response = solve(request);
+    } catch (RuntimeException e) {
+      response = error(e.toString());
+    }
+    return response.substring(0, response.length() - 1) + ",\"queueNanos\":"
+        + (timeBegin - request.arrival) + ",\"solveNanos\":" + (System.nanoTime() - timeBegin) + "}";
+  }
+
+  private String solve(Request request) {
+    ProblemInstance problem = request.problem;
+    BacktrackingSolver backtracking = null;
+    ReducingToSATSolver sat = null;
+    if (request.backtracking || request.query.equals("count")) {
+      backtracking = new BacktrackingSolver(problem.graph, problem.source, problem.target,
+          problem.constraints);
+    } else {
+      sat = new ReducingToSATSolver(problem.graph, problem.source, problem.target,
+          Mode.E_MODE_PATH, problem.constraints);
+    }
+
+    if (request.query.equals("count")) {
+      if (!setTimeout(backtracking, request.deadline)) {
+        return status(BatchSolver.STATUS_TIMEOUT);
+      }
+      long count = backtracking.count();
+      if (backtracking.isTimedOut()) {
+        return status(BatchSolver.STATUS_TIMEOUT);
+      }
+      count(STATUS_COUNTED);
+      return "{\"status\":\"" + STATUS_COUNTED + "\",\"count\":" + count + "}";
+    }
+
+    List<Integer> path;
+    if (backtracking != null) {
+      path = setTimeout(backtracking, request.deadline) ? backtracking.solve() : null;
+      if (path == null && (backtracking.isTimedOut() || System.nanoTime() > request.deadline)) {
+        return status(BatchSolver.STATUS_TIMEOUT);
+      }
+    } else {
+      path = setTimeout(sat, request.deadline) ? sat.solve() : null;
+      if (path == null && (sat.isTimedOut() || System.nanoTime() > request.deadline)) {
+        return status(BatchSolver.STATUS_TIMEOUT);
+      }
+    }
+    if (path == null) {
+      return status(BatchSolver.STATUS_NO_SOLUTION);
+    }
+    if (request.query.equals("solve")) {
+      count(STATUS_SOLVED);
+      return "{\"status\":\"" + STATUS_SOLVED + "\",\"path\":" + path.toString().replace(" ", "")
+          + "}";
+    }
+
+    boolean unique;
+    if (backtracking != null) {
+      if (!setTimeout(backtracking, request.deadline)) {
+        return status(BatchSolver.STATUS_TIMEOUT);
+      }
+      unique = backtracking.findKth(2) == null;
+      if (backtracking.isTimedOut()) {
+        return status(BatchSolver.STATUS_TIMEOUT);
+      }
+    } else {
+      if (!setTimeout(sat, request.deadline)) {
+        return status(BatchSolver.STATUS_TIMEOUT);
+      }
+      unique = sat.verifyUniqueness(path);
+      if (sat.isTimedOut()) {
+        return status(BatchSolver.STATUS_TIMEOUT);
+      }
+    }
+    return status(unique ? BatchSolver.STATUS_UNIQUE : BatchSolver.STATUS_MULTIPLE);
+  }
+
+  // Gives the solver the time left before the deadline, or returns false if there is none
+  private static boolean setTimeout(BacktrackingSolver solver, long deadline) {
+    int remaining = remainingMillis(deadline);
+    solver.setTimeoutMillis(Math.max(remaining, 0));
+    return remaining != 0;
+  }
+
+  private static boolean setTimeout(ReducingToSATSolver solver, long deadline) {
+    int remaining = remainingMillis(deadline);
+    solver.setTimeoutMillis(Math.max(remaining, 0));
+    return remaining != 0;
+  }
+
+  // -1 without a deadline
+  private static int remainingMillis(long deadline) {
+    if (deadline == Long.MAX_VALUE) {
+      return -1;
+    }
+    long remaining = (deadline - System.nanoTime()) / 1000000;
+    return (int) Math.max(0, Math.min(remaining, Integer.MAX_VALUE));
+  }
+
+  private String status(String status) {
+    count(status);
+    return "{\"status\":\"" + status + "\"}";
+  }
+
+  private synchronized void count(String status) {
+    statusCounts.merge(status, 1L, Long::sum);
+  }
+
+  public static void main(String[] args) throws IOException {
+    int processors = Runtime.getRuntime().availableProcessors();
+    int port = 8642;
+    int workerCount = processors;
+    int parseThreads = Math.max(1, processors / 4);
+    int queueCapacity = 256;
+    int batchSize = 16;
+    int timeoutSeconds = 60;
+    int maxVertices = 1 << 20;
+    long maxBodyBytes = 64L << 20;
+
+    for (int i = 0; i < args.length; ++i) {
+      if (args[i].equals("-port")) {
+        port = Integer.parseInt(args[++i]);
+      } else if (args[i].equals("-w")) {
+        workerCount = Integer.parseInt(args[++i]);
+      } else if (args[i].equals("-p")) {
+        parseThreads = Integer.parseInt(args[++i]);
+      } else if (args[i].equals("-q")) {
+        queueCapacity = Integer.parseInt(args[++i]);
+      } else if (args[i].equals("-b")) {
+        batchSize = Integer.parseInt(args[++i]);
+      } else if (args[i].equals("-t")) {
+        timeoutSeconds = Integer.parseInt(args[++i]);
+      } else if (args[i].equals("-v")) {
+        maxVertices = Integer.parseInt(args[++i]);
+      } else if (args[i].equals("-l")) {
+        maxBodyBytes = Long.parseLong(args[++i]);
+      } else {
+        System.err.println("Usage: prog [-port port] [-w solver-workers] [-p parse-threads]"
+            + " [-q queue-capacity] [-b batch-size] [-t default-timeout-seconds]"
+            + " [-v max-vertices] [-l max-body-bytes]");
+        System.exit(1);
+      }
+    }
+
+    SolverService service = new SolverService(workerCount, parseThreads, queueCapacity, batchSize,
+        1000, 1000 * timeoutSeconds);
+    service.setMaxVertices(maxVertices);
+    service.setMaxBodyBytes(maxBodyBytes);
+    service.start(port);
+    System.err.println("Listening on http://localhost:" + service.getPort());
+  }
+}
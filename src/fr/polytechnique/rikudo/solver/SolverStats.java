@@ -0,0 +1,116 @@
+package fr.polytechnique.rikudo.solver;
+
+import java.util.Map;
+import org.sat4j.specs.ISolver;
+
+// Work done by a solver call. The SAT solver fills the CNF size and the sat4j counters, the
+// backtracking solver the search tree counters, and both fill the times they measure.
+public class SolverStats {
+  public static final SolverStats EMPTY = new SolverStats(0, 0, 0, 0, 0, 0, 0, 0);
+
+  public final int variables;
+  public final int clauses;
+  public final long decisions;
+  public final long conflicts;
+  public final long propagations;
+  public final long restarts;
+  public final long encodingNanos;
+  public final long solvingNanos;
+
+  // Calls of the search on a partial path
+  public final long nodes;
+  // Moves taken back after the subtree below them failed
+  public final long backtracks;
+  // Length of the longest partial path
+  public final int maxDepth;
+  // Candidate moves cut by each rule: a vertex constraint giving another position, a diamond
+  // forcing another neighbour, and the target reached before the other vertices
+  public final long vertexPrunes;
+  public final long diamondPrunes;
+  public final long targetPrunes;
+
+  public SolverStats(int variables, int clauses, long decisions, long conflicts,
+      long propagations, long restarts, long encodingNanos, long solvingNanos) {
+    this(variables, clauses, decisions, conflicts, propagations, restarts, encodingNanos,
+        solvingNanos, 0, 0, 0, 0, 0, 0);
+  }
+
+  private SolverStats(int variables, int clauses, long decisions, long conflicts,
+      long propagations, long restarts, long encodingNanos, long solvingNanos, long nodes,
+      long backtracks, int maxDepth, long vertexPrunes, long diamondPrunes, long targetPrunes) {
+    this.variables = variables;
+    this.clauses = clauses;
+    this.decisions = decisions;
+    this.conflicts = conflicts;
+    this.propagations = propagations;
+    this.restarts = restarts;
+    this.encodingNanos = encodingNanos;
+    this.solvingNanos = solvingNanos;
+    this.nodes = nodes;
+    this.backtracks = backtracks;
+    this.maxDepth = maxDepth;
+    this.vertexPrunes = vertexPrunes;
+    this.diamondPrunes = diamondPrunes;
+    this.targetPrunes = targetPrunes;
+  }
+
+  public static SolverStats ofSearch(long nodes, long backtracks, int maxDepth,
+      long vertexPrunes, long diamondPrunes, long targetPrunes, long solvingNanos) {
+    return new SolverStats(0, 0, 0, 0, 0, 0, 0, solvingNanos, nodes, backtracks, maxDepth,
+        vertexPrunes, diamondPrunes, targetPrunes);
+  }
+
+  // The work of both calls, as if they were one (the CNF is the larger of both)
+  public SolverStats plus(SolverStats other) {
+    return new SolverStats(Math.max(variables, other.variables),
+        Math.max(clauses, other.clauses), decisions + other.decisions,
+        conflicts + other.conflicts, propagations + other.propagations,
+        restarts + other.restarts, encodingNanos + other.encodingNanos,
+        solvingNanos + other.solvingNanos, nodes + other.nodes, backtracks + other.backtracks,
+        Math.max(maxDepth, other.maxDepth), vertexPrunes + other.vertexPrunes,
+        diamondPrunes + other.diamondPrunes, targetPrunes + other.targetPrunes);
+  }
+
+  private static long getCounter(Map<String, Number> stat, String name) {
+    Number value = stat.get(name);
+    return value == null ? 0 : value.longValue();
+  }
+
+  // sat4j counters are cumulative over the lifetime of the solver, previous is subtracted if given
+  static SolverStats of(ISolver satSolver, SolverStats previous, long encodingNanos,
+      long solvingNanos) {
+    Map<String, Number> stat = satSolver.getStat();
+    long decisions = getCounter(stat, "decisions");
+    long conflicts = getCounter(stat, "conflicts");
+    long propagations = getCounter(stat, "propagations");
+    long restarts = getCounter(stat, "starts");
+    if (previous != null) {
+      decisions -= previous.decisions;
+      conflicts -= previous.conflicts;
+      propagations -= previous.propagations;
+      restarts -= previous.restarts;
+    }
+    return new SolverStats(satSolver.nVars(), satSolver.nConstraints(), decisions, conflicts,
+        propagations, restarts, encodingNanos, solvingNanos);
+  }
+
+  @Override
+  public String toString() {
+    return "SolverStats{" +
+        "variables=" + variables +
+        ", clauses=" + clauses +
+        ", decisions=" + decisions +
+        ", conflicts=" + conflicts +
+        ", propagations=" + propagations +
+        ", restarts=" + restarts +
+        ", encodingNanos=" + encodingNanos +
+        ", solvingNanos=" + solvingNanos +
+        ", nodes=" + nodes +
+        ", backtracks=" + backtracks +
+        ", maxDepth=" + maxDepth +
+        ", vertexPrunes=" + vertexPrunes +
+        ", diamondPrunes=" + diamondPrunes +
+        ", targetPrunes=" + targetPrunes +
+        '}';
+  }
+}